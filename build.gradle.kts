@@ -50,4 +50,80 @@ tasks.register<JavaExec>("runTestSuite") {
 
     mainClass.set("com.worldware.TestSuiteRunner")
     classpath = sourceSets["main"].runtimeClasspath
-}
\ No newline at end of file
+}
+// ---- Render a binary execution trace (written by --trace) as text ----
+
+tasks.register<JavaExec>("traceDump") {
+    group = "application"
+    description = "Renders tracefile.bin as text: -Pargs=\"[--vars] [--times] program.bas [tracefile.bin]\""
+    dependsOn("classes")
+
+    mainClass.set("com.worldware.TraceDump")
+    classpath = sourceSets["main"].runtimeClasspath
+    if (project.hasProperty("args")) {
+        args = (project.property("args") as String).split("\\s+").toList()
+    }
+}
+
+// ---- Merge coverage files written by --coverage from many runs ----
+
+tasks.register<JavaExec>("coverageMerge") {
+    group = "verification"
+    description = "Merges .cov files: -Pargs=\"[--out FILE] [--lcov FILE --source NAME] [--json FILE] files-or-dirs\""
+    dependsOn("classes")
+
+    mainClass.set("com.worldware.CoverageMerge")
+    classpath = sourceSets["main"].runtimeClasspath
+    if (project.hasProperty("args")) {
+        args = (project.property("args") as String).split("\\s+").toList()
+    }
+}
+
+// ---- AppCDS archive for fast start-up, and a start-up benchmark ----
+
+// The archive only applies to the exact classpath it was made with, so the jar gets a fixed name
+tasks.jar {
+    archiveFileName.set("trekbasicj.jar")
+}
+
+val cdsArchiveFile = layout.buildDirectory.file("cds/trekbasic.jsa")
+val startupReportFile = layout.buildDirectory.file("reports/startup.json")
+
+tasks.register<JavaExec>("cdsArchive") {
+    group = "build"
+    description = "Creates build/cds/trekbasic.jsa by running the repository's .bas programs; used by scripts/trekbasic"
+    dependsOn("jar")
+
+    val jar = tasks.jar.flatMap { it.archiveFile }
+    val programs = fileTree(projectDir) { include("*.bas") }
+    inputs.file(jar)
+    inputs.files(programs)
+    outputs.file(cdsArchiveFile)
+
+    mainClass.set("com.worldware.CdsTraining")
+    classpath = files(jar)
+    jvmArgs("-XX:ArchiveClassesAtExit=" + cdsArchiveFile.get().asFile.absolutePath)
+    args(programs.files.sorted().map { it.absolutePath })
+    doFirst {
+        cdsArchiveFile.get().asFile.parentFile.mkdirs()
+    }
+}
+
+tasks.register<JavaExec>("startupBenchmark") {
+    group = "verification"
+    description = "Times start-up of Main and BasicShell with and without the CDS archive into build/reports/startup.json: -Pargs=\"[--runs N] [--program FILE]\""
+    dependsOn("cdsArchive")
+
+    val jar = tasks.jar.flatMap { it.archiveFile }
+    mainClass.set("com.worldware.StartupBenchmark")
+    classpath = files(jar)
+    args("--classpath", jar.get().asFile.absolutePath,
+            "--archive", cdsArchiveFile.get().asFile.absolutePath,
+            "--report", startupReportFile.get().asFile.absolutePath)
+    if (project.hasProperty("args")) {
+        args((project.property("args") as String).split("\\s+"))
+    }
+    doFirst {
+        startupReportFile.get().asFile.parentFile.mkdirs()
+    }
+}
@@ -1,6 +1,17 @@
 package com.worldware;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -10,6 +21,12 @@ import java.util.regex.Pattern;
 public class BasicLoader {
     
     private static final Pattern LINE_PATTERN = Pattern.compile("^(\\d+)\\s*(.*)$");
+
+    // Files at least this large are parsed in parallel by load()
+    static final int PARALLEL_THRESHOLD = 256 * 1024;
+
+    // Bytes of source per parallel parsing task
+    static final int CHUNK_SIZE = 64 * 1024;
     
     /**
      * Smart split that doesn't split on separators inside string literals
@@ -62,11 +79,8 @@ public class BasicLoader {
 
             if (!inString) {
                 // Detect the keyword THEN (word boundary, case-insensitive)
-                if (!afterThen && (c == 'T' || c == 't')) {
-                    String upperRest = text.substring(i).toUpperCase();
-                    if (upperRest.startsWith("THEN") && (i == 0 || !Character.isLetter(text.charAt(i - 1)))) {
-                        afterThen = true;
-                    }
+                if (!afterThen && isThen(text, i)) {
+                    afterThen = true;
                 }
 
                 if (c == ':' && !afterThen) {
@@ -86,6 +100,166 @@ public class BasicLoader {
         return parts;
     }
     
+    private static boolean isThen(String text, int i) {
+        char c = text.charAt(i);
+        return (c == 'T' || c == 't') && text.regionMatches(true, i, "THEN", 0, 4)
+                && (i == 0 || !Character.isLetter(text.charAt(i - 1)));
+    }
+
+    /**
+     * The statements of a line after its number, trimmed and without empty
+     * ones.  A REM takes the rest of the line, so any ':' in the comment is kept.
+     */
+    private static List<String> statementParts(String rest) {
+        List<String> parts = splitStatements(rest);
+        List<String> statements = new ArrayList<>(parts.size());
+        for (int idx = 0; idx < parts.size(); idx++) {
+            String part = parts.get(idx).trim();
+            if (part.isEmpty()) continue;
+
+            if (part.toUpperCase().startsWith("REM")) {
+                // Re-join remaining segments with ':'
+                StringBuilder remBuilder = new StringBuilder(part);
+                for (int j = idx + 1; j < parts.size(); j++) {
+                    remBuilder.append(":").append(parts.get(j));
+                }
+                statements.add(remBuilder.toString());
+                break;
+            }
+            statements.add(part);
+        }
+        return statements;
+    }
+
+    /**
+     * statementParts(text[start, end)).size(), without building the parts
+     */
+    static int countStatements(String text, int start, int end) {
+        int count = 0;
+        boolean inString = false;
+        boolean afterThen = false;
+        int partStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i < end) {
+                char c = text.charAt(i);
+                if (c == '"') {
+                    inString = !inString;
+                    continue;
+                }
+                if (inString) continue;
+                // isThen looks back one character, which must be inside the statements
+                if (!afterThen && (c == 'T' || c == 't') && text.regionMatches(true, i, "THEN", 0, 4)
+                        && (i == start || !Character.isLetter(text.charAt(i - 1)))) {
+                    afterThen = true;
+                }
+                if (c != ':' || afterThen) continue;
+            }
+            // A part ends at i; trimmed the way String.trim does
+            int from = partStart;
+            int to = i;
+            while (from < to && text.charAt(from) <= ' ') from++;
+            while (to > from && text.charAt(to - 1) <= ' ') to--;
+            if (from < to) {
+                count++;
+                if (text.regionMatches(true, from, "REM", 0, 3)) {
+                    break;
+                }
+            }
+            partStart = i + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Parse the statements of a lazily loaded line.  A statement that does
+     * not parse becomes an InvalidStatement that reports the error when run.
+     */
+    static List<Statement> parseLazily(String rest, int statementCount) {
+        List<String> parts = statementParts(rest);
+        if (parts.size() != statementCount) {
+            throw new IllegalStateException("Statement count changed for: " + rest);
+        }
+        List<Statement> statements = new ArrayList<>(parts.size());
+        for (String part : parts) {
+            try {
+                statements.add(parseStatement(part));
+            } catch (BasicSyntaxError e) {
+                statements.add(new InvalidStatement(part, e.getMessage()));
+            }
+        }
+        return List.copyOf(statements);
+    }
+
+    /**
+     * Load a program from a file, either fully parsed (see load(Path)) or
+     * indexed for parsing on demand (see index)
+     */
+    public static Program load(Path file, boolean lazy) throws IOException, BasicSyntaxError {
+        long start = System.nanoTime();
+        Program program = lazy ? index(Files.readString(file)) : load(file);
+        if (InterpreterEvents.active()) {
+            // Reading and parsing overlap here, so it all counts as parsing
+            InterpreterEvents.programLoaded(file, program, lazy, false, 0, 0, System.nanoTime() - start, 0);
+        }
+        return program;
+    }
+
+    /**
+     * Index a program without parsing its statements.
+     * <p>
+     * Only the line numbers are read and the statements of each line counted;
+     * each line keeps the offsets of its text in the source and parses it the
+     * first time its statements are needed, which for most lines of a large
+     * program is when control first reaches them.  Lines without a line
+     * number and duplicate line numbers are reported here as by tokenize;
+     * errors in statements are reported, with their line, when they are run.
+     */
+    public static Program index(String source) throws BasicSyntaxError {
+        List<ProgramLine> programLines = new ArrayList<>();
+        Set<Integer> seenLineNumbers = new HashSet<>();
+        int length = source.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            // Same line breaks as Files.readAllLines: \n, \r\n or \r
+            int lineEnd = lineStart;
+            while (lineEnd < length && source.charAt(lineEnd) != '\n' && source.charAt(lineEnd) != '\r') lineEnd++;
+            int next = lineEnd + (lineEnd + 1 < length && source.charAt(lineEnd) == '\r'
+                    && source.charAt(lineEnd + 1) == '\n' ? 2 : 1);
+
+            int start = lineStart;
+            int end = lineEnd;
+            while (start < end && source.charAt(start) <= ' ') start++;
+            while (end > start && source.charAt(end - 1) <= ' ') end--;
+            if (start < end) {
+                addLine(programLines, seenLineNumbers, indexLine(source, start, end));
+            }
+            lineStart = next;
+        }
+        return new Program(programLines);
+    }
+
+    /**
+     * The line in source[start, end), trimmed, with its number checked as tokenizeLine does
+     */
+    private static ProgramLine indexLine(String source, int start, int end) throws BasicSyntaxError {
+        int digits = start;
+        while (digits < end && source.charAt(digits) >= '0' && source.charAt(digits) <= '9') digits++;
+        boolean valid = digits > start;
+        for (int i = start; valid && i < end; i++) {
+            char c = source.charAt(i);
+            // Line terminators the pattern's '.' does not match
+            valid = c != '\u0085' && c != '\u2028' && c != '\u2029';
+        }
+        if (!valid) {
+            throw new BasicSyntaxError("Invalid line format: " + source.substring(start, end));
+        }
+        int lineNumber = Integer.parseInt(source, start, digits, 10);
+        int bodyStart = digits;
+        while (bodyStart < end && source.charAt(bodyStart) <= ' ') bodyStart++;
+        return new ProgramLine(lineNumber, source, start, end, bodyStart,
+                countStatements(source, bodyStart, end));
+    }
+
     /**
      * Tokenize a list of BASIC source lines into a Program
      */
@@ -95,17 +269,151 @@ public class BasicLoader {
         
         for (String line : lines) {
             if (!line.trim().isEmpty()) {
-                ProgramLine programLine = tokenizeLine(line);
-                if (seenLineNumbers.contains(programLine.getLine())) {
-                    throw new BasicSyntaxError("Duplicate line number: " + programLine.getLine());
-                }
-                seenLineNumbers.add(programLine.getLine());
-                programLines.add(programLine);
+                addLine(programLines, seenLineNumbers, tokenizeLine(line));
             }
         }
         
         return new Program(programLines);
     }
+
+    private static void addLine(List<ProgramLine> programLines, Set<Integer> seenLineNumbers, ProgramLine programLine)
+            throws BasicSyntaxError {
+        if (!seenLineNumbers.add(programLine.getLine())) {
+            throw new BasicSyntaxError("Duplicate line number: " + programLine.getLine());
+        }
+        programLines.add(programLine);
+    }
+
+    /**
+     * Load a program from a UTF-8 source file, with the same result and the
+     * same first error as tokenize(Files.readAllLines(file)).
+     * <p>
+     * Files of PARALLEL_THRESHOLD bytes or more are memory-mapped and cut into
+     * chunks of about CHUNK_SIZE bytes, each ending just after a newline (a
+     * newline byte never occurs inside a multi-byte UTF-8 character).  The
+     * chunks are decoded and parsed in the common ForkJoinPool, then merged in
+     * file order, which is where duplicate line numbers are found.
+     */
+    public static Program load(Path file) throws IOException, BasicSyntaxError {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < PARALLEL_THRESHOLD || size > Integer.MAX_VALUE) {
+                return tokenize(Files.readAllLines(file));
+            }
+            ByteBuffer source = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return tokenize(source, ForkJoinPool.commonPool());
+        }
+    }
+
+    /**
+     * Parse UTF-8 source already read into memory the way load(file, lazy)
+     * parses the file
+     */
+    static Program parse(byte[] source, boolean lazy) throws IOException, BasicSyntaxError {
+        if (!lazy && source.length >= PARALLEL_THRESHOLD) {
+            return tokenize(ByteBuffer.wrap(source), ForkJoinPool.commonPool());
+        }
+        String text = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(source)).toString();
+        return lazy ? index(text) : tokenize(text.lines().toList());
+    }
+
+    /**
+     * Parse UTF-8 source text in parallel; see load()
+     */
+    static Program tokenize(ByteBuffer source, ForkJoinPool pool) throws IOException, BasicSyntaxError {
+        int[] bounds = chunkBounds(source);
+        Chunk[] chunks = new Chunk[bounds.length - 1];
+        pool.invoke(new ParseChunks(source, bounds, chunks, 0, chunks.length));
+
+        // The whole file is decoded before anything is parsed
+        for (Chunk chunk : chunks) {
+            if (chunk.decodeError != null) throw chunk.decodeError;
+        }
+        List<ProgramLine> programLines = new ArrayList<>();
+        Set<Integer> seenLineNumbers = new HashSet<>();
+        for (Chunk chunk : chunks) {
+            for (ProgramLine programLine : chunk.lines) {
+                addLine(programLines, seenLineNumbers, programLine);
+            }
+            if (chunk.syntaxError != null) throw chunk.syntaxError;
+        }
+        return new Program(programLines);
+    }
+
+    /**
+     * Start offsets of the chunks, plus the end of the source
+     */
+    private static int[] chunkBounds(ByteBuffer source) {
+        int size = source.limit();
+        int[] bounds = new int[size / CHUNK_SIZE + 2];
+        int count = 1;
+        int start = 0;
+        while (start < size) {
+            int end = Math.min(start + CHUNK_SIZE, size);
+            while (end < size && source.get(end - 1) != '\n') end++;
+            bounds[count++] = end;
+            start = end;
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * The lines parsed from one chunk, up to the first error in it
+     */
+    private static final class Chunk {
+        final List<ProgramLine> lines = new ArrayList<>();
+        BasicSyntaxError syntaxError;
+        CharacterCodingException decodeError;
+    }
+
+    private static final class ParseChunks extends RecursiveAction {
+        private final ByteBuffer source;
+        private final int[] bounds;
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        ParseChunks(ByteBuffer source, int[] bounds, Chunk[] chunks, int from, int to) {
+            this.source = source;
+            this.bounds = bounds;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ParseChunks(source, bounds, chunks, from, mid),
+                        new ParseChunks(source, bounds, chunks, mid, to));
+                return;
+            }
+            Chunk chunk = new Chunk();
+            chunks[from] = chunk;
+            CharBuffer text;
+            try {
+                // Decoders are not thread-safe, so each chunk has its own
+                text = StandardCharsets.UTF_8.newDecoder()
+                        .decode(source.slice(bounds[from], bounds[from + 1] - bounds[from]));
+            } catch (CharacterCodingException e) {
+                chunk.decodeError = e;
+                return;
+            }
+            // Same line breaks as Files.readAllLines: \n, \r\n or \r
+            Iterator<String> lines = text.toString().lines().iterator();
+            try {
+                while (lines.hasNext()) {
+                    String line = lines.next();
+                    if (!line.trim().isEmpty()) {
+                        chunk.lines.add(tokenizeLine(line));
+                    }
+                }
+            } catch (BasicSyntaxError e) {
+                chunk.syntaxError = e;
+            }
+        }
+    }
     
     /**
      * Parse an IF statement that may contain THEN and ELSE
@@ -156,27 +464,9 @@ public class BasicLoader {
         // Split the line into separate statements using ':' as a separator, but
         // honour the rule that everything after THEN on an IF-statement belongs
         // to that IF (colons inside that region are *not* top-level separators).
-        List<String> statementParts = splitStatements(rest);
         List<Statement> statements = new ArrayList<>();
-        
-        for (int idx = 0; idx < statementParts.size(); idx++) {
-            String part = statementParts.get(idx).trim();
-            if (part.isEmpty()) continue;
-
-            // If a REM appears, swallow the rest of the parts so that any ':'
-            // inside the comment is preserved.
-            if (part.toUpperCase().startsWith("REM")) {
-                // Re-join remaining segments with ':'
-                StringBuilder remBuilder = new StringBuilder(part);
-                for (int j = idx + 1; j < statementParts.size(); j++) {
-                    remBuilder.append(":").append(statementParts.get(j));
-                }
-                part = remBuilder.toString();
-                idx = statementParts.size(); // exit loop after processing
-            }
-
-            Statement stmt = parseStatement(part);
-            statements.add(stmt);
+        for (String part : statementParts(rest)) {
+            statements.add(parseStatement(part));
         }
         
         return new ProgramLine(lineNumber, statements, line);
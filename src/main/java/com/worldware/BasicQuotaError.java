@@ -0,0 +1,30 @@
+package com.worldware;
+
+/**
+ * Exception thrown when a run goes over one of the quotas set with
+ * {@link Executor#setQuotas}; the run ends with status END_ERROR_QUOTA
+ */
+public class BasicQuotaError extends BasicRuntimeError {
+
+    /**
+     * The limits of {@link Executor.Quotas}
+     */
+    public enum Quota {
+        STACK_DEPTH,
+        ARRAY_ELEMENTS,
+        STRING_BYTES,
+        STATEMENTS,
+        WALL_TIME
+    }
+
+    private final Quota quota;
+
+    public BasicQuotaError(Quota quota, String message, Integer lineNumber) {
+        super(message, lineNumber);
+        this.quota = quota;
+    }
+
+    public Quota getQuota() {
+        return quota;
+    }
+}
@@ -0,0 +1,64 @@
+package com.worldware;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Random number source for RND, one per {@link Executor}.
+ * <p>
+ * This is the SplitMix64 generator (the algorithm behind
+ * {@link java.util.SplittableRandom}), written out here so that its single
+ * long of state can be read and restored.  That lets executor snapshots
+ * capture the RNG, and lets a run be reproduced exactly from its seed.
+ * Instances are not thread-safe; each executor owns its own, so concurrent
+ * sessions never contend on a shared generator.
+ */
+public class BasicRandom {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final AtomicLong SEED_UNIQUIFIER = new AtomicLong(System.nanoTime());
+
+    private long state;
+
+    /**
+     * Create a generator with an unpredictable seed
+     */
+    public BasicRandom() {
+        this(mix64(SEED_UNIQUIFIER.addAndGet(GOLDEN_GAMMA) ^ System.nanoTime()));
+    }
+
+    /**
+     * Create a generator that always produces the same sequence for a seed
+     */
+    public BasicRandom(long seed) {
+        this.state = seed;
+    }
+
+    /**
+     * Next value uniformly distributed in [0, 1)
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix64(state);
+    }
+
+    /**
+     * Internal state, for snapshots.  Passing it to {@link #setState(long)}
+     * resumes the exact same sequence.
+     */
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
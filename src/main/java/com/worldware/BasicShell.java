@@ -3,6 +3,7 @@ package com.worldware;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
 import java.io.FileWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -22,6 +23,7 @@ import java.util.*;
  *   <li>{@link #loadFromString(List)}</li>
  *   <li>{@link #loadProgram(Program)}</li>
  *   <li>{@link #loadFromFile(boolean)}</li>
+ *   <li>{@link #enterLine(String)} for numbered-line editing</li>
  *   <li>{@link #buildLineMap(Program, int, int)}</li>
  *   <li>{@link #renumber(Program, Map, int, int)}</li>
  *   <li>{@link #format(Program)}</li>
@@ -44,8 +46,15 @@ public class BasicShell {
      *  Python field so tests can access it directly. */
     public boolean load_status;
 
-    // Minimal stubs for break- and watch-points (not yet implemented)
-    private final List<int[]> breakpoints = new ArrayList<>();
+    /** Set when lines were typed in since the executor was created; the next
+     *  run or continue starts a fresh executor on the edited program. */
+    private boolean programEdited;
+
+    /** Coverage read by 'coverage load'; reported instead of the executor's until the next run. */
+    private Coverage loadedCoverage;
+
+    // Break- and watch-points, handed to the executor on every continue
+    private final List<Executor.Breakpoint> breakpoints = new ArrayList<>();
     private final List<String> dataBreakpoints = new ArrayList<>();
 
     // ---------------------------------------------------------------------
@@ -72,6 +81,7 @@ public class BasicShell {
             Program program = BasicLoader.tokenize(listing);
             this.executor = new Executor(program);
             this.load_status = true;
+            this.programEdited = false;
         } catch (BasicSyntaxError | IOException e) {
             System.err.println("Failed to load program from string: " + e.getMessage());
             this.load_status = false;
@@ -85,6 +95,7 @@ public class BasicShell {
         try {
             this.executor = new Executor(program);
             this.load_status = true;
+            this.programEdited = false;
         } catch (IOException e) {
             System.err.println("Failed to create executor: " + e.getMessage());
             this.load_status = false;
@@ -117,10 +128,12 @@ public class BasicShell {
 
         System.out.println("Loading " + path);
         try {
-            List<String> lines = Files.readAllLines(path);
-            Program program = BasicLoader.tokenize(lines);
+            // Lines are parsed as they are first run, so large programs are ready at once;
+            // a program cached by an earlier run comes back fully parsed
+            Program program = ProgramCache.defaultCache().load(path, true);
             this.executor = new Executor(program);
             this.load_status = true;
+            this.programEdited = false;
         } catch (BasicSyntaxError e) {
             System.err.printf("Syntax error: %s in line %d%n", e.getMessage(), e.getLineNumber());
             this.load_status = false;
@@ -173,11 +186,9 @@ public class BasicShell {
         int curLine = startLine;
 
         for (ProgramLine oldLine : oldProgram) {
-            List<Statement> newStatements = new ArrayList<>();
-            for (Statement stmt : oldLine.getStmts()) {
-                Statement rewritten = renumberStatement(stmt, lineMap);
-                newStatements.add(rewritten);
-            }
+            // Splice new numbers into every GOTO/GOSUB/ON/THEN/ELSE/RESTORE reference
+            List<Statement> newStatements = oldLine.getLineReferences()
+                    .rewrite(oldLine.getStmts(), old -> lineMap.getOrDefault(old, old));
             String joined = joinStatements(newStatements);
             ProgramLine pl = new ProgramLine(curLine, newStatements, curLine + " " + joined);
             newProgramLines.add(pl);
@@ -215,51 +226,6 @@ public class BasicShell {
     // Helper methods
     // ---------------------------------------------------------------------
 
-    /**
-     * Renumber line number references inside a single statement if the keyword
-     * supports it (GOTO, GOSUB, etc.).  Only the functionality required by the
-     * current automated tests is implemented – this can be expanded later as
-     * needed.
-     */
-    private Statement renumberStatement(Statement stmt, Map<Integer, Integer> lineMap) {
-        String keyword = stmt.getKeyword().toUpperCase(Locale.ROOT);
-        String args = stmt.getArgs();
-
-        // Only handle very common cases for now.
-        if (keyword.equals("GOTO") || keyword.equals("GOSUB")) {
-            String newArgs = renumberLineList(args, lineMap, false);
-            return createStatement(keyword, newArgs);
-        }
-        // Other keywords left unchanged
-        return stmt;
-    }
-
-    /**
-     * Renumber a list of comma-separated line numbers (used by ON..GOTO, etc.).
-     */
-    private String renumberLineList(String argText,
-                                    Map<Integer, Integer> lineMap,
-                                    boolean allowExpressions) {
-        StringBuilder sb = new StringBuilder();
-        String[] parts = argText.split(",");
-        for (int i = 0; i < parts.length; i++) {
-            String part = parts[i].trim();
-            if (part.matches("\\d+")) {
-                int oldLine = Integer.parseInt(part);
-                int newLine = lineMap.getOrDefault(oldLine, oldLine);
-                sb.append(newLine);
-            } else {
-                // If it's not a pure number we leave it alone unless expressions
-                // are allowed (future work)
-                sb.append(part);
-            }
-            if (i < parts.length - 1) {
-                sb.append(",");
-            }
-        }
-        return sb.toString();
-    }
-
     /** Utility to join statements back together using ':' separators. */
     private String joinStatements(List<Statement> stmts) {
         StringBuilder sb = new StringBuilder();
@@ -272,16 +238,6 @@ public class BasicShell {
         return sb.toString();
     }
 
-    /** Create a new Statement instance from its textual representation. */
-    private Statement createStatement(String keyword, String args) {
-        try {
-            return BasicLoader.parseStatement(keyword + (args.isEmpty() ? "" : " " + args));
-        } catch (BasicSyntaxError e) {
-            // Should never happen because we started from a valid statement.
-            return new BasicStatement(keyword, args);
-        }
-    }
-
     // ---------------------------------------------------------------------
     // Simple stub for the symbols command so existing tests compile.
     // ---------------------------------------------------------------------
@@ -303,6 +259,43 @@ public class BasicShell {
         }
     }
 
+    /**
+     * Edit the program with a numbered line as typed at the prompt.
+     * "100 PRINT X" inserts or replaces line 100 and a bare "100" deletes it.
+     * Each edit is O(log n) in the program size, so pasting a long listing
+     * is fast; the program is re-indexed once, when it next runs.
+     *
+     * @return true if the program was changed
+     */
+    public boolean enterLine(String text) {
+        text = text.trim();
+        try {
+            if (executor == null) {
+                executor = new Executor(new Program(new ArrayList<>()));
+                load_status = true;
+            }
+            Program program = executor.getProgram();
+            if (text.matches("\\d+")) {
+                int lineNumber = Integer.parseInt(text);
+                if (!program.deleteLine(lineNumber)) {
+                    System.out.println("Line " + lineNumber + " not found");
+                    return false;
+                }
+            } else {
+                program.insertOrReplaceLine(BasicLoader.tokenizeLine(text));
+            }
+            programEdited = true;
+            return true;
+        } catch (BasicSyntaxError e) {
+            System.out.println("Syntax error: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid line number: " + text);
+        } catch (IOException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+        return false;
+    }
+
     /** Expose the underlying Executor (read-only) for simple CLI use. */
     public Executor getExecutor() {
         return executor;
@@ -321,9 +314,9 @@ public class BasicShell {
                 line = line.trim();
                 if (line.isEmpty()) continue;
 
-                // Quick BASIC line detection (starts with digits)
+                // Numbered BASIC line: insert, replace or delete it
                 if (Character.isDigit(line.charAt(0))) {
-                    System.out.println("Editing of BASIC lines not yet supported in Java shell.");
+                    enterLine(line);
                     continue;
                 }
 
@@ -397,7 +390,9 @@ public class BasicShell {
         boolean coverage = args != null && args.trim().equalsIgnoreCase("coverage");
         Program prog = executor.getProgram();
         try {
-            executor = new Executor(prog, coverage);
+            executor = new Executor(prog, false, coverage);
+            loadedCoverage = null;
+            programEdited = false;
         } catch (IOException e) {
             System.out.println("Error: " + e.getMessage());
             return;
@@ -407,23 +402,68 @@ public class BasicShell {
 
     private void cmdCoverage(String args) {
         if (executor == null) { System.out.println("No program loaded."); return; }
-        Map<Integer, Set<Integer>> cov = executor.getCoverage();
+        String[] parts = args == null ? new String[0] : args.trim().split("\\s+", 2);
+        String sub = parts.length > 0 ? parts[0] : "";
+        String file = parts.length > 1 ? parts[1].trim() : null;
+        if (sub.equals("load")) {
+            if (file == null) { System.out.println("Usage: coverage load <file>"); return; }
+            try {
+                Coverage cov = Coverage.read(Paths.get(file));
+                if (!cov.matches(executor.getProgram())) {
+                    System.out.println("Coverage file is for a different program.");
+                    return;
+                }
+                loadedCoverage = cov;
+            } catch (IOException e) {
+                System.out.println("Error: " + e.getMessage());
+                return;
+            }
+            sub = "";
+        }
+        Coverage cov = loadedCoverage != null ? loadedCoverage : executor.getCoverage();
         if (cov == null || cov.isEmpty()) {
             System.out.println("No coverage data recorded.");
             return;
         }
-        if (args != null && args.trim().equals("lines")) {
-            for (ProgramLine line : executor.getProgram()) {
-                if (!cov.containsKey(line.getLine())) {
-                    System.out.println(line.getLine() + " not executed");
+        switch (sub) {
+            case "lines" -> {
+                for (int i = 0; i < cov.lineCount(); i++) {
+                    int executed = cov.executedStatements(i);
+                    if (executed == 0) {
+                        System.out.println(cov.lineNumber(i) + " not executed");
+                    } else if (executed < cov.statementsInLine(i)) {
+                        System.out.printf("%d partly executed (%d/%d statements)%n", cov.lineNumber(i), executed, cov.statementsInLine(i));
+                    }
                 }
             }
-            return;
+            case "save", "lcov", "json" -> {
+                if (file == null) { System.out.println("Usage: coverage " + sub + " <file>"); return; }
+                try {
+                    if (sub.equals("save")) {
+                        cov.write(Paths.get(file));
+                    } else {
+                        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(file)))) {
+                            if (sub.equals("lcov")) {
+                                cov.writeLcov(out, programFile != null ? programFile : "program.bas");
+                            } else {
+                                cov.writeJson(out);
+                            }
+                        }
+                    }
+                    System.out.println("Coverage written to " + file);
+                } catch (IOException e) {
+                    System.out.println("Error: " + e.getMessage());
+                }
+            }
+            default -> {
+                // summary
+                int totalLines = cov.lineCount();
+                int executedLines = cov.executedLineCount();
+                System.out.printf("Lines executed: %d/%d (%.1f%%)\n", executedLines, totalLines, 100.0*executedLines/totalLines);
+                System.out.printf("Statements executed: %d/%d (%.1f%%)\n", cov.executedStatementCount(), cov.statementCount(),
+                        100.0*cov.executedStatementCount()/cov.statementCount());
+            }
         }
-        // summary
-        int totalLines = executor.getProgram().size();
-        int executedLines = cov.size();
-        System.out.printf("Lines executed: %d/%d (%.1f%%)\n", executedLines, totalLines, 100.0*executedLines/totalLines);
     }
 
     private void runProgramCommand() {
@@ -481,6 +521,7 @@ public class BasicShell {
         executor = null;
         programFile = null;
         load_status = false;
+        programEdited = false;
         breakpoints.clear();
         dataBreakpoints.clear();
         System.out.println("Program and state cleared.");
@@ -613,7 +654,7 @@ public class BasicShell {
 
     private void cmdForStack() {
         if (executor == null) { System.out.println("No program loaded."); return; }
-        Stack<Executor.ForRecord> fs = executor.getForStack();
+        List<Executor.ForRecord> fs = executor.getForStack();
         System.out.println("FOR stack:");
         if (fs.isEmpty()) {
             System.out.println("\t<empty>");
@@ -625,7 +666,7 @@ public class BasicShell {
 
     private void cmdGosubStack() {
         if (executor == null) { System.out.println("No program loaded."); return; }
-        Stack<ControlLocation> gs = executor.getGosubStack();
+        List<ControlLocation> gs = executor.getGosubStack();
         System.out.println("GOSUB stack:");
         if (gs.isEmpty()) {
             System.out.println("\t<empty>");
@@ -642,7 +683,10 @@ public class BasicShell {
                 System.out.println("<no breakpoints>");
             } else {
                 System.out.println("Breakpoints:");
-                for (int[] bp : breakpoints) System.out.printf("\tline %d clause %d%n", bp[0], bp[1]);
+                for (Executor.Breakpoint bp : breakpoints) {
+                    System.out.printf("\tline %d clause %d%s%n", bp.line(), bp.clause(),
+                            bp.condition() != null ? " if " + bp.condition() : "");
+                }
                 for (String s : dataBreakpoints) System.out.printf("\tdata %s%n", s);
             }
             return;
@@ -652,15 +696,19 @@ public class BasicShell {
             System.out.println("Breakpoints cleared");
             return;
         }
-        String[] parts = args.trim().split(" ");
+        // break <line> [clause] [if <condition>]
+        String[] conditional = args.trim().split("(?i)\\s+if\\s+", 2);
+        String condition = conditional.length > 1 ? conditional[1].trim() : null;
+        String[] parts = conditional[0].trim().split(" ");
         if (Character.isDigit(parts[0].charAt(0))) {
             int line = Integer.parseInt(parts[0]);
             int offset = 0;
             if (parts.length > 1) {
                 try { offset = Integer.parseInt(parts[1]); } catch (NumberFormatException ignore) {}
             }
-            breakpoints.add(new int[]{line, offset});
-            System.out.printf("Breakpoint set at line %d clause %d%n", line, offset);
+            breakpoints.add(new Executor.Breakpoint(line, offset, condition));
+            System.out.printf("Breakpoint set at line %d clause %d%s%n", line, offset,
+                    condition != null ? " if " + condition : "");
         } else {
             dataBreakpoints.add(parts[0]);
             System.out.println("Data breakpoint set on symbol " + parts[0]);
@@ -670,8 +718,19 @@ public class BasicShell {
     private void cmdContinue(boolean singleStep) {
         if (executor == null) {
             System.out.println("No program loaded."); return; }
+        if (programEdited) {
+            System.out.println("Program was edited - starting from the beginning.");
+            try {
+                executor = new Executor(executor.getProgram());
+            } catch (IOException e) {
+                System.out.println("Error: " + e.getMessage());
+                return;
+            }
+            programEdited = false;
+        }
         try {
-            RunStatus rs = executor.runProgram(breakpoints, dataBreakpoints, singleStep);
+            executor.setBreakpoints(breakpoints, dataBreakpoints);
+            RunStatus rs = executor.runProgram(singleStep);
             switch (rs) {
                 case BREAK_CODE -> System.out.println("Breakpoint hit.");
                 case BREAK_STEP -> System.out.println("Single step done.");
@@ -721,11 +780,11 @@ public class BasicShell {
             case "stmts" -> System.out.println("stmts [line] : list statements for a specific line");
             case "fors", "forstack" -> System.out.println("fors | forstack : show FOR stack");
             case "gosubs" -> System.out.println("gosubs : show GOSUB stack");
-            case "break" -> System.out.println("break <line> [clause] | break <symbol> | break list | break clear");
+            case "break" -> System.out.println("break <line> [clause] [if <expr>] | break <symbol> | break list | break clear");
             case "continue", "c" -> System.out.println("continue : resume after breakpoint");
             case "next", "n" -> System.out.println("next : single-step one statement");
             case "?" -> System.out.println("? <expr> : evaluate expression");
-            case "coverage" -> System.out.println("coverage [lines] : report coverage after 'run coverage'");
+            case "coverage" -> System.out.println("coverage [lines | load <file> | save <file> | lcov <file> | json <file>] : report coverage after 'run coverage'");
             default -> System.out.println("Unknown command: " + cmd);
         }
     }
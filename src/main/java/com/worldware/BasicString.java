@@ -0,0 +1,142 @@
+package com.worldware;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * String value optimised for the splice-heavy code found in game programs,
+ * e.g. {@code Q$=LEFT$(Q$,S-1)+X$+RIGHT$(Q$,190-S)}.
+ * <p>
+ * A BasicString is either a slice view (base, offset, length) over an
+ * existing character sequence, or a pending concatenation of two sequences.
+ * LEFT$/RIGHT$/MID$ return slices without copying and "+" returns a
+ * concatenation node, so LEN and substring extraction are O(1).  The
+ * characters are copied into a single String only when something needs them
+ * one by one (output, comparison, conversion); the flattened form is cached.
+ * <p>
+ * Evaluator internals pass these around as {@link CharSequence}; anything
+ * handed outside the evaluator (symbol look-ups, PRINT) sees a plain String.
+ */
+public final class BasicString implements CharSequence {
+
+    // Concatenations shorter than this are built eagerly - a node costs more than the copy
+    private static final int MIN_ROPE_LENGTH = 32;
+
+    private CharSequence base;     // null while this is an unflattened concatenation
+    private int offset;
+    private final int length;
+    private CharSequence left;
+    private CharSequence right;
+    private String flat;
+
+    private BasicString(CharSequence base, int offset, int length) {
+        this.base = base;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    private BasicString(CharSequence left, CharSequence right) {
+        this.left = left;
+        this.right = right;
+        this.length = left.length() + right.length();
+    }
+
+    /**
+     * Concatenate two string values
+     */
+    public static CharSequence concat(CharSequence a, CharSequence b) {
+        if (a.length() == 0) return b;
+        if (b.length() == 0) return a;
+        if (a.length() + b.length() < MIN_ROPE_LENGTH) {
+            return a.toString() + b;
+        }
+        return new BasicString(a, b);
+    }
+
+    /**
+     * Characters [start, end) of s as a view that shares s's storage
+     */
+    public static CharSequence slice(CharSequence s, int start, int end) {
+        if (start == 0 && end == s.length()) return s;
+        if (start == end) return "";
+        if (s instanceof BasicString bs) {
+            bs.flatten();
+            return new BasicString(bs.base, bs.offset + start, end - start);
+        }
+        return new BasicString(s, start, end - start);
+    }
+
+    /**
+     * Convert any internal string value to a plain String for use outside the evaluator
+     */
+    public static Object export(Object value) {
+        return value instanceof BasicString bs ? bs.toString() : value;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        flatten();
+        return base.charAt(offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return slice(this, start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) {
+            flatten();
+            flat = base.subSequence(offset, offset + length).toString();
+            // The slice now owns its own copy; drop the reference to the larger base
+            base = flat;
+            offset = 0;
+        }
+        return flat;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BasicString other && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    /**
+     * Collapse a concatenation tree into one String.  Iterative, because a
+     * loop of {@code A$=A$+X$} builds a tree as deep as the loop count.
+     */
+    private void flatten() {
+        if (base != null) return;
+        StringBuilder sb = new StringBuilder(length);
+        Deque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(right);
+        pending.push(left);
+        while (!pending.isEmpty()) {
+            CharSequence part = pending.pop();
+            if (part instanceof BasicString bs && bs.base == null) {
+                pending.push(bs.right);
+                pending.push(bs.left);
+            } else {
+                sb.append(part);
+            }
+        }
+        flat = sb.toString();
+        base = flat;
+        offset = 0;
+        left = null;
+        right = null;
+    }
+}
@@ -0,0 +1,79 @@
+package com.worldware;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Stream;
+
+/**
+ * Training run for the AppCDS archive built by the cdsArchive Gradle task.
+ * <p>
+ * The JVM is started with -XX:ArchiveClassesAtExit, so every class loaded
+ * here ends up in the archive.  Each program given on the command line goes
+ * through the same steps as a real launch: loading through the program cache
+ * (a miss, which parses and writes, then a hit), running it as
+ * {@link TestSuiteRunner} does in-process, and loading it into a
+ * {@link BasicShell}.  Program output is discarded and the cache is a
+ * temporary directory, so training leaves nothing behind but the archive.
+ * <p>
+ * Usage: CdsTraining program.bas...
+ */
+public class CdsTraining {
+    private static final int TIMEOUT_SECONDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: CdsTraining program.bas...");
+            System.exit(Main.EXIT_ERROR);
+        }
+        Path cacheDir = Files.createTempDirectory("trekbasic-cds");
+        // No size threshold: the sample programs are all far below the real one
+        ProgramCache cache = new ProgramCache(cacheDir, 0);
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cds-training-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        PrintStream console = System.out;
+        int trained = 0;
+        try {
+            for (String arg : args) {
+                Path program = Paths.get(arg);
+                try {
+                    cache.load(program, false);
+                    cache.load(program, false);
+                    cache.load(program, true);
+                } catch (BasicSyntaxError | IOException e) {
+                    console.printf("Skipping %s: %s%n", program, e.getMessage());
+                    continue;
+                }
+                TestSuiteRunner.runInProcess(program.toFile(), TIMEOUT_SECONDS, watchdog);
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                try {
+                    new BasicShell(program.toString());
+                } finally {
+                    System.setOut(console);
+                }
+                trained++;
+            }
+        } finally {
+            watchdog.shutdownNow();
+            deleteTree(cacheDir);
+        }
+        console.printf("Trained on %d of %d programs%n", trained, args.length);
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,674 @@
+package com.worldware;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An expression parsed once into a tree, so that evaluating it again skips
+ * the lexer and parser.  Built by {@link ExpressionEvaluator#compile}.
+ * <p>
+ * Every node carries the {@link ValueType} found for it from the program's
+ * {@link TypeInference}.  Where both operands are known to be whole numbers,
+ * arithmetic, comparisons, INT() and array subscripts use long arithmetic
+ * instead of converting through double.  Values can still be changed behind
+ * the analysis' back (snapshot restore, Executor.putSymbol), so each fast
+ * path checks its operands and otherwise takes the general path, which is
+ * the same code the interpreting parser uses.  Results are identical either way.
+ * <p>
+ * Operations whose operands are all constants are evaluated while compiling
+ * (constant folding) when they are pure: every operator and every builtin
+ * except RND.  An operation that fails (LOG(0)) is left in place, so its error
+ * is still raised when, and only if, the program evaluates it.  toString()
+ * gives the expression back in BASIC syntax, as folded.
+ */
+abstract class CompiledExpression {
+    private final ValueType type;
+
+    CompiledExpression(ValueType type) {
+        this.type = type;
+    }
+
+    ValueType type() {
+        return type;
+    }
+
+    abstract Object evaluate(ExpressionEvaluator ev);
+
+    /**
+     * True for a pure operation whose operands are all constants
+     */
+    boolean foldable() {
+        return false;
+    }
+
+    /**
+     * Add the simple variables and the arrays (or user functions) the
+     * expression reads to the sets.  False if its value can depend on more
+     * than those: RND, or text left to the parser.
+     */
+    boolean reads(Set<String> variables, Set<String> arrays) {
+        return true;
+    }
+
+    private static boolean allRead(Set<String> variables, Set<String> arrays, CompiledExpression... operands) {
+        for (CompiledExpression operand : operands) {
+            if (!operand.reads(variables, arrays)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The type of a value known when compiling
+     */
+    static ValueType typeOfValue(Object value) {
+        if (value instanceof CharSequence) return ValueType.STRING;
+        if (value instanceof Integer) return ValueType.INTEGER;
+        return ValueType.NUMBER;
+    }
+
+    private static boolean constants(CompiledExpression... operands) {
+        for (CompiledExpression operand : operands) {
+            if (!(operand instanceof Constant)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * An operand in BASIC syntax, bracketed if it is itself an operation
+     */
+    private static String operand(CompiledExpression e) {
+        boolean operation = e instanceof Arithmetic || e instanceof IntegerArithmetic || e instanceof Concat
+                || e instanceof Negate
+                || e instanceof Comparison || e instanceof IntegerComparison || e instanceof Logical;
+        return operation ? "(" + e + ")" : e.toString();
+    }
+
+    private static String callText(String name, CompiledExpression[] args) {
+        StringBuilder sb = new StringBuilder(name).append('(');
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(args[i]);
+        }
+        return sb.append(')').toString();
+    }
+
+    // Returned by integral() for a value that is not a whole number in int range
+    private static final long NOT_INTEGRAL = Long.MIN_VALUE;
+
+    /**
+     * The value of a whole number held as an Integer or Double, else NOT_INTEGRAL
+     */
+    private static long integral(Object value) {
+        if (value instanceof Integer i) return i;
+        if (value instanceof Double d) {
+            double v = d;
+            int i = (int) v;
+            if (i == v) return i;
+        }
+        return NOT_INTEGRAL;
+    }
+
+    /**
+     * Same result as the double arithmetic's (int) cast, which saturates
+     */
+    private static Integer saturate(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    private static boolean bothInteger(CompiledExpression left, CompiledExpression right) {
+        return left.type == ValueType.INTEGER && right.type == ValueType.INTEGER;
+    }
+
+    /* --------------------------------------------------------------------- */
+    /*  Node factories, choosing a specialised node from the operand types   */
+    /* --------------------------------------------------------------------- */
+
+    static CompiledExpression arithmetic(String op, CompiledExpression left, CompiledExpression right) {
+        if (op.equals("+") && (left.type == ValueType.STRING || right.type == ValueType.STRING)) {
+            return new Concat(left, right);
+        }
+        if (!op.equals("/") && !op.equals("^") && bothInteger(left, right)) {
+            return new IntegerArithmetic(op.charAt(0), left, right);
+        }
+        return new Arithmetic(op, left, right);
+    }
+
+    static CompiledExpression negate(CompiledExpression operand) {
+        return new Negate(operand);
+    }
+
+    static CompiledExpression comparison(String op, CompiledExpression left, CompiledExpression right) {
+        if (bothInteger(left, right)) {
+            return new IntegerComparison(op, left, right);
+        }
+        return new Comparison(op, left, right);
+    }
+
+    /**
+     * NAME(args): a function call or array element.  User functions are
+     * only known at run time (DEF), so that choice is made when evaluated.
+     */
+    static CompiledExpression call(String name, List<CompiledExpression> args, boolean builtin) {
+        CompiledExpression[] argArray = args.toArray(new CompiledExpression[0]);
+        if (builtin) {
+            if (name.equals("INT") && argArray.length == 1 && argArray[0].type == ValueType.INTEGER) {
+                return new WholeNumber(argArray[0]);
+            }
+            return new Call(name, argArray, builtinType(name));
+        }
+        return new Element(name, argArray);
+    }
+
+    private static ValueType builtinType(String name) {
+        return switch (name) {
+            case "INT", "SGN", "LEN" -> ValueType.INTEGER;
+            case "LEFT$", "RIGHT$", "MID$", "STR$" -> ValueType.STRING;
+            default -> ValueType.NUMBER;
+        };
+    }
+
+    /* --------------------------------------------------------------------- */
+    /*  Nodes                                                                */
+    /* --------------------------------------------------------------------- */
+
+    static final class Constant extends CompiledExpression {
+        private final Object value;
+
+        Constant(Object value, ValueType type) {
+            super(type);
+            this.value = value;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            return value;
+        }
+
+        Object value() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            if (value instanceof CharSequence) return "\"" + value + "\"";
+            // A literal written without a point is a whole Double
+            if (value instanceof Double d && type() == ValueType.INTEGER) return String.valueOf(d.intValue());
+            return value.toString();
+        }
+    }
+
+    static final class Variable extends CompiledExpression {
+        private final String name;
+
+        Variable(String name, ValueType type) {
+            super(type);
+            this.name = name;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            return ev.variable(name);
+        }
+
+        String name() {
+            return name;
+        }
+
+        @Override
+        boolean reads(Set<String> variables, Set<String> arrays) {
+            variables.add(name);
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Text the compiler could not handle; it is run through the parser each
+     * time, which reports any error exactly as before
+     */
+    static final class Interpreted extends CompiledExpression {
+        private final String source;
+
+        Interpreted(String source) {
+            super(ValueType.NUMBER);
+            this.source = source;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            return ev.evaluateValue(source);
+        }
+
+        @Override
+        boolean reads(Set<String> variables, Set<String> arrays) {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return source;
+        }
+    }
+
+    static final class Arithmetic extends CompiledExpression {
+        private final String op;
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        Arithmetic(String op, CompiledExpression left, CompiledExpression right) {
+            super(ValueType.NUMBER);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            Object l = left.evaluate(ev);
+            return ev.performArithmetic(l, right.evaluate(ev), op);
+        }
+
+        String op() {
+            return op;
+        }
+
+        CompiledExpression left() {
+            return left;
+        }
+
+        CompiledExpression right() {
+            return right;
+        }
+
+        @Override
+        boolean foldable() {
+            return constants(left, right);
+        }
+
+        @Override
+        boolean reads(Set<String> variables, Set<String> arrays) {
+            return allRead(variables, arrays, left, right);
+        }
+
+        @Override
+        public String toString() {
+            return operand(left) + op + operand(right);
+        }
+    }
+
+    static final class IntegerArithmetic extends CompiledExpression {
+        private final char op;
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        IntegerArithmetic(char op, CompiledExpression left, CompiledExpression right) {
+            super(ValueType.INTEGER);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            Object l = left.evaluate(ev);
+            Object r = right.evaluate(ev);
+            long a = integral(l);
+            long b = integral(r);
+            if (a == NOT_INTEGRAL || b == NOT_INTEGRAL) {
+                return ev.performArithmetic(l, r, String.valueOf(op));
+            }
+            return switch (op) {
+                case '+' -> saturate(a + b);
+                case '-' -> saturate(a - b);
+                default -> saturate(a * b);
+            };
+        }
+
+        String op() {
+            return String.valueOf(op);
+        }
+
+        CompiledExpression left() {
+            return left;
+        }
+
+        CompiledExpression right() {
+            return right;
+        }
+
+        @Override
+        boolean foldable() {
+            return constants(left, right);
+        }
+
+        @Override
+        boolean reads(Set<String> variables, Set<String> arrays) {
+            return allRead(variables, arrays, left, right);
+        }
+
+        @Override
+        public String toString() {
+            return operand(left) + op + operand(right);
+        }
+    }
+
+    /**
+     * Unary minus, which the parser evaluates as 0.0 - operand
+     */
+    private static final class Negate extends CompiledExpression {
+        private final CompiledExpression operand;
+
+        Negate(CompiledExpression operand) {
+            super(operand.type == ValueType.INTEGER ? ValueType.INTEGER : ValueType.NUMBER);
+            this.operand = operand;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            Object value = operand.evaluate(ev);
+            if (type() == ValueType.INTEGER) {
+                long v = integral(value);
+                if (v != NOT_INTEGRAL) return saturate(-v);
+            }
+            return ev.performArithmetic(0.0, value, "-");
+        }
+
+        @Override
+        boolean foldable() {
+            return constants(operand);
+        }
+
+        @Override
+        boolean reads(Set<String> variables, Set<String> arrays) {
+            return operand.reads(variables, arrays);
+        }
+
+        @Override
+        public String toString() {
+            return "-" + operand(operand);
+        }
+    }
+
+    private static final class Concat extends CompiledExpression {
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        Concat(CompiledExpression left, CompiledExpression right) {
+            super(ValueType.STRING);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            Object l = left.evaluate(ev);
+            Object r = right.evaluate(ev);
+            if (l instanceof CharSequence a && r instanceof CharSequence b) {
+                return BasicString.concat(a, b);
+            }
+            return ev.performArithmetic(l, r, "+");
+        }
+
+        @Override
+        boolean foldable() {
+            return constants(left, right);
+        }
+
+        @Override
+        boolean reads(Set<String> variables, Set<String> arrays) {
+            return allRead(variables, arrays, left, right);
+        }
+
+        @Override
+        public String toString() {
+            return operand(left) + "+" + operand(right);
+        }
+    }
+
+    private static final class Comparison extends CompiledExpression {
+        private final String op;
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        Comparison(String op, CompiledExpression left, CompiledExpression right) {
+            super(ValueType.NUMBER);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            Object l = left.evaluate(ev);
+            return ev.compareValues(l, right.evaluate(ev), op);
+        }
+
+        @Override
+        boolean foldable() {
+            return constants(left, right);
+        }
+
+        @Override
+        boolean reads(Set<String> variables, Set<String> arrays) {
+            return allRead(variables, arrays, left, right);
+        }
+
+        @Override
+        public String toString() {
+            return operand(left) + op + operand(right);
+        }
+    }
+
+    private static final class IntegerComparison extends CompiledExpression {
+        private final String op;
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        IntegerComparison(String op, CompiledExpression left, CompiledExpression right) {
+            super(ValueType.NUMBER);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            Object l = left.evaluate(ev);
+            Object r = right.evaluate(ev);
+            long a = integral(l);
+            long b = integral(r);
+            if (a == NOT_INTEGRAL || b == NOT_INTEGRAL) {
+                return ev.compareValues(l, r, op);
+            }
+            return switch (op) {
+                case "=" -> a == b;
+                case "<>" -> a != b;
+                case "<" -> a < b;
+                case ">" -> a > b;
+                case "<=" -> a <= b;
+                case ">=" -> a >= b;
+                default -> false;
+            };
+        }
+
+        @Override
+        boolean foldable() {
+            return constants(left, right);
+        }
+
+        @Override
+        boolean reads(Set<String> variables, Set<String> arrays) {
+            return allRead(variables, arrays, left, right);
+        }
+
+        @Override
+        public String toString() {
+            return operand(left) + op + operand(right);
+        }
+    }
+
+    /**
+     * AND / OR.  Both sides are always evaluated, as in the parser.
+     */
+    static final class Logical extends CompiledExpression {
+        private final boolean and;
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        Logical(boolean and, CompiledExpression left, CompiledExpression right) {
+            super(ValueType.INTEGER);
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            boolean l = ExpressionEvaluator.isTrue(left.evaluate(ev));
+            boolean r = ExpressionEvaluator.isTrue(right.evaluate(ev));
+            return (and ? l && r : l || r) ? 1 : 0;
+        }
+
+        @Override
+        boolean foldable() {
+            return constants(left, right);
+        }
+
+        @Override
+        boolean reads(Set<String> variables, Set<String> arrays) {
+            return allRead(variables, arrays, left, right);
+        }
+
+        @Override
+        public String toString() {
+            return operand(left) + (and ? " AND " : " OR ") + operand(right);
+        }
+    }
+
+    private static final class Call extends CompiledExpression {
+        private final String name;
+        private final CompiledExpression[] args;
+
+        Call(String name, CompiledExpression[] args, ValueType type) {
+            super(type);
+            this.name = name;
+            this.args = args;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            return ev.callFunction(name, evaluateAll(ev, args));
+        }
+
+        @Override
+        boolean foldable() {
+            return !name.equals("RND") && constants(args);
+        }
+
+        @Override
+        boolean reads(Set<String> variables, Set<String> arrays) {
+            return !name.equals("RND") && allRead(variables, arrays, args);
+        }
+
+        @Override
+        public String toString() {
+            return callText(name, args);
+        }
+    }
+
+    /**
+     * INT() of a whole number is the number itself
+     */
+    private static final class WholeNumber extends CompiledExpression {
+        private final CompiledExpression arg;
+
+        WholeNumber(CompiledExpression arg) {
+            super(ValueType.INTEGER);
+            this.arg = arg;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            Object value = arg.evaluate(ev);
+            if (value instanceof Integer) return value;
+            long v = integral(value);
+            if (v != NOT_INTEGRAL) return (int) v;
+            return ev.callFunction("INT", List.of(value));
+        }
+
+        @Override
+        boolean foldable() {
+            return constants(arg);
+        }
+
+        @Override
+        boolean reads(Set<String> variables, Set<String> arrays) {
+            return arg.reads(variables, arrays);
+        }
+
+        @Override
+        public String toString() {
+            return "INT(" + arg + ")";
+        }
+    }
+
+    /**
+     * An array element, or a call of a user function of the same name
+     */
+    private static final class Element extends CompiledExpression {
+        private final String name;
+        private final CompiledExpression[] indices;
+
+        Element(String name, CompiledExpression[] indices) {
+            super(ValueType.NUMBER);
+            this.name = name;
+            this.indices = indices;
+        }
+
+        @Override
+        Object evaluate(ExpressionEvaluator ev) {
+            if (ev.isUserFunction(name)) {
+                return ev.callFunction(name, evaluateAll(ev, indices));
+            }
+            Object current = ev.array(name);
+            // Subscripts are all evaluated, even past a missing array or element
+            boolean missing = current == null;
+            for (CompiledExpression index : indices) {
+                Object value = index.evaluate(ev);
+                if (missing) continue;
+                long whole = integral(value);
+                int idx = (whole != NOT_INTEGRAL ? (int) whole : (int) ev.toNumber(value)) - Dialect.ARRAY_OFFSET;
+                if (current instanceof Object[] array && idx >= 0 && idx < array.length) {
+                    current = array[idx];
+                } else {
+                    missing = true;
+                }
+            }
+            return missing ? 0 : current;
+        }
+
+        @Override
+        boolean reads(Set<String> variables, Set<String> arrays) {
+            arrays.add(name);
+            return allRead(variables, arrays, indices);
+        }
+
+        @Override
+        public String toString() {
+            return callText(name, indices);
+        }
+    }
+
+    private static List<Object> evaluateAll(ExpressionEvaluator ev, CompiledExpression[] args) {
+        List<Object> values = new ArrayList<>(args.length);
+        for (CompiledExpression arg : args) {
+            values.add(arg.evaluate(ev));
+        }
+        return values;
+    }
+}
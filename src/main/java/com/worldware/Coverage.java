@@ -0,0 +1,245 @@
+package com.worldware;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Statement coverage of one program, one bit per statement.
+ * <p>
+ * Every statement gets a global index (the statements of all lines numbered
+ * in order), so recording a hit is an array lookup and an OR into a long[]
+ * bitmap.  Coverage from many runs of the same program can be saved, merged
+ * by union and exported as LCOV or JSON.
+ * <p>
+ * Saved file layout (big-endian): int magic, int version, int program
+ * fingerprint, int line count, then per line its line number and statement
+ * count, then the bitmap as a word count and that many longs.
+ */
+public class Coverage {
+    static final int MAGIC = 0x54424B43; // "TBKC"
+    static final int VERSION = 1;
+
+    private final int fingerprint;
+    private final int[] lineNumbers;
+    private final int[] lineStarts; // global index of each line's first statement; one extra entry at the end
+    private final long[] bits;
+
+    private Coverage(int fingerprint, int[] lineNumbers, int[] lineStarts) {
+        this.fingerprint = fingerprint;
+        this.lineNumbers = lineNumbers;
+        this.lineStarts = lineStarts;
+        this.bits = new long[(lineStarts[lineStarts.length - 1] + 63) >>> 6];
+    }
+
+    /**
+     * Empty coverage for the program as it is now
+     */
+    public Coverage(Program program) {
+        this(SnapshotFormat.fingerprint(program), lineNumbersOf(program), lineStartsOf(program));
+    }
+
+    private static int[] lineNumbersOf(Program program) {
+        int[] numbers = new int[program.size()];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = program.getLine(i).getLine();
+        }
+        return numbers;
+    }
+
+    private static int[] lineStartsOf(Program program) {
+        return program.getStatementStarts().clone();
+    }
+
+    /**
+     * True if this coverage was recorded against the given program as it is now
+     */
+    public boolean matches(Program program) {
+        return fingerprint == SnapshotFormat.fingerprint(program) && Arrays.equals(lineStarts, program.getStatementStarts());
+    }
+
+    /**
+     * Mark the statement at (line index, statement offset) as executed
+     */
+    public void hit(int lineIndex, int offset) {
+        int s = lineStarts[lineIndex] + offset;
+        bits[s >>> 6] |= 1L << s;
+    }
+
+    public boolean isExecuted(int lineIndex, int offset) {
+        int s = lineStarts[lineIndex] + offset;
+        return (bits[s >>> 6] & (1L << s)) != 0;
+    }
+
+    /**
+     * Number of statements on the line that were executed
+     */
+    public int executedStatements(int lineIndex) {
+        int count = 0;
+        for (int s = lineStarts[lineIndex]; s < lineStarts[lineIndex + 1]; s++) {
+            if ((bits[s >>> 6] & (1L << s)) != 0) count++;
+        }
+        return count;
+    }
+
+    public boolean isLineExecuted(int lineIndex) {
+        return executedStatements(lineIndex) > 0;
+    }
+
+    public int lineCount() {
+        return lineNumbers.length;
+    }
+
+    public int lineNumber(int lineIndex) {
+        return lineNumbers[lineIndex];
+    }
+
+    public int statementsInLine(int lineIndex) {
+        return lineStarts[lineIndex + 1] - lineStarts[lineIndex];
+    }
+
+    public int executedLineCount() {
+        int count = 0;
+        for (int i = 0; i < lineNumbers.length; i++) {
+            if (isLineExecuted(i)) count++;
+        }
+        return count;
+    }
+
+    public int statementCount() {
+        return lineStarts[lineNumbers.length];
+    }
+
+    public int executedStatementCount() {
+        int count = 0;
+        for (long word : bits) count += Long.bitCount(word);
+        return count;
+    }
+
+    public boolean isEmpty() {
+        for (long word : bits) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(bits, 0L);
+    }
+
+    /**
+     * Add everything executed in another run of the same program
+     */
+    public void merge(Coverage other) {
+        if (other.fingerprint != fingerprint || !Arrays.equals(other.lineStarts, lineStarts)) {
+            throw new IllegalArgumentException("Coverage is from a different program");
+        }
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] |= other.bits[i];
+        }
+    }
+
+    public void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(fingerprint);
+            out.writeInt(lineNumbers.length);
+            for (int i = 0; i < lineNumbers.length; i++) {
+                out.writeInt(lineNumbers[i]);
+                out.writeInt(statementsInLine(i));
+            }
+            out.writeInt(bits.length);
+            for (long word : bits) out.writeLong(word);
+        }
+    }
+
+    public static Coverage read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a coverage file: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported coverage version " + version + ": " + path);
+            }
+            int fingerprint = in.readInt();
+            int lines = in.readInt();
+            if (lines < 0) throw new IOException("Corrupt coverage file: " + path);
+            int[] lineNumbers = new int[lines];
+            int[] lineStarts = new int[lines + 1];
+            for (int i = 0; i < lines; i++) {
+                lineNumbers[i] = in.readInt();
+                int statements = in.readInt();
+                if (statements < 0) throw new IOException("Corrupt coverage file: " + path);
+                lineStarts[i + 1] = lineStarts[i] + statements;
+            }
+            Coverage coverage = new Coverage(fingerprint, lineNumbers, lineStarts);
+            if (in.readInt() != coverage.bits.length) {
+                throw new IOException("Corrupt coverage file: " + path);
+            }
+            for (int i = 0; i < coverage.bits.length; i++) {
+                coverage.bits[i] = in.readLong();
+            }
+            return coverage;
+        }
+    }
+
+    /**
+     * Write an LCOV tracefile record.  Hit counts are 0 or 1, since only
+     * whether a statement ran is recorded.  Lines with several statements
+     * also get one BRDA entry per statement, so partly executed lines show up.
+     */
+    public void writeLcov(PrintWriter out, String sourceFile) {
+        out.println("TN:");
+        out.println("SF:" + sourceFile);
+        int branches = 0;
+        int branchesHit = 0;
+        for (int i = 0; i < lineNumbers.length; i++) {
+            int statements = statementsInLine(i);
+            if (statements < 2) continue;
+            for (int s = 0; s < statements; s++) {
+                boolean hit = isExecuted(i, s);
+                out.println("BRDA:" + lineNumbers[i] + ",0," + s + "," + (hit ? "1" : isLineExecuted(i) ? "0" : "-"));
+                branches++;
+                if (hit) branchesHit++;
+            }
+        }
+        out.println("BRF:" + branches);
+        out.println("BRH:" + branchesHit);
+        int hitLines = 0;
+        for (int i = 0; i < lineNumbers.length; i++) {
+            boolean hit = isLineExecuted(i);
+            out.println("DA:" + lineNumbers[i] + "," + (hit ? 1 : 0));
+            if (hit) hitLines++;
+        }
+        out.println("LF:" + lineNumbers.length);
+        out.println("LH:" + hitLines);
+        out.println("end_of_record");
+    }
+
+    /**
+     * Write a JSON summary with per-line detail
+     */
+    public void writeJson(PrintWriter out) {
+        out.println("{");
+        out.println(String.format(Locale.ROOT, "  \"lines\": %d, \"linesExecuted\": %d, \"statements\": %d, \"statementsExecuted\": %d, \"percent\": %.1f,",
+                lineCount(), executedLineCount(), statementCount(), executedStatementCount(),
+                statementCount() == 0 ? 0.0 : 100.0 * executedStatementCount() / statementCount()));
+        out.println("  \"detail\": [");
+        for (int i = 0; i < lineNumbers.length; i++) {
+            out.print("    {\"line\": " + lineNumbers[i] + ", \"statements\": " + statementsInLine(i)
+                    + ", \"executed\": " + executedStatements(i) + "}");
+            out.println(i + 1 < lineNumbers.length ? "," : "");
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+}
@@ -0,0 +1,130 @@
+package com.worldware;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Combines coverage files written by {@code Main --coverage} from many runs
+ * of the same program into one, and optionally exports the result.
+ * <p>
+ * Arguments may be .cov files or directories, which contribute every .cov
+ * file they contain.  Files are read and unioned in parallel.
+ * <p>
+ * Usage: {@code CoverageMerge [options] <file-or-dir>...}
+ * <pre>
+ *   --out FILE      write the merged coverage file
+ *   --lcov FILE     write an LCOV tracefile
+ *   --source NAME   source file name recorded in the LCOV output (default: program.bas)
+ *   --json FILE     write a JSON summary
+ * </pre>
+ * A one-line summary is always printed.
+ */
+public class CoverageMerge {
+    private static final String COVERAGE_EXTENSION = ".cov";
+
+    public static void main(String[] args) {
+        String outFile = null;
+        String lcovFile = null;
+        String jsonFile = null;
+        String source = "program.bas";
+        List<Path> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--out" -> outFile = args[++i];
+                    case "--lcov" -> lcovFile = args[++i];
+                    case "--json" -> jsonFile = args[++i];
+                    case "--source" -> source = args[++i];
+                    default -> {
+                        if (args[i].startsWith("-")) {
+                            System.err.println("Unknown option: " + args[i]);
+                            System.exit(2);
+                        }
+                        inputs.add(Paths.get(args[i]));
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.err.println("Option " + args[args.length - 1] + " requires a value");
+            System.exit(2);
+        }
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: CoverageMerge [--out FILE] [--lcov FILE [--source NAME]] [--json FILE] <file-or-dir>...");
+            System.exit(2);
+        }
+
+        try {
+            List<Path> files = expand(inputs);
+            Coverage merged = merge(files);
+            System.out.printf("Merged %d runs: %d/%d lines, %d/%d statements%n", files.size(),
+                    merged.executedLineCount(), merged.lineCount(),
+                    merged.executedStatementCount(), merged.statementCount());
+            if (outFile != null) {
+                merged.write(Paths.get(outFile));
+            }
+            if (lcovFile != null) {
+                try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(lcovFile)))) {
+                    merged.writeLcov(out, source);
+                }
+            }
+            if (jsonFile != null) {
+                try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(jsonFile)))) {
+                    merged.writeJson(out);
+                }
+            }
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Replace directories by the coverage files inside them
+     */
+    static List<Path> expand(List<Path> inputs) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> entries = Files.list(input)) {
+                    entries.filter(p -> p.getFileName().toString().endsWith(COVERAGE_EXTENSION))
+                            .sorted()
+                            .forEach(files::add);
+                }
+            } else {
+                files.add(input);
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IOException("No coverage files found");
+        }
+        return files;
+    }
+
+    /**
+     * Union of all the given coverage files, which must be from the same program
+     */
+    static Coverage merge(List<Path> files) {
+        return files.parallelStream()
+                .map(CoverageMerge::readUnchecked)
+                .reduce((a, b) -> {
+                    a.merge(b);
+                    return a;
+                })
+                .orElseThrow();
+    }
+
+    private static Coverage readUnchecked(Path path) {
+        try {
+            return Coverage.read(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.worldware;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All DATA values of a program, gathered once in line order.
+ * <p>
+ * Values are held in parallel primitive arrays with a type tag per entry, so
+ * READ is an array lookup and the pool never grows while the program runs.
+ * restoreOffsets maps a program line index to the position of the first DATA
+ * value at or after that line, which makes RESTORE &lt;line&gt; a constant-time
+ * lookup.
+ */
+public class DataPool {
+    public static final byte TYPE_INT = 0;
+    public static final byte TYPE_DOUBLE = 1;
+    public static final byte TYPE_STRING = 2;
+
+    private final byte[] types;
+    private final double[] numbers;
+    private final String[] strings;
+    private final int[] restoreOffsets;
+
+    private DataPool(byte[] types, double[] numbers, String[] strings, int[] restoreOffsets) {
+        this.types = types;
+        this.numbers = numbers;
+        this.strings = strings;
+        this.restoreOffsets = restoreOffsets;
+    }
+
+    /**
+     * Collect the values of every top-level DATA statement in the given lines
+     */
+    public static DataPool build(List<ProgramLine> lines) {
+        List<Object> values = new ArrayList<>();
+        int[] restoreOffsets = new int[lines.size() + 1];
+        for (int i = 0; i < lines.size(); i++) {
+            restoreOffsets[i] = values.size();
+            if (!lines.get(i).mayContain("DATA")) {
+                continue; // leaves lazily loaded lines without DATA unparsed
+            }
+            for (Statement stmt : lines.get(i).getStmts()) {
+                if (stmt instanceof DataStatement data) {
+                    values.addAll(data.getDataValues());
+                }
+            }
+        }
+        restoreOffsets[lines.size()] = values.size();
+
+        int n = values.size();
+        byte[] types = new byte[n];
+        double[] numbers = new double[n];
+        String[] strings = new String[n];
+        for (int i = 0; i < n; i++) {
+            Object v = values.get(i);
+            if (v instanceof Integer iv) {
+                types[i] = TYPE_INT;
+                numbers[i] = iv;
+            } else if (v instanceof Double dv) {
+                types[i] = TYPE_DOUBLE;
+                numbers[i] = dv;
+            } else {
+                types[i] = TYPE_STRING;
+                strings[i] = v.toString();
+            }
+        }
+        return new DataPool(types, numbers, strings, restoreOffsets);
+    }
+
+    /**
+     * Number of values in the pool
+     */
+    public int size() {
+        return types.length;
+    }
+
+    /**
+     * Get the value at a pool position, boxed the same way DATA parsing does
+     */
+    public Object get(int position) {
+        return switch (types[position]) {
+            case TYPE_INT -> (int) numbers[position];
+            case TYPE_DOUBLE -> numbers[position];
+            default -> strings[position];
+        };
+    }
+
+    /**
+     * Pool position of the first DATA value at or after the given program line index
+     */
+    public int offsetForLineIndex(int lineIndex) {
+        return restoreOffsets[lineIndex];
+    }
+}
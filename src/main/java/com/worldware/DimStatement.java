@@ -110,6 +110,22 @@ public class DimStatement extends BasicStatement {
             return dimensions;
         }
         
+        /**
+         * Number of elements createArray() makes, without making them;
+         * Long.MAX_VALUE if that overflows
+         */
+        public long getElementCount() {
+            long count = 1;
+            for (int dimension : dimensions) {
+                int size = Math.max(0, dimension + 1 - Dialect.ARRAY_OFFSET);
+                if (size != 0 && count > Long.MAX_VALUE / size) {
+                    return Long.MAX_VALUE;
+                }
+                count *= size;
+            }
+            return count;
+        }
+
         /**
          * Create a multi-dimensional array with the specified dimensions
          */
@@ -0,0 +1,227 @@
+package com.worldware;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Binary execution trace written by {@link Executor} when tracing is on.
+ * <p>
+ * The interpreter thread only packs fixed-size records into a preallocated
+ * ring buffer of longs; a background thread drains the ring into a
+ * memory-mapped file.  Nothing is formatted while the program runs -
+ * {@link TraceDump} turns the file back into the familiar text trace.
+ * <p>
+ * File layout (big-endian):
+ * <pre>
+ *   header   int magic, int version, int program fingerprint, int reserved,
+ *            long record count (-1 until the trace is closed), long start time (epoch ms)
+ *   records  16 bytes each: long word, long payload
+ *   trailer  int name count, then each variable slot name as UTF
+ * </pre>
+ * A record's word holds its kind in the top 4 bits, a statement offset in the
+ * next 28 and a line index (or variable slot) in the low 32.  The payload is
+ * the nanoseconds since the previous statement for STATEMENT records and the
+ * packed destination for JUMP records.
+ */
+public class ExecutionTrace implements AutoCloseable {
+    public static final String DEFAULT_FILE_NAME = "tracefile.bin";
+
+    static final int MAGIC = 0x54424B54; // "TBKT"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 16;
+    static final long RECORD_COUNT_OFFSET = 16;
+
+    // Kind 0 is never written, so a zero word marks the end of an unclosed trace
+    static final int KIND_STATEMENT = 1;
+    static final int KIND_JUMP = 2;
+    static final int KIND_VARIABLE = 3;
+
+    private static final int RING_RECORDS = 1 << 16;   // must be a power of two
+    private static final long REGION_SIZE = 16L << 20; // file is mapped this much at a time
+
+    private final FileChannel channel;
+    private final int fingerprint;
+
+    // Ring buffer: record n occupies ring[2n & mask], ring[2n & mask + 1]
+    private final long[] ring = new long[RING_RECORDS * 2];
+    private final AtomicLong published = new AtomicLong(); // records handed to the writer
+    private final AtomicLong consumed = new AtomicLong();  // records written to the file
+
+    // Producer (interpreter thread) state
+    private long head;
+    private long cachedConsumed;
+    private long lastNanos;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final List<String> slotNames = new ArrayList<>();
+
+    private final Thread writer;
+    private volatile boolean closing;
+    private volatile IOException failure;
+    private long recordsWritten;
+
+    private ExecutionTrace(FileChannel channel, int fingerprint) {
+        this.channel = channel;
+        this.fingerprint = fingerprint;
+        this.lastNanos = System.nanoTime();
+        this.writer = new Thread(this::drain, "basic-trace-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Create (or replace) a trace file for the given program and start the writer thread
+     */
+    public static ExecutionTrace open(Path path, Program program) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ExecutionTrace trace = new ExecutionTrace(channel, SnapshotFormat.fingerprint(program));
+        trace.writeHeader(-1);
+        trace.writer.start();
+        return trace;
+    }
+
+    /**
+     * Record that the statement at (index, offset) is about to execute
+     */
+    public void statement(int index, int offset) {
+        long now = System.nanoTime();
+        put(word(KIND_STATEMENT, offset, index), now - lastNanos);
+        lastNanos = now;
+    }
+
+    /**
+     * Record a control transfer
+     */
+    public void jump(ControlLocation from, ControlLocation to) {
+        put(word(KIND_JUMP, from.getOffset(), from.getIndex()), ((long) to.getOffset() << 32) | (to.getIndex() & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Record an assignment to a variable.  Names are mapped to small slot
+     * numbers here and written out once, in the trailer.
+     */
+    public void variable(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = slotNames.size();
+            slots.put(name, slot);
+            slotNames.add(name);
+        }
+        put(word(KIND_VARIABLE, 0, slot), 0);
+    }
+
+    /**
+     * Drain everything still buffered, finish the file and stop the writer thread
+     */
+    @Override
+    public void close() throws IOException {
+        if (closing) return;
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while finishing trace");
+        }
+        try {
+            if (failure == null) {
+                long end = HEADER_SIZE + recordsWritten * RECORD_SIZE;
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream trailer = new DataOutputStream(bytes);
+                trailer.writeInt(slotNames.size());
+                for (String name : slotNames) {
+                    trailer.writeUTF(name);
+                }
+                trailer.flush();
+                channel.write(ByteBuffer.wrap(bytes.toByteArray()), end);
+                channel.truncate(end + bytes.size());
+                writeHeader(recordsWritten);
+            }
+        } finally {
+            channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static long word(int kind, int offset, int value) {
+        return ((long) kind << 60) | ((long) (offset & 0x0FFFFFFF) << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    private void put(long word, long payload) {
+        if (head - cachedConsumed >= RING_RECORDS) {
+            // Ring is full: wait for the writer, or drop records if it has died
+            while (head - (cachedConsumed = consumed.get()) >= RING_RECORDS) {
+                if (failure != null) return;
+                LockSupport.unpark(writer);
+                Thread.onSpinWait();
+            }
+        }
+        int i = (int) (head & (RING_RECORDS - 1)) << 1;
+        ring[i] = word;
+        ring[i + 1] = payload;
+        head++;
+        published.lazySet(head);
+    }
+
+    private void writeHeader(long recordCount) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(fingerprint).putInt(0);
+        header.putLong(recordCount).putLong(System.currentTimeMillis());
+        header.flip();
+        channel.write(header, 0);
+    }
+
+    /**
+     * Writer thread: copy published records from the ring into the mapped file
+     */
+    private void drain() {
+        MappedByteBuffer region = null;
+        long regionStart = HEADER_SIZE;
+        try {
+            while (true) {
+                boolean finishing = closing;
+                long available = published.get();
+                long next = consumed.get();
+                if (next == available) {
+                    if (finishing) break;
+                    LockSupport.parkNanos(100_000);
+                    continue;
+                }
+                for (; next < available; next++) {
+                    if (region == null || !region.hasRemaining()) {
+                        if (region != null) {
+                            region.force();
+                            regionStart += REGION_SIZE;
+                        }
+                        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, REGION_SIZE);
+                    }
+                    int i = (int) (next & (RING_RECORDS - 1)) << 1;
+                    region.putLong(ring[i]);
+                    region.putLong(ring[i + 1]);
+                }
+                recordsWritten = available;
+                consumed.lazySet(available);
+            }
+            if (region != null) {
+                region.force();
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+}
@@ -1,38 +1,110 @@
 package com.worldware;
 
 import java.io.*;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
 
 /**
  * This class executes BASIC programs
  */
 public class Executor {
+    // Statements between looks at the clock when there is a time quota
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+    // A LET value that is a plain integer literal, stored as an Integer
+    private static final Pattern PLAIN_INTEGER = Pattern.compile("\\s*[-+]?[0-9]+\\s*");
+
     private final Program program;
     private ControlLocation location;
     private RunStatus runStatus;
-    private PrintWriter traceFile;
+    private ExecutionTrace trace;
     private boolean stackTrace;
     private ControlLocation gotoLocation;
-    private final Stack<ControlLocation> gosubStack;
-    private final Stack<ForRecord> forStack;
+    private final GosubStack gosubStack;
+    private final ForStack forStack;
     private final Map<String, Object> symbols;
-    private final Set<String> dataBreakpoints;
     private boolean modified;
     
-    // Data management for READ/DATA/RESTORE
-    private final List<Object> dataValues;
+    // Data management for READ/DATA/RESTORE - values are pooled at load time
+    private final DataPool dataPool;
     private int dataPointer;
     
     // User-defined functions management
     private final Map<String, DefStatement> userFunctions;
 
-    // Breakpoint and single-step support
-    private List<int[]> codeBreakpoints = Collections.emptyList();
-    private List<String> watchSymbols = Collections.emptyList();
+    // Source for RND, private to this executor so runs can be seeded and replayed
+    private final BasicRandom random;
+
+    // Expressions are parsed once per distinct text and typed from the program's
+    // type analysis; the evaluator only holds references to the tables above
+    private final ExpressionEvaluator evaluator;
+    private final TypeInference types;
+    private final Map<String, CompiledExpression> compiledExpressions;
+    private final Map<String, CompiledExpression> assignedValues;
+
+    // Breakpoint and single-step support.  Code breakpoints are flags indexed by
+    // global statement number (see Program.getStatementStarts); null when none are set.
+    private boolean[] breakFlags;
+    private ExpressionEvaluator.Prepared[] breakConditions;
+    private int[] statementStarts;
+    private Set<String> watchSymbols = Collections.emptySet();
     private boolean singleStepMode = false;
 
-    private final Map<Integer, Set<Integer>> coverage;
-    private boolean coverageEnabled;
+    // Statement coverage, null unless enabled
+    private Coverage coverage;
+
+    // Fused forms of statements by global statement number, lowered on first execution
+    private final Superinstruction[] superinstructions;
+
+    // Per-statement execution counts, null unless enabled
+    private Profile profile;
+
+    // Second tier: backward jumps counted per target statement, and the compiled
+    // hot regions covering each statement (see HotRegion)
+    private final int[] backEdges;
+    private final HotRegion[] regions;
+    private int hotThreshold = HotRegion.HOT_THRESHOLD;
+
+    // FOR loops whose iterations can run in parallel, analyzed on first use
+    private final ParallelLoop[] parallelLoops;
+    private int parallelIterations = ParallelLoop.MIN_ITERATIONS;
+    private ForkJoinPool parallelPool = ForkJoinPool.commonPool();
+    private long parallelLoopsRun;
+
+    // The location of each global statement number, made on first use, so
+    // stepping, RETURN and NEXT hand out shared instances
+    private final ControlLocation[] statementLocations;
+
+    // Program I/O - defaults to the console, may be redirected by the host
+    private PrintStream out;
+    private BufferedReader in;
+    private InputScript inputScript;
+    private boolean echoScriptPrompts;
+
+    // Set from another thread to abandon a run at the next statement
+    private volatile boolean stopRequested;
+
+    // Number of statements executed since this executor was created
+    private long statementCount;
+
+    // Statements left before checkBudget() runs: at the end of a runProgram(long)
+    // turn, when the statement quota is used up, or to look at the clock
+    private long budget = Long.MAX_VALUE;
+    // statementCount at which runProgram(long) yields
+    private long yieldAt = Long.MAX_VALUE;
+
+    // Resource quotas, null when there are none.  The limits are copied into
+    // fields so the common checks are a compare with no null test.
+    private Quotas quotas;
+    private int stackLimit = Integer.MAX_VALUE;
+    private long statementLimit = Long.MAX_VALUE;
+    private long deadline;
+    // Usage counted against the quotas, kept up to date only while quotas are set
+    private long arrayElements;
+    private long stringBytes;
 
     public Executor(Program program) throws IOException {
         this(program, false, false);
@@ -46,20 +118,35 @@ public class Executor {
         this.program = program;
         this.location = new ControlLocation(0, 0);
         this.runStatus = RunStatus.RUN;
-        this.traceFile = trace ? new PrintWriter(new FileWriter("tracefile.txt")) : null;
+        this.trace = trace ? ExecutionTrace.open(Paths.get(ExecutionTrace.DEFAULT_FILE_NAME), program) : null;
         this.stackTrace = false;
         this.gotoLocation = null;
-        this.gosubStack = new Stack<>();
-        this.forStack = new Stack<>();
+        this.gosubStack = new GosubStack();
+        this.forStack = new ForStack();
         this.symbols = new HashMap<>();
-        this.dataBreakpoints = new HashSet<>();
         this.modified = false;
-        this.dataValues = new ArrayList<>();
+        this.dataPool = program.getDataPool();
         this.dataPointer = 0;
         this.userFunctions = new HashMap<>();
+        this.random = new BasicRandom();
+        this.evaluator = new ExpressionEvaluator(symbols, userFunctions, random);
+        this.types = program.getTypes();
+        this.compiledExpressions = new HashMap<>();
+        this.assignedValues = new HashMap<>();
         
-        this.coverage = new HashMap<>();
-        this.coverageEnabled = coverage;
+        this.coverage = coverage ? new Coverage(program) : null;
+        this.statementStarts = program.getStatementStarts();
+        this.superinstructions = new Superinstruction[statementStarts[program.size()]];
+        this.backEdges = new int[superinstructions.length];
+        this.regions = new HotRegion[superinstructions.length];
+        this.parallelLoops = new ParallelLoop[superinstructions.length];
+        this.statementLocations = new ControlLocation[superinstructions.length];
+        this.out = System.out;
+        this.in = null;
+        this.inputScript = null;
+        this.echoScriptPrompts = false;
+        this.stopRequested = false;
+        this.statementCount = 0;
         
         setupProgram();
     }
@@ -87,74 +174,117 @@ public class Executor {
      * Run the program
      */
     public RunStatus runProgram() throws BasicSyntaxError, BasicRuntimeError {
+        // A breakpoint at the start location is only honoured on a fresh start,
+        // not when continuing from the breakpoint that stopped the last run
+        boolean resuming = runStatus == RunStatus.BREAK_CODE || runStatus == RunStatus.BREAK_DATA
+                || runStatus == RunStatus.BREAK_STEP || runStatus == RunStatus.YIELD;
         runStatus = RunStatus.RUN;
-        
+        if (!resuming && hitCodeBreakpoint()) {
+            runStatus = RunStatus.BREAK_CODE;
+            return runStatus;
+        }
+        // Compiled regions skip the per-statement hooks, so they only run when none is active
+        boolean tiered = hotThreshold > 0 && trace == null && coverage == null && profile == null
+                && breakFlags == null && watchSymbols.isEmpty() && !singleStepMode;
+        budget = statementsToCheck();
+
         while (true) {
             if (atEnd()) {
                 runStatus = RunStatus.END_OF_PROGRAM;
                 return runStatus;
             }
 
-            ProgramLine currentLine = getCurrentLine();
-            
-            if (traceFile != null && location.getOffset() == 0) {
-                traceFile.println(">" + currentLine.getSource());
+            // The statement at location has not run yet, so running again continues here
+            if (--budget < 0 && !checkBudget()) {
+                return runStatus;
             }
 
-            // Record code coverage
-            if (coverageEnabled) {
-                int ln = currentLine.getLine();
-                coverage.computeIfAbsent(ln, k -> new HashSet<>()).add(location.getOffset());
-            }
+            ProgramLine currentLine = getCurrentLine();
 
-            // Breakpoint before executing statement
-            if (hitCodeBreakpoint()) {
-                runStatus = RunStatus.BREAK_CODE;
-                return runStatus;
+            if (stopRequested) {
+                stopRequested = false;
+                runStatus = RunStatus.END_ERROR_RUNTIME;
+                if (InterpreterEvents.active()) InterpreterEvents.error(currentLine.getLine(), runStatus, "Execution stopped");
+                throw new BasicRuntimeError("Execution stopped", currentLine.getLine());
+            }
+            
+            // Record code coverage
+            if (coverage != null) {
+                coverage.hit(location.getIndex(), location.getOffset());
             }
 
             Statement stmt = getCurrentStatement();
+            statementCount++;
             
-            if (traceFile != null) {
-                traceFile.println("\t" + stmt);
+            if (trace != null) {
+                trace.statement(location.getIndex(), location.getOffset());
             }
 
+            int statement = statementStarts[location.getIndex()] + location.getOffset();
+            HotRegion region = tiered ? regions[statement] : null;
+
             try {
-                executeStatement(stmt);
+                if (region != null) {
+                    region.run(this, statement);
+                } else {
+                    Superinstruction fused = superinstruction(statement, location.getIndex(), location.getOffset(), stmt);
+                    if (profile != null) {
+                        profile.executed(statement);
+                    }
+                    if (fused.execute(this)) {
+                        if (profile != null) profile.fusedHit(statement);
+                    } else {
+                        executeStatement(stmt);
+                    }
+                }
             } catch (BasicSyntaxError bse) {
                 runStatus = RunStatus.END_ERROR_SYNTAX;
-                throw new BasicSyntaxError(bse.getMessage(), currentLine.getLine());
+                if (InterpreterEvents.active()) InterpreterEvents.error(getCurrentLine().getLine(), runStatus, bse.getMessage());
+                throw new BasicSyntaxError(bse.getMessage(), getCurrentLine().getLine());
+            } catch (BasicQuotaError bqe) {
+                // Status and event already set by quotaExceeded
+                throw bqe;
             } catch (BasicRuntimeError bre) {
                 runStatus = RunStatus.END_ERROR_RUNTIME;
+                if (InterpreterEvents.active()) InterpreterEvents.error(getCurrentLine().getLine(), runStatus, bre.getMessage());
                 throw bre;
             } catch (Exception e) {
                 runStatus = RunStatus.END_ERROR_INTERNAL;
-                throw new BasicInternalError("Internal error in line " + currentLine.getLine() + ": " + e.getMessage());
+                if (InterpreterEvents.active()) InterpreterEvents.error(getCurrentLine().getLine(), runStatus, String.valueOf(e));
+                throw new BasicInternalError("Internal error in line " + getCurrentLine().getLine() + ": " + e.getMessage());
             }
 
-            // Check if we should terminate due to END or STOP
-            if (runStatus == RunStatus.END_CMD || runStatus == RunStatus.END_STOP) {
+            // Check if we should terminate due to END or STOP, or a compiled
+            // region yielded with location at its next statement
+            if (runStatus == RunStatus.END_CMD || runStatus == RunStatus.END_STOP || runStatus == RunStatus.YIELD) {
                 return runStatus;
             }
 
             if (gotoLocation != null) {
-                if (traceFile != null) {
-                    ProgramLine destinationLine = program.getLine(gotoLocation.getIndex());
-                    traceFile.println("\tControl Transfer from line " + location + " TO line " + destinationLine.getLine() + ": " + gotoLocation + ".");
+                if (trace != null) {
+                    trace.jump(location, gotoLocation);
+                }
+                if (tiered) {
+                    countBackEdge(gotoLocation);
                 }
                 location = gotoLocation;
                 gotoLocation = null;
             } else {
                 // Advance to next statement
-                ControlLocation nextLocation = getNextStatement();
-                if (nextLocation == null) {
+                int next = statementOf(location) + 1;
+                if (next == statementLocations.length) {
                     runStatus = RunStatus.END_OF_PROGRAM;
                     location = new ControlLocation(null, 0);
                 } else {
-                    location = nextLocation;
+                    location = locationOf(next);
                 }
             }
 
+            // Data breakpoint - stop before the statement after the assignment
+            if (runStatus == RunStatus.BREAK_DATA) {
+                return runStatus;
+            }
+
             // Single-step support – stop after executing one statement
             if (singleStepMode) {
                 singleStepMode = false; // consume step
@@ -162,7 +292,7 @@ public class Executor {
                 return runStatus;
             }
 
-            // Breakpoint support after statement execution
+            // Breakpoint before the next statement
             if (hitCodeBreakpoint()) {
                 runStatus = RunStatus.BREAK_CODE;
                 return runStatus;
@@ -170,42 +300,393 @@ public class Executor {
         }
     }
 
+    /**
+     * Run with one-off breakpoints given as {line, clause} pairs and watched
+     * symbols; they are cleared again when the run stops.
+     */
     public RunStatus runProgram(List<int[]> breakpoints, List<String> dataBps, boolean singleStep) throws BasicSyntaxError, BasicRuntimeError {
-        this.codeBreakpoints = breakpoints != null ? breakpoints : Collections.emptyList();
-        this.watchSymbols = dataBps != null ? dataBps : Collections.emptyList();
+        List<Breakpoint> bps = new ArrayList<>();
+        if (breakpoints != null) {
+            for (int[] bp : breakpoints) bps.add(new Breakpoint(bp[0], bp[1], null));
+        }
+        setBreakpoints(bps, dataBps);
+        this.singleStepMode = singleStep;
+        try {
+            return runProgram();
+        } finally {
+            setBreakpoints(null, null);
+            this.singleStepMode = false;
+        }
+    }
+
+    /**
+     * Run until the next breakpoint, or for one statement when singleStep is set.
+     * Breakpoints stay in place from {@link #setBreakpoints}.
+     */
+    public RunStatus runProgram(boolean singleStep) throws BasicSyntaxError, BasicRuntimeError {
         this.singleStepMode = singleStep;
-        RunStatus rs = runProgram();
-        // reset
-        this.codeBreakpoints = Collections.emptyList();
-        this.watchSymbols = Collections.emptyList();
-        this.singleStepMode = false;
-        return rs;
+        try {
+            return runProgram();
+        } finally {
+            this.singleStepMode = false;
+        }
+    }
+
+    /**
+     * Run at most statementBudget statements.  Returns {@link RunStatus#YIELD}
+     * when the budget is used up before the run ends or breaks; calling any
+     * runProgram method again then continues with the next statement, exactly
+     * as after a breakpoint.  A host can so interleave many executors on a
+     * few threads, each taking turns of bounded length.  Breakpoints and
+     * single-stepping still stop the run early.
+     */
+    public RunStatus runProgram(long statementBudget) throws BasicSyntaxError, BasicRuntimeError {
+        if (statementBudget < 0) {
+            throw new IllegalArgumentException("Negative statement budget: " + statementBudget);
+        }
+        this.yieldAt = statementCount + statementBudget < 0 ? Long.MAX_VALUE : statementCount + statementBudget;
+        try {
+            return runProgram();
+        } finally {
+            this.yieldAt = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Statements the run may take before checkBudget() must look at the
+     * turn, the statement quota or the clock
+     */
+    private long statementsToCheck() {
+        long statements = Math.min(yieldAt, statementLimit) - statementCount;
+        return quotas != null && quotas.wallTime() != null ? Math.min(statements, CLOCK_CHECK_INTERVAL) : statements;
+    }
+
+    /**
+     * The budget ran out before the statement at location: false to yield,
+     * true to run it with a fresh budget, or a quota error
+     */
+    private boolean checkBudget() throws BasicQuotaError {
+        if (statementCount >= statementLimit) {
+            throw quotaExceeded(BasicQuotaError.Quota.STATEMENTS,
+                    "Statement quota of " + quotas.statements() + " used up");
+        }
+        if (quotas != null && quotas.wallTime() != null && System.nanoTime() - deadline >= 0) {
+            throw quotaExceeded(BasicQuotaError.Quota.WALL_TIME,
+                    "Time quota of " + quotas.wallTime().toMillis() + " ms used up");
+        }
+        if (statementCount >= yieldAt) {
+            runStatus = RunStatus.YIELD;
+            return false;
+        }
+        budget = statementsToCheck() - 1;
+        return true;
+    }
+
+    /**
+     * Limits on what a run may use, for hosts running programs they do not
+     * trust.  Each limit may be left unlimited: the depth of the GOSUB and FOR
+     * stacks together; the elements of all arrays; the characters of all
+     * string values, in variables and arrays; the statements run from when
+     * the quotas are set; and the time from when they are set (null for none).
+     * Strings are counted by length, a byte per character as BASIC text.
+     */
+    public record Quotas(int stackDepth, long arrayElements, long stringBytes, long statements, Duration wallTime) {
+        public static final Quotas UNLIMITED = new Quotas(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, null);
+
+        public Quotas {
+            if (stackDepth < 0 || arrayElements < 0 || stringBytes < 0 || statements < 0
+                    || (wallTime != null && wallTime.isNegative())) {
+                throw new IllegalArgumentException("Negative quota");
+            }
+        }
+
+        public Quotas withStackDepth(int depth) {
+            return new Quotas(depth, arrayElements, stringBytes, statements, wallTime);
+        }
+
+        public Quotas withArrayElements(long elements) {
+            return new Quotas(stackDepth, elements, stringBytes, statements, wallTime);
+        }
+
+        public Quotas withStringBytes(long bytes) {
+            return new Quotas(stackDepth, arrayElements, bytes, statements, wallTime);
+        }
+
+        public Quotas withStatements(long count) {
+            return new Quotas(stackDepth, arrayElements, stringBytes, count, wallTime);
+        }
+
+        public Quotas withWallTime(Duration time) {
+            return new Quotas(stackDepth, arrayElements, stringBytes, statements, time);
+        }
+    }
+
+    /**
+     * Set the quotas for the runs that follow, or null to lift them.  Going
+     * over one ends the run with {@link RunStatus#END_ERROR_QUOTA} and a
+     * {@link BasicQuotaError}.  The statement and time quotas start counting
+     * now, and the program's current arrays and strings count from the start.
+     * <p>
+     * Usage is counted as it changes - when a DIM, an assignment, INPUT or
+     * READ stores a value, and when a GOSUB or FOR is pushed - so a run with
+     * quotas does no scanning.  The statement quota shares the one counter of
+     * {@link #runProgram(long)}, and the clock is read every
+     * {@value #CLOCK_CHECK_INTERVAL} statements; a statement waiting for
+     * INPUT is not interrupted.
+     */
+    public void setQuotas(Quotas quotas) {
+        this.quotas = quotas;
+        if (quotas == null) {
+            stackLimit = Integer.MAX_VALUE;
+            statementLimit = Long.MAX_VALUE;
+            return;
+        }
+        stackLimit = quotas.stackDepth();
+        statementLimit = statementCount + quotas.statements() < 0 ? Long.MAX_VALUE : statementCount + quotas.statements();
+        if (quotas.wallTime() != null) {
+            deadline = System.nanoTime() + quotas.wallTime().toNanos();
+        }
+        countUsage();
+    }
+
+    public Quotas getQuotas() {
+        return quotas;
+    }
+
+    /**
+     * Array elements counted against the array quota
+     */
+    long arrayElementsUsed() {
+        return arrayElements;
+    }
+
+    /**
+     * String characters counted against the string quota
+     */
+    long stringBytesUsed() {
+        return stringBytes;
+    }
+
+    /**
+     * End the run on a quota; the error to throw
+     */
+    private BasicQuotaError quotaExceeded(BasicQuotaError.Quota quota, String message) {
+        runStatus = RunStatus.END_ERROR_QUOTA;
+        Integer line = atEnd() ? null : getCurrentLine().getLine();
+        if (InterpreterEvents.active()) InterpreterEvents.error(line == null ? -1 : line, runStatus, message);
+        return new BasicQuotaError(quota, message, line);
+    }
+
+    /**
+     * Recount the usage of all symbols, when quotas are set or the symbols replaced
+     */
+    private void countUsage() {
+        arrayElements = 0;
+        stringBytes = 0;
+        for (Object value : symbols.values()) {
+            if (!"BUILTIN_FUNCTION".equals(value)) {
+                count(value, 1);
+            }
+        }
+    }
+
+    /**
+     * Add (sign 1) or take away (sign -1) the array elements and string
+     * characters of a value
+     */
+    private void count(Object value, int sign) {
+        if (value instanceof Object[] array) {
+            for (Object element : array) {
+                if (!(element instanceof Object[])) {
+                    arrayElements += sign;
+                }
+                count(element, sign);
+            }
+        } else if (value instanceof CharSequence text) {
+            stringBytes += sign * (long) text.length();
+        }
+    }
+
+    /**
+     * Count a value stored in place of old against the string quota
+     */
+    private void stored(Object old, Object value) throws BasicQuotaError {
+        long before = stringBytes;
+        count(old, -1);
+        count(value, 1);
+        if (stringBytes > quotas.stringBytes() && stringBytes > before) {
+            throw quotaExceeded(BasicQuotaError.Quota.STRING_BYTES,
+                    "String quota of " + quotas.stringBytes() + " bytes exceeded");
+        }
+    }
+
+    /**
+     * Check the stack quota before a GOSUB or FOR record is pushed
+     */
+    private void checkStackDepth() throws BasicQuotaError {
+        if (gosubStack.size() + forStack.size() >= stackLimit) {
+            throw quotaExceeded(BasicQuotaError.Quota.STACK_DEPTH,
+                    "Stack quota of " + stackLimit + " GOSUB and FOR levels exceeded");
+        }
+    }
+
+    /**
+     * A code breakpoint before statement (clause) number clause of a line.
+     * If condition is not null the break only happens when it is true.
+     */
+    public record Breakpoint(int line, int clause, String condition) {}
+
+    /**
+     * Replace all breakpoints and watched symbols.  They are compiled into a
+     * flag per statement, with conditions pre-tokenized, so a run with
+     * breakpoints set costs one array lookup per statement.
+     */
+    public void setBreakpoints(List<Breakpoint> breakpoints, Collection<String> watch) throws BasicSyntaxError {
+        if (breakpoints == null || breakpoints.isEmpty()) {
+            breakFlags = null;
+            breakConditions = null;
+        } else {
+            int[] starts = program.getStatementStarts();
+            boolean[] flags = new boolean[starts[program.size()]];
+            ExpressionEvaluator.Prepared[] conditions = new ExpressionEvaluator.Prepared[flags.length];
+            for (Breakpoint bp : breakpoints) {
+                int index = program.findLineIndex(bp.line());
+                if (bp.clause() < 0 || bp.clause() >= program.getLine(index).getStmts().size()) {
+                    throw new BasicSyntaxError("Line " + bp.line() + " has no clause " + bp.clause());
+                }
+                int s = starts[index] + bp.clause();
+                if (flags[s] && conditions[s] == null) continue; // already an unconditional break here
+                flags[s] = true;
+                conditions[s] = bp.condition() == null ? null : ExpressionEvaluator.prepare(bp.condition());
+            }
+            statementStarts = starts;
+            breakFlags = flags;
+            breakConditions = conditions;
+        }
+        if (watch == null || watch.isEmpty()) {
+            watchSymbols = Collections.emptySet();
+        } else {
+            watchSymbols = new HashSet<>();
+            for (String name : watch) watchSymbols.add(name.toUpperCase());
+        }
     }
 
     private boolean hitCodeBreakpoint() {
-        if (codeBreakpoints.isEmpty()) return false;
-        int lineNum = getCurrentLine().getLine();
-        int offset = location.getOffset();
-        for (int[] bp : codeBreakpoints) {
-            if (bp[0] == lineNum && bp[1] == offset) return true;
+        if (breakFlags == null) return false;
+        Integer index = location.getIndex();
+        if (index == null) return false;
+        int s = statementStarts[index] + location.getOffset();
+        if (!breakFlags[s]) return false;
+        ExpressionEvaluator.Prepared condition = breakConditions[s];
+        if (condition == null) return true;
+        try {
+            return evaluator.evaluateCondition(condition);
+        } catch (RuntimeException e) {
+            // A condition that cannot be evaluated (e.g. an undefined variable) stops the run
+            // so the problem is visible
+            return true;
         }
-        return false;
     }
 
+    /**
+     * Called after every assignment to a variable: records it in the trace
+     * and stops at a data breakpoint if the variable is watched
+     */
     private void triggerDataBreakpointIfWatched(String symbolName) {
-        if (watchSymbols.isEmpty()) return;
-        String canon = symbolName.toUpperCase();
-        for (String w : watchSymbols) {
-            if (canon.equalsIgnoreCase(w)) {
-                runStatus = RunStatus.BREAK_DATA;
+        if (trace != null) {
+            trace.variable(symbolName);
+        }
+        // Symbol names arrive already upper-cased, as stored in the symbol table
+        if (!watchSymbols.isEmpty() && watchSymbols.contains(symbolName)) {
+            runStatus = RunStatus.BREAK_DATA;
+        }
+    }
+
+    /**
+     * The fused form of a statement, lowered the first time it is asked for
+     */
+    Superinstruction superinstruction(int statement, int index, int offset, Statement stmt) {
+        Superinstruction fused = superinstructions[statement];
+        if (fused == null) {
+            fused = Superinstruction.lower(this, program, index, offset, stmt);
+            superinstructions[statement] = fused;
+            if (profile != null && fused != Superinstruction.NONE) {
+                profile.fused(statement, fused.kind());
+            }
+        }
+        return fused;
+    }
+
+    /**
+     * Count a jump from the current statement; a statement jumped back to often
+     * enough starts a loop that is compiled into a region.  Subroutine calls
+     * and returns are not loops, wherever the subroutine is.
+     */
+    private void countBackEdge(ControlLocation target) {
+        int from = statementStarts[location.getIndex()] + location.getOffset();
+        int to = statementStarts[target.getIndex()] + target.getOffset();
+        if (to > from) {
+            return;
+        }
+        String keyword = getCurrentStatement().getKeyword();
+        if (keyword.equals("RETURN") || keyword.equals("GOSUB") || ++backEdges[to] < hotThreshold) {
+            return;
+        }
+        backEdges[to] = 0;
+        if (regions[to] != null && regions[to].contains(from)) {
+            return;
+        }
+        HotRegion region = HotRegion.compile(this, program, target, location);
+        for (int s = to; s < to + region.size(); s++) {
+            // Outer loops replace the regions of the loops inside them
+            if (regions[s] == null || regions[s].size() < region.size()) {
+                regions[s] = region;
             }
         }
     }
 
+    /**
+     * The compiled region the statement runs in, or null while it is interpreted
+     */
+    HotRegion region(int index, int offset) {
+        return regions[statementStarts[index] + offset];
+    }
+
+    /**
+     * Jumps back to a statement before its loop is compiled; 0 interprets everything
+     */
+    void setHotThreshold(int threshold) {
+        hotThreshold = threshold;
+    }
+
+    /**
+     * Iterations a loop needs before it runs in parallel; 0 runs every loop sequentially
+     */
+    void setParallelIterations(int iterations) {
+        parallelIterations = iterations;
+    }
+
+    /**
+     * The pool parallel loops run on, normally the common pool
+     */
+    void setParallelPool(ForkJoinPool pool) {
+        parallelPool = pool;
+    }
+
+    /**
+     * Loops run in parallel so far
+     */
+    long parallelLoopsRun() {
+        return parallelLoopsRun;
+    }
+
     /**
      * Execute a single statement
      */
-    private void executeStatement(Statement stmt) throws BasicSyntaxError, BasicRuntimeError {
+    void executeStatement(Statement stmt) throws BasicSyntaxError, BasicRuntimeError {
+        if (stmt instanceof InvalidStatement invalid) {
+            throw new BasicSyntaxError(invalid.getError());
+        }
         String keyword = stmt.getKeyword();
         
         switch (keyword) {
@@ -215,7 +696,7 @@ public class Executor {
             case "END" -> { runStatus = RunStatus.END_CMD; }
             case "STOP" -> {
                 Object aVar = symbols.get("A$");
-                System.out.printf("STOP encountered at line %d (A$=%s, len=%s)%n", getCurrentLine().getLine(), aVar, aVar==null?"null":aVar.toString().length());
+                out.printf("STOP encountered at line %d (A$=%s, len=%s)%n", getCurrentLine().getLine(), aVar, aVar==null?"null":aVar.toString().length());
                 runStatus = RunStatus.END_STOP;
             }
             case "GOTO" -> executeGoto(stmt);
@@ -240,18 +721,57 @@ public class Executor {
 
     private void executePrint(Statement stmt) throws BasicRuntimeError {
         if (stmt.getArgs().isEmpty()) {
-            System.out.println();
+            out.println();
             return;
         }
 
-        // Parse print list handling separators ; and , at top level only
-        List<String> items = new ArrayList<>();
+        String args = stmt.getArgs();
         List<Character> seps = new ArrayList<>(); // separator preceding item (except first)
+        List<String> items = splitPrintList(args, seps);
+
+        boolean newline = printEndsLine(args);
+
+        // Print items
+        for (int idx = 0; idx < items.size(); idx++) {
+            String part = items.get(idx).trim();
+            if (!part.isEmpty()) {
+                Object value;
+                if (part.startsWith("\"") && part.endsWith("\"")) {
+                    value = part.substring(1, part.length() - 1);
+                    out.print(value);
+                } else {
+                    value = evaluateExpression(part);
+                    // BASIC prints a leading space before positive numbers
+                    if (value instanceof Number num && num.doubleValue() >= 0) {
+                        out.print(" " + value + " ");
+                    } else {
+                        out.print(value);
+                    }
+                }
+            }
+
+            // Handle separator spacing (except after last item)
+            if (idx < seps.size()) {
+                char sep = seps.get(idx);
+                if (sep == ',') {
+                    out.print("    "); // simple tab spacing approximation
+                } // semicolon -> no extra spacing
+            }
+        }
+
+        if (newline) out.println();
+    }
+
+    /**
+     * Split a print list at the separators ; and , at top level only.
+     * The separators are added to seps, if given.
+     */
+    static List<String> splitPrintList(String args, List<Character> seps) {
+        List<String> items = new ArrayList<>();
         StringBuilder current = new StringBuilder();
         boolean inString = false;
         int parenDepth = 0;
 
-        String args = stmt.getArgs();
         for (int i = 0; i < args.length(); i++) {
             char c = args.charAt(i);
 
@@ -270,7 +790,7 @@ public class Executor {
 
                 if (parenDepth == 0 && (c == ';' || c == ',')) {
                     items.add(current.toString());
-                    seps.add(c);
+                    if (seps != null) seps.add(c);
                     current.setLength(0);
                     continue; // do not keep separator
                 }
@@ -279,46 +799,20 @@ public class Executor {
             current.append(c);
         }
         items.add(current.toString());
+        return items;
+    }
 
-        // Determine newline requirement by looking at last non-space char
-        boolean newline = true;
+    /**
+     * False if the print list ends with ; or , which keeps the output on the line
+     */
+    static boolean printEndsLine(String args) {
         for (int i = args.length() - 1; i >= 0; i--) {
             char c = args.charAt(i);
             if (!Character.isWhitespace(c)) {
-                if (c == ';' || c == ',') newline = false;
-                break;
+                return c != ';' && c != ',';
             }
         }
-
-        // Print items
-        for (int idx = 0; idx < items.size(); idx++) {
-            String part = items.get(idx).trim();
-            if (!part.isEmpty()) {
-                Object value;
-                if (part.startsWith("\"") && part.endsWith("\"")) {
-                    value = part.substring(1, part.length() - 1);
-                    System.out.print(value);
-                } else {
-                    value = evaluateExpression(part);
-                    // BASIC prints a leading space before positive numbers
-                    if (value instanceof Number num && num.doubleValue() >= 0) {
-                        System.out.print(" " + value + " ");
-                    } else {
-                        System.out.print(value);
-                    }
-                }
-            }
-
-            // Handle separator spacing (except after last item)
-            if (idx < seps.size()) {
-                char sep = seps.get(idx);
-                if (sep == ',') {
-                    System.out.print("    "); // simple tab spacing approximation
-                } // semicolon -> no extra spacing
-            }
-        }
-
-        if (newline) System.out.println();
+        return true;
     }
 
     private void executeAssignment(Statement stmt) throws BasicSyntaxError, BasicRuntimeError {
@@ -328,16 +822,7 @@ public class Executor {
         
         AssignmentStatement assignment = (AssignmentStatement) stmt;
         String valueExpr = assignment.getExpression();
-        Object value = evaluateExpression(valueExpr);
-        
-        // Normalize numeric value: if the expression was a plain numeric literal (no letters or parentheses)
-        // and the resulting value is an integral Double, store it as Integer so that symbols keep expected type.
-        if (value instanceof Double d && d == Math.rint(d)) {
-            boolean plainNumber = valueExpr.matches("\\s*[-+]?[0-9]+\\s*");
-            if (plainNumber) {
-                value = (int) d.doubleValue();
-            }
-        }
+        Object value = evaluate(assignedValue(valueExpr));
         
         if (assignment.isArrayAssignment()) {
             // Array assignment like A(1) = 5
@@ -345,7 +830,8 @@ public class Executor {
         } else {
             // Simple variable assignment
             String variable = assignment.getVariable().toUpperCase();
-            symbols.put(variable, value);
+            Object old = symbols.put(variable, value);
+            if (quotas != null) stored(old, value);
             triggerDataBreakpointIfWatched(variable);
         }
     }
@@ -390,7 +876,9 @@ public class Executor {
             if (current instanceof Object[]) {
                 Object[] arr = (Object[]) current;
                 if (finalIndex >= 0 && finalIndex < arr.length) {
+                    Object old = arr[finalIndex];
                     arr[finalIndex] = value;
+                    if (quotas != null) stored(old, value);
                 } else {
                     throw new BasicSyntaxError("Array index out of bounds: " + finalIndex);
                 }
@@ -436,9 +924,10 @@ public class Executor {
 
     private void executeGosub(Statement stmt) throws BasicSyntaxError, BasicRuntimeError {
         // Save current location for RETURN
-        ControlLocation nextLocation = getNextStatement();
-        if (nextLocation != null) {
-            gosubStack.push(nextLocation);
+        int returnTo = statementOf(location) + 1;
+        if (returnTo < statementLocations.length) {
+            checkStackDepth();
+            gosubStack.push(returnTo);
         }
         
         // Handle computed GOSUB (similar to computed GOTO)
@@ -447,18 +936,21 @@ public class Executor {
             // First try to parse as a literal line number
             int lineNumber = Integer.parseInt(args);
             int lineIndex = program.findLineIndex(lineNumber);
-            gotoLocation = new ControlLocation(lineIndex, 0);
+            gotoLocation = locationOf(statementStarts[lineIndex]);
         } catch (NumberFormatException e) {
             // If not a literal number, evaluate as an expression (computed GOSUB)
             Object result = evaluateExpression(args);
             if (result instanceof Number) {
                 int lineNumber = ((Number) result).intValue();
                 int lineIndex = program.findLineIndex(lineNumber);
-                gotoLocation = new ControlLocation(lineIndex, 0);
+                gotoLocation = locationOf(statementStarts[lineIndex]);
             } else {
                 throw new BasicSyntaxError("Invalid line number in GOSUB: " + args + " (evaluated to: " + result + ")");
             }
         }
+        if (InterpreterEvents.active()) {
+            recordGosub(gotoLocation);
+        }
     }
 
     private void executeReturn() throws BasicSyntaxError {
@@ -466,7 +958,18 @@ public class Executor {
             throw new BasicSyntaxError("RETURN without GOSUB");
         }
         
-        gotoLocation = gosubStack.pop();
+        gotoLocation = locationOf(gosubStack.pop());
+        if (InterpreterEvents.active()) {
+            InterpreterEvents.returned(getCurrentLine().getLine(), program.getLine(gotoLocation.getIndex()).getLine(),
+                    gosubStack.size() + 1);
+        }
+    }
+
+    /**
+     * Flight Recorder event for a GOSUB about to jump to target
+     */
+    private void recordGosub(ControlLocation target) {
+        InterpreterEvents.gosub(getCurrentLine().getLine(), program.getLine(target.getIndex()).getLine(), gosubStack.size());
     }
 
     private void executeFor(Statement stmt) throws BasicSyntaxError, BasicRuntimeError {
@@ -502,14 +1005,55 @@ public class Executor {
         // control record and pushing a fresh one, which also re-initialises
         // the loop variable.  This allows patterns like "GOTO 100" inside the
         // loop body to restart the iteration sequence.
-        if (!forStack.isEmpty()) {
-            ForRecord top = forStack.peek();
-            if (top.variable().equals(var.toUpperCase()) && top.location().equals(location)) {
-                forStack.pop();
-            }
+        int head = statementOf(location);
+        int top = forStack.size() - 1;
+        if (top >= 0 && forStack.variable(top).equals(var.toUpperCase()) && forStack.head(top) == head) {
+            forStack.pop();
         }
 
-        forStack.push(new ForRecord(var.toUpperCase(), endValue, stepValue, location));
+        if (runParallel(head, startValue, endValue, stepValue)) {
+            return;
+        }
+
+        checkStackDepth();
+        forStack.push(var.toUpperCase(), endValue instanceof Number end ? end.doubleValue() : Double.NaN,
+                ((Number) stepValue).doubleValue(), head);
+    }
+
+    /**
+     * Run the whole loop of the FOR at the head statement in parallel, if
+     * its iterations are independent (see ParallelLoop), leaving everything
+     * as its NEXT would on the last iteration.  The loop runs in one go, so
+     * not while any per-statement hook or quota is active, nor inside a
+     * compiled region, which does its own control flow.
+     */
+    private boolean runParallel(int head, Object startValue, Object endValue, Object stepValue) {
+        if (parallelIterations <= 0 || trace != null || coverage != null || profile != null || breakFlags != null
+                || !watchSymbols.isEmpty() || singleStepMode || quotas != null || regions[head] != null) {
+            return false;
+        }
+        ParallelLoop loop = parallelLoops[head];
+        if (loop == null) {
+            loop = ParallelLoop.analyze(this, program, head, (ForStatement) getCurrentStatement());
+            parallelLoops[head] = loop;
+        }
+        if (loop == ParallelLoop.NONE) {
+            return false;
+        }
+        // Only as many iterations as the statements left before the budget must be checked
+        int perIteration = loop.statementsPerIteration();
+        long iterations = loop.run(parallelPool, startValue, endValue, stepValue, symbols, userFunctions,
+                parallelIterations, budget / perIteration);
+        if (iterations == 0) {
+            return false;
+        }
+        double last = ((Number) startValue).doubleValue() + (iterations - 1) * ((Number) stepValue).doubleValue();
+        symbols.put(loop.variable(), last);
+        statementCount += iterations * perIteration;
+        budget -= iterations * perIteration;
+        parallelLoopsRun++;
+        gotoLocation = locationOf(loop.next() + 1);
+        return true;
     }
 
     private void executeNext(Statement stmt) throws BasicSyntaxError {
@@ -519,22 +1063,20 @@ public class Executor {
             throw new BasicSyntaxError("NEXT without FOR");
         }
         
-        ForRecord forRecord = forStack.peek();
-        if (!forRecord.variable().equals(var)) {
+        int top = forStack.size() - 1;
+        if (!forStack.variable(top).equals(var)) {
             throw new BasicSyntaxError("NEXT variable mismatch");
         }
         
         // Get current value and step
         Object currentValue = symbols.get(var);
-        Object stepValue = forRecord.step();
-        Object endValue = forRecord.stop();
+        double step = forStack.step(top);
+        double end = forStack.stop(top);
         
         // TODO: Implement proper numeric operations
-        // For now, assume all are numbers
-        if (currentValue instanceof Number && stepValue instanceof Number && endValue instanceof Number) {
+        // For now, assume all are numbers (an end value that was not is NaN)
+        if (currentValue instanceof Number && !Double.isNaN(end)) {
             double current = ((Number) currentValue).doubleValue();
-            double step = ((Number) stepValue).doubleValue();
-            double end = ((Number) endValue).doubleValue();
             
             double nextVal = current + step;
 
@@ -544,7 +1086,8 @@ public class Executor {
             if (continueLoop) {
                 // Advance variable and loop again
                 symbols.put(var, nextVal);
-                gotoLocation = getNextStatementFrom(forRecord.location());
+                int body = forStack.head(top) + 1;
+                gotoLocation = body < statementLocations.length ? locationOf(body) : null;
             } else {
                 // Clamp variable to final legal value (classic BASIC behaviour)
                 symbols.put(var, current);
@@ -648,9 +1191,11 @@ public class Executor {
         // CLEAR statement - clears all variables
         // In some BASIC dialects, it can take parameters for memory allocation
         symbols.clear();
+        arrayElements = 0;
+        stringBytes = 0;
     }
     
-    private void executeDim(Statement stmt) throws BasicSyntaxError {
+    private void executeDim(Statement stmt) throws BasicSyntaxError, BasicQuotaError {
         if (!(stmt instanceof DimStatement)) {
             throw new BasicSyntaxError("Invalid DIM statement");
         }
@@ -659,11 +1204,21 @@ public class Executor {
         
         for (DimStatement.ArrayDeclaration declaration : dimStmt.getArrayDeclarations()) {
             String arrayName = declaration.getName();
-            Object array = declaration.createArray();
-            
             // Store arrays with a special prefix to distinguish from scalar variables
             String arrayKey = "ARRAY:" + arrayName;
-            symbols.put(arrayKey, array);
+
+            // Checked before allocating; a re-DIM gives back the old array's share
+            if (quotas != null) {
+                long elements = declaration.getElementCount();
+                count(symbols.get(arrayKey), -1);
+                if (elements > quotas.arrayElements() - arrayElements) {
+                    count(symbols.get(arrayKey), 1);
+                    throw quotaExceeded(BasicQuotaError.Quota.ARRAY_ELEMENTS,
+                            "Array quota of " + quotas.arrayElements() + " elements exceeded by DIM " + arrayName);
+                }
+                arrayElements += elements;
+            }
+            symbols.put(arrayKey, declaration.createArray());
         }
     }
     
@@ -674,66 +1229,54 @@ public class Executor {
         
         InputStatement inputStmt = (InputStatement) stmt;
         
-        // Display prompt if present
-        if (inputStmt.hasPrompt()) {
-            System.out.print(inputStmt.getPrompt());
-            System.out.print("? ");
-        } else {
-            System.out.print("? "); // Default BASIC prompt
+        // Display prompt if present (scripted input only echoes when asked to)
+        if (inputScript == null || echoScriptPrompts) {
+            if (inputStmt.hasPrompt()) {
+                out.print(inputStmt.getPrompt());
+                out.print("? ");
+            } else {
+                out.print("? "); // Default BASIC prompt
+            }
         }
         
-        // Read input from console
-        try {
-            java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(System.in));
-            String input = reader.readLine();
-            
-            if (input == null) {
-                input = ""; // Handle EOF
-            }
-            
-            // Parse input values (comma-separated)
-            String[] inputValues = input.split(",");
-            java.util.List<String> variables = inputStmt.getVariables();
-            
-            // Assign values to variables
-            for (int i = 0; i < variables.size(); i++) {
-                String variable = variables.get(i);
-                String value = "";
-                
-                if (i < inputValues.length) {
-                    value = inputValues[i].trim();
+        InputScript.Record record;
+        if (inputScript != null) {
+            record = inputScript.next();
+        } else {
+            // Read input from console
+            try {
+                if (in == null) {
+                    in = new BufferedReader(new InputStreamReader(System.in));
                 }
-                
-                // Convert and store the value
-                Object convertedValue;
-                if (variable.endsWith("$")) {
-                    // String variable
-                    if (Dialect.UPPERCASE_INPUT == 1) {
-                        convertedValue = value.toUpperCase();
-                    } else {
-                        convertedValue = value;
-                    }
-                } else {
-                    // Numeric variable
-                    try {
-                        if (value.contains(".")) {
-                            convertedValue = Double.parseDouble(value);
-                        } else if (!value.isEmpty()) {
-                            convertedValue = Integer.parseInt(value);
-                        } else {
-                            convertedValue = 0; // Default for empty input
-                        }
-                    } catch (NumberFormatException e) {
-                        convertedValue = 0; // Default for invalid numeric input
-                    }
+                long waitStart = System.nanoTime();
+                String input = in.readLine();
+                if (InterpreterEvents.active()) {
+                    InterpreterEvents.inputWait(getCurrentLine().getLine(), System.nanoTime() - waitStart);
                 }
                 
-                symbols.put(variable, convertedValue);
-                triggerDataBreakpointIfWatched(variable);
+                if (input == null) {
+                    input = ""; // Handle EOF
+                }
+                record = InputScript.parseLine(input);
+            } catch (IOException e) {
+                throw new BasicRuntimeError("Error reading input: " + e.getMessage());
+            }
+        }
+        
+        // Assign values to variables, using the pre-converted field for each type
+        List<String> variables = inputStmt.getVariables();
+        for (int i = 0; i < variables.size(); i++) {
+            String variable = variables.get(i);
+            Object convertedValue;
+            if (variable.endsWith("$")) {
+                convertedValue = i < record.size() ? record.textAt(i) : "";
+            } else {
+                convertedValue = i < record.size() ? record.numberAt(i) : 0;
             }
             
-        } catch (java.io.IOException e) {
-            throw new BasicRuntimeError("Error reading input: " + e.getMessage());
+            Object old = symbols.put(variable, convertedValue);
+            if (quotas != null) stored(old, convertedValue);
+            triggerDataBreakpointIfWatched(variable);
         }
     }
     
@@ -745,12 +1288,13 @@ public class Executor {
         ReadStatement readStmt = (ReadStatement) stmt;
         
         for (String variable : readStmt.getVariables()) {
-            if (dataPointer >= dataValues.size()) {
+            if (dataPointer >= dataPool.size()) {
                 throw new BasicRuntimeError("Out of data");
             }
             
-            Object value = dataValues.get(dataPointer++);
-            symbols.put(variable, value);
+            Object value = dataPool.get(dataPointer++);
+            Object old = symbols.put(variable, value);
+            if (quotas != null) stored(old, value);
             triggerDataBreakpointIfWatched(variable);
         }
     }
@@ -759,9 +1303,7 @@ public class Executor {
         if (!(stmt instanceof DataStatement)) {
             throw new BasicSyntaxError("Invalid DATA statement");
         }
-        
-        DataStatement dataStmt = (DataStatement) stmt;
-        dataValues.addAll(dataStmt.getDataValues());
+        // Values were gathered into the program's DataPool at load time
     }
     
     private void executeRestore(Statement stmt) throws BasicSyntaxError {
@@ -771,8 +1313,14 @@ public class Executor {
             // RESTORE without arguments resets to beginning
             dataPointer = 0;
         } else {
-            // RESTORE with line number (not implemented yet)
-            throw new BasicSyntaxError("RESTORE with line number not yet implemented");
+            // RESTORE n continues from the first DATA value at or after line n
+            int lineNumber;
+            try {
+                lineNumber = Integer.parseInt(args);
+            } catch (NumberFormatException e) {
+                throw new BasicSyntaxError("Invalid line number in RESTORE: " + args);
+            }
+            dataPointer = dataPool.offsetForLineIndex(program.findLineIndex(lineNumber));
         }
     }
     
@@ -782,7 +1330,7 @@ public class Executor {
         }
         
         DefStatement defStmt = (DefStatement) stmt;
-        System.out.println("DEBUG: Registering user function: " + defStmt.getFunctionName() + " = " + defStmt.getExpression());
+        out.println("DEBUG: Registering user function: " + defStmt.getFunctionName() + " = " + defStmt.getExpression());
         userFunctions.put(defStmt.getFunctionName(), defStmt);
     }
 
@@ -826,24 +1374,61 @@ public class Executor {
             int lineIndex = program.findLineIndex(lineNumber);
             if (gosub) {
                 // Save return location
-                ControlLocation nextLocation = getNextStatement();
-                if (nextLocation != null) {
-                    gosubStack.push(nextLocation);
+                int returnTo = statementOf(location) + 1;
+                if (returnTo < statementLocations.length) {
+                    checkStackDepth();
+                    gosubStack.push(returnTo);
                 }
             }
             gotoLocation = new ControlLocation(lineIndex, 0);
+            if (gosub && InterpreterEvents.active()) {
+                recordGosub(gotoLocation);
+            }
         } catch (NumberFormatException e) {
             throw new BasicSyntaxError("Invalid line number in ON statement: " + destStr);
         }
     }
 
+    /**
+     * The compiled form of an expression, compiled on first use
+     */
+    CompiledExpression compiled(String expression) {
+        CompiledExpression compiled = compiledExpressions.get(expression);
+        if (compiled == null) {
+            compiled = ExpressionEvaluator.compile(expression, types);
+            compiledExpressions.put(expression, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * The compiled value of a LET.  Numeric literals evaluate to Doubles, but
+     * when the whole expression is a plain integer literal (5, +5, not 5.0 or
+     * (5)) LET stores it as an Integer, so that symbols keep the expected type.
+     */
+    CompiledExpression assignedValue(String expression) {
+        CompiledExpression value = assignedValues.get(expression);
+        if (value == null) {
+            value = compiled(expression);
+            if (value instanceof CompiledExpression.Constant constant && constant.value() instanceof Double d
+                    && d == Math.rint(d) && PLAIN_INTEGER.matcher(expression).matches()) {
+                value = new CompiledExpression.Constant((int) d.doubleValue(), ValueType.INTEGER);
+            }
+            assignedValues.put(expression, value);
+        }
+        return value;
+    }
+
     /**
      * Expression evaluator using the dedicated ExpressionEvaluator class
      */
     private Object evaluateExpression(String expression) throws BasicRuntimeError {
-        ExpressionEvaluator evaluator = new ExpressionEvaluator(symbols, userFunctions);
+        return evaluate(compiled(expression));
+    }
+
+    Object evaluate(CompiledExpression expression) throws BasicRuntimeError {
         try {
-            return evaluator.evaluate(expression);
+            return evaluator.evaluateValue(expression);
         } catch (RuntimeException re) {
             if (re.getMessage()!=null && re.getMessage().startsWith("Undefined variable:")) {
                 throw new BasicRuntimeError(re.getMessage());
@@ -856,9 +1441,8 @@ public class Executor {
      * Condition evaluator using the dedicated ExpressionEvaluator class
      */
     private boolean evaluateCondition(String condition) throws BasicRuntimeError {
-        ExpressionEvaluator evaluator = new ExpressionEvaluator(symbols, userFunctions);
         try {
-            return evaluator.evaluateCondition(condition);
+            return ExpressionEvaluator.isTrue(evaluator.evaluateValue(compiled(condition)));
         } catch (RuntimeException re) {
             if (re.getMessage()!=null && re.getMessage().startsWith("Undefined variable:")) {
                 throw new BasicRuntimeError(re.getMessage());
@@ -867,7 +1451,101 @@ public class Executor {
         }
     }
 
+    // Operations for superinstructions and compiled regions
+
+    /**
+     * Make the statement at the location current, as the run loop does before
+     * running it; false if the run yields instead (see runProgram(long))
+     */
+    boolean enterStatement(ControlLocation at) throws BasicRuntimeError {
+        location = at;
+        if (--budget < 0 && !checkBudget()) {
+            return false;
+        }
+        statementCount++;
+        if (stopRequested) {
+            stopRequested = false;
+            runStatus = RunStatus.END_ERROR_RUNTIME;
+            throw new BasicRuntimeError("Execution stopped", getCurrentLine().getLine());
+        }
+        return true;
+    }
+
+    boolean isRunning() {
+        return runStatus == RunStatus.RUN;
+    }
+
+    ControlLocation pendingJump() {
+        return gotoLocation;
+    }
+
+    /**
+     * The FOR stack, for NEXT in compiled regions
+     */
+    ForStack loops() {
+        return forStack;
+    }
+
+    void jump(ControlLocation target) {
+        gotoLocation = target;
+    }
+
+    void gosub(ControlLocation target, ControlLocation returnTo) throws BasicQuotaError {
+        if (returnTo != null) {
+            checkStackDepth();
+            gosubStack.push(statementOf(returnTo));
+        }
+        gotoLocation = target;
+        if (InterpreterEvents.active()) {
+            recordGosub(target);
+        }
+    }
+
+    Object symbol(String name) {
+        return symbols.get(name);
+    }
+
+    void assign(String name, Object value) throws BasicQuotaError {
+        Object old = symbols.put(name, value);
+        if (quotas != null) stored(old, value);
+        triggerDataBreakpointIfWatched(name);
+    }
+
+    PrintStream output() {
+        return out;
+    }
+
     // Utility methods
+
+    /**
+     * The global statement number of a location (see Program.getStatementStarts)
+     */
+    private int statementOf(ControlLocation loc) {
+        return statementStarts[loc.getIndex()] + loc.getOffset();
+    }
+
+    /**
+     * The shared location of a global statement number
+     */
+    private ControlLocation locationOf(int statement) {
+        ControlLocation loc = statementLocations[statement];
+        if (loc == null) {
+            // The last line starting at or before the statement
+            int low = 0;
+            int high = program.size() - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (statementStarts[mid] <= statement) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            loc = new ControlLocation(low, statement - statementStarts[low]);
+            statementLocations[statement] = loc;
+        }
+        return loc;
+    }
     
     public boolean atEnd() {
         return location.getIndex() == null || location.getIndex() >= program.size();
@@ -907,11 +1585,19 @@ public class Executor {
     // Symbol table methods
     
     public Object getSymbol(String name) {
-        return symbols.get(name.toUpperCase());
+        return BasicString.export(symbols.get(name.toUpperCase()));
     }
 
     public void putSymbol(String name, Object value) {
-        symbols.put(name.toUpperCase(), value);
+        Object old = symbols.put(name.toUpperCase(), value);
+        if (quotas != null) {
+            count(old, -1);
+            count(value, 1);
+        }
+    }
+
+    public long getStatementCount() {
+        return statementCount;
     }
 
     public int getSymbolCount() {
@@ -921,18 +1607,233 @@ public class Executor {
             .count();
     }
 
+    /**
+     * The live symbol table, for monitoring; see ExecutorMonitor
+     */
+    Map<String, Object> symbolTable() {
+        return Collections.unmodifiableMap(symbols);
+    }
+
+    RunStatus getRunStatus() {
+        return runStatus;
+    }
+
     public Map<String, Object> getSymbols() {
-        return new HashMap<>(symbols);
+        Map<String, Object> copy = new HashMap<>();
+        for (Map.Entry<String, Object> entry : symbols.entrySet()) {
+            copy.put(entry.getKey(), BasicString.export(entry.getValue()));
+        }
+        return copy;
+    }
+
+    // State checkpoint / restore
+
+    /**
+     * Capture the complete run state (program counter, symbols, arrays, GOSUB
+     * and FOR stacks, DATA pointer, RND generator) in a compact binary form.  The snapshot can
+     * be handed to {@link #restore(byte[])} on any executor built from the same
+     * program, including a fresh one in another process.
+     */
+    public byte[] snapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SnapshotFormat.MAGIC);
+            out.writeInt(SnapshotFormat.VERSION);
+            out.writeInt(SnapshotFormat.fingerprint(program));
+
+            writeLocation(out, location);
+            out.writeUTF(runStatus.name());
+
+            out.writeInt(symbols.size());
+            for (Map.Entry<String, Object> entry : symbols.entrySet()) {
+                out.writeUTF(entry.getKey());
+                SnapshotFormat.writeValue(out, entry.getValue());
+            }
+
+            out.writeInt(gosubStack.size());
+            for (int i = 0; i < gosubStack.size(); i++) {
+                writeLocation(out, locationOf(gosubStack.get(i)));
+            }
+
+            out.writeInt(forStack.size());
+            for (int i = 0; i < forStack.size(); i++) {
+                out.writeUTF(forStack.variable(i));
+                SnapshotFormat.writeValue(out, forStack.stop(i));
+                SnapshotFormat.writeValue(out, forStack.step(i));
+                writeLocation(out, locationOf(forStack.head(i)));
+            }
+
+            out.writeInt(dataPointer);
+            out.writeLong(random.getState());
+
+            out.writeInt(userFunctions.size());
+            for (DefStatement def : userFunctions.values()) {
+                out.writeUTF(def.getArgs());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replace the run state of this executor with one captured by
+     * {@link #snapshot()}.  Execution resumes from the captured location on the
+     * next call to {@link #runProgram()}.
+     */
+    public void restore(byte[] snapshot) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot))) {
+            if (in.readInt() != SnapshotFormat.MAGIC) {
+                throw new IOException("Not an executor snapshot");
+            }
+            int version = in.readInt();
+            if (version != SnapshotFormat.VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            if (in.readInt() != SnapshotFormat.fingerprint(program)) {
+                throw new IOException("Snapshot was taken from a different program");
+            }
+
+            ControlLocation newLocation = readLocation(in);
+            RunStatus newStatus = RunStatus.valueOf(in.readUTF());
+
+            Map<String, Object> newSymbols = new HashMap<>();
+            int symbolCount = in.readInt();
+            for (int i = 0; i < symbolCount; i++) {
+                String name = in.readUTF();
+                newSymbols.put(name, SnapshotFormat.readValue(in));
+            }
+
+            GosubStack newGosubs = new GosubStack();
+            int gosubCount = in.readInt();
+            for (int i = 0; i < gosubCount; i++) {
+                newGosubs.push(readStatement(in));
+            }
+
+            ForStack newFors = new ForStack();
+            int forCount = in.readInt();
+            for (int i = 0; i < forCount; i++) {
+                String var = in.readUTF();
+                Object stop = SnapshotFormat.readValue(in);
+                Object step = SnapshotFormat.readValue(in);
+                newFors.push(var, stop instanceof Number n ? n.doubleValue() : Double.NaN,
+                        step instanceof Number n ? n.doubleValue() : Double.NaN, readStatement(in));
+            }
+
+            int newDataPointer = in.readInt();
+            if (newDataPointer < 0 || newDataPointer > dataPool.size()) {
+                throw new IOException("Corrupt snapshot: DATA pointer out of range");
+            }
+            long newRandomState = in.readLong();
+
+            Map<String, DefStatement> newFunctions = new HashMap<>();
+            int fnCount = in.readInt();
+            for (int i = 0; i < fnCount; i++) {
+                DefStatement def = new DefStatement("DEF", in.readUTF());
+                newFunctions.put(def.getFunctionName(), def);
+            }
+
+            // Only mutate the executor once the whole snapshot decoded cleanly
+            location = newLocation;
+            runStatus = newStatus;
+            gotoLocation = null;
+            symbols.clear();
+            symbols.putAll(newSymbols);
+            if (quotas != null) countUsage();
+            gosubStack.clear();
+            for (int i = 0; i < newGosubs.size(); i++) {
+                gosubStack.push(newGosubs.get(i));
+            }
+            forStack.clear();
+            for (int i = 0; i < newFors.size(); i++) {
+                forStack.push(newFors.variable(i), newFors.stop(i), newFors.step(i), newFors.head(i));
+            }
+            dataPointer = newDataPointer;
+            random.setState(newRandomState);
+            userFunctions.clear();
+            userFunctions.putAll(newFunctions);
+        } catch (BasicSyntaxError | IllegalArgumentException e) {
+            throw new IOException("Corrupt snapshot: " + e.getMessage());
+        }
+    }
+
+    private static void writeLocation(DataOutputStream out, ControlLocation loc) throws IOException {
+        out.writeInt(loc.getIndex() != null ? loc.getIndex() : -1);
+        out.writeInt(loc.getOffset());
+    }
+
+    private static ControlLocation readLocation(DataInputStream in) throws IOException {
+        int index = in.readInt();
+        int offset = in.readInt();
+        return new ControlLocation(index >= 0 ? index : null, offset);
+    }
+
+    /**
+     * A stack entry's location, as a global statement number of this program
+     */
+    private int readStatement(DataInputStream in) throws IOException {
+        int index = in.readInt();
+        int offset = in.readInt();
+        if (index < 0 || index >= program.size() || offset < 0 || offset >= program.getLine(index).statementCount()) {
+            throw new IOException("Corrupt snapshot: stack location out of range");
+        }
+        return statementStarts[index] + offset;
+    }
+
+    /**
+     * Redirect PRINT, INPUT prompts and other program output
+     */
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Record execution into the given trace (or stop tracing with null).
+     * The executor closes the trace in {@link #close()}.
+     */
+    public void setTrace(ExecutionTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Supply the reader INPUT statements consume.  When not set, INPUT reads
+     * from the console through a single reader created on first use.
+     */
+    public void setInput(BufferedReader in) {
+        this.in = in;
+    }
+
+    /**
+     * Seed the RND generator so the run can be reproduced
+     */
+    public void setSeed(long seed) {
+        random.setState(seed);
+    }
+
+    /**
+     * Answer INPUT statements from a pre-parsed script instead of a reader.
+     * Prompts are only printed when echoPrompts is set.
+     */
+    public void setInputScript(InputScript script, boolean echoPrompts) {
+        this.inputScript = script;
+        this.echoScriptPrompts = echoPrompts;
+    }
+
+    /**
+     * Ask a running program to stop.  Safe to call from any thread; the run
+     * ends with a runtime error before the next statement executes.
+     */
+    public void requestStop() {
+        stopRequested = true;
     }
 
     public void close() throws IOException {
-        if (traceFile != null) {
-            traceFile.close();
+        if (trace != null) {
+            trace.close();
         }
     }
 
     /**
-     * FOR loop record
+     * FOR loop record, as seen through {@link #getForStack()}; stop and step
+     * are Doubles, stop NaN if the end value was not a number
      */
     public record ForRecord(String variable, Object stop, Object step, ControlLocation location) {}
 
@@ -948,19 +1849,73 @@ public class Executor {
         return location;
     }
 
-    public Stack<ForRecord> getForStack() {
-        return forStack;
+    /**
+     * Read-only view of the active FOR loops, outermost first
+     */
+    public List<ForRecord> getForStack() {
+        return new AbstractList<>() {
+            @Override
+            public ForRecord get(int i) {
+                return new ForRecord(forStack.variable(i), forStack.stop(i), forStack.step(i), locationOf(forStack.head(i)));
+            }
+
+            @Override
+            public int size() {
+                return forStack.size();
+            }
+        };
     }
 
-    public Stack<ControlLocation> getGosubStack() {
-        return gosubStack;
+    /**
+     * Read-only view of the GOSUB return locations, outermost first
+     */
+    public List<ControlLocation> getGosubStack() {
+        return new AbstractList<>() {
+            @Override
+            public ControlLocation get(int i) {
+                return locationOf(gosubStack.get(i));
+            }
+
+            @Override
+            public int size() {
+                return gosubStack.size();
+            }
+        };
     }
 
-    public Map<Integer, Set<Integer>> getCoverage() {
+    /**
+     * Statements executed so far, or null if coverage was not enabled
+     */
+    public Coverage getCoverage() {
         return coverage;
     }
 
     public void clearCoverage() {
-        coverage.clear();
+        if (coverage != null) {
+            coverage.clear();
+        }
+    }
+
+    /**
+     * Count executions of every statement from now on, and fast path hits of fused ones
+     */
+    public void setProfiling(boolean enabled) {
+        if (!enabled) {
+            profile = null;
+            return;
+        }
+        profile = new Profile(program);
+        for (int s = 0; s < superinstructions.length; s++) {
+            if (superinstructions[s] != null && superinstructions[s] != Superinstruction.NONE) {
+                profile.fused(s, superinstructions[s].kind());
+            }
+        }
+    }
+
+    /**
+     * Counts since profiling was enabled, or null if it is not
+     */
+    public Profile getProfile() {
+        return profile;
     }
 } 
\ No newline at end of file
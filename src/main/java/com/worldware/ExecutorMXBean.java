@@ -0,0 +1,39 @@
+package com.worldware;
+
+/**
+ * JMX view of a running {@link Executor}, registered as
+ * com.worldware:type=Executor by Main's --jmx option and readable
+ * with JConsole, VisualVM or any JMX client.
+ * <p>
+ * Values are read from the monitoring thread without stopping the
+ * interpreter, so each is current to within a statement or so and they are
+ * not a consistent snapshot of one moment.
+ */
+public interface ExecutorMXBean {
+    /** Statements executed since the executor was created */
+    long getStatementsExecuted();
+
+    /** Statements executed per second since the previous call (since registration for the first) */
+    double getStatementsPerSecond();
+
+    /** Number of GOSUBs waiting for their RETURN */
+    int getGosubDepth();
+
+    /** Number of active FOR loops */
+    int getForDepth();
+
+    /** Number of scalar variables and arrays, not counting built-in functions */
+    int getSymbolCount();
+
+    /** Estimated heap bytes of scalar variable values */
+    long getSymbolBytes();
+
+    /** Estimated heap bytes of arrays and their elements */
+    long getArrayBytes();
+
+    /** BASIC line number of the statement being run, or -1 when not at a line */
+    int getCurrentLine();
+
+    /** The executor's run status, e.g. RUN or END_OF_PROGRAM */
+    String getRunStatus();
+}
@@ -0,0 +1,155 @@
+package com.worldware;
+
+import java.lang.management.ManagementFactory;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@link ExecutorMXBean} for one executor.
+ * <p>
+ * Nothing here runs on the interpreter thread: the executor's counters are
+ * plain fields that are read when a JMX client asks, so an executor that
+ * nobody monitors runs exactly as fast as one that is not registered.  The
+ * symbol table is an unsynchronized map; the memory figures walk a copy of
+ * its entries, and a copy that races with an assignment is simply retried.
+ * <p>
+ * Memory is estimated for a 64-bit JVM with compressed references: 16 bytes
+ * per boxed number, 40 bytes plus one per character for a string, and
+ * 16 bytes plus 4 per element for each array level.
+ */
+final class ExecutorMonitor implements ExecutorMXBean {
+    static final String OBJECT_NAME = "com.worldware:type=Executor";
+
+    private static final String ARRAY_PREFIX = "ARRAY:";
+    private static final String BUILTIN = "BUILTIN_FUNCTION";
+    private static final int COPY_ATTEMPTS = 5;
+
+    private final Executor executor;
+    private long lastCount;
+    private long lastNanos;
+
+    ExecutorMonitor(Executor executor) {
+        this.executor = executor;
+        this.lastCount = executor.getStatementCount();
+        this.lastNanos = System.nanoTime();
+    }
+
+    /**
+     * Register a monitor for the executor with the platform MBean server,
+     * replacing the monitor of any earlier executor
+     */
+    static ExecutorMonitor register(Executor executor) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        ExecutorMonitor monitor = new ExecutorMonitor(executor);
+        server.registerMBean(monitor, name);
+        return monitor;
+    }
+
+    @Override
+    public long getStatementsExecuted() {
+        return executor.getStatementCount();
+    }
+
+    @Override
+    public synchronized double getStatementsPerSecond() {
+        long count = executor.getStatementCount();
+        long now = System.nanoTime();
+        double rate = now > lastNanos ? (count - lastCount) / ((now - lastNanos) / 1e9) : 0;
+        lastCount = count;
+        lastNanos = now;
+        return rate;
+    }
+
+    @Override
+    public int getGosubDepth() {
+        return executor.getGosubStack().size();
+    }
+
+    @Override
+    public int getForDepth() {
+        return executor.getForStack().size();
+    }
+
+    @Override
+    public int getSymbolCount() {
+        int count = 0;
+        for (Map.Entry<String, Object> entry : symbolEntries()) {
+            if (!BUILTIN.equals(entry.getValue())) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public long getSymbolBytes() {
+        long bytes = 0;
+        for (Map.Entry<String, Object> entry : symbolEntries()) {
+            if (!entry.getKey().startsWith(ARRAY_PREFIX) && !BUILTIN.equals(entry.getValue())) {
+                bytes += estimate(entry.getValue());
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getArrayBytes() {
+        long bytes = 0;
+        for (Map.Entry<String, Object> entry : symbolEntries()) {
+            if (entry.getKey().startsWith(ARRAY_PREFIX)) {
+                bytes += estimate(entry.getValue());
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public int getCurrentLine() {
+        try {
+            ProgramLine line = executor.getCurrentLine();
+            return line == null ? -1 : line.getLine();
+        } catch (RuntimeException e) {
+            return -1; // the location moved past the end while we looked
+        }
+    }
+
+    @Override
+    public String getRunStatus() {
+        return String.valueOf(executor.getRunStatus());
+    }
+
+    /**
+     * The symbol table's entries, copied between assignments
+     */
+    private List<Map.Entry<String, Object>> symbolEntries() {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return List.copyOf(executor.symbolTable().entrySet());
+            } catch (ConcurrentModificationException | NullPointerException e) {
+                if (attempt == COPY_ATTEMPTS) {
+                    return List.of();
+                }
+            }
+        }
+    }
+
+    static long estimate(Object value) {
+        if (value instanceof Object[] array) {
+            long bytes = 16 + 4L * array.length;
+            for (Object element : array) {
+                bytes += estimate(element);
+            }
+            return bytes;
+        }
+        if (value instanceof CharSequence text) {
+            return 40 + text.length();
+        }
+        return value == null ? 0 : 16;
+    }
+}
@@ -23,14 +23,23 @@ public class ExpressionEvaluator {
 
     private final Map<String, Object> symbols;
     private final Map<String, DefStatement> userFunctions;
+    private final BasicRandom random;
 
     public ExpressionEvaluator(Map<String, Object> symbols) {
         this(symbols, new HashMap<>());
     }
 
     public ExpressionEvaluator(Map<String, Object> symbols, Map<String, DefStatement> userFunctions) {
+        this(symbols, userFunctions, new BasicRandom());
+    }
+
+    /**
+     * @param random source for RND, normally owned by the Executor
+     */
+    public ExpressionEvaluator(Map<String, Object> symbols, Map<String, DefStatement> userFunctions, BasicRandom random) {
         this.symbols = symbols;
         this.userFunctions = userFunctions != null ? userFunctions : new HashMap<>();
+        this.random = random;
     }
 
     /* --------------------------------------------------------------------- */
@@ -38,15 +47,86 @@ public class ExpressionEvaluator {
     /* --------------------------------------------------------------------- */
 
     public Object evaluate(String expression) {
+        return BasicString.export(evaluateValue(expression));
+    }
+
+    /**
+     * Evaluate without converting the result, so string results may still be
+     * {@link BasicString} views.  Used by the Executor, which stores them as-is.
+     */
+    Object evaluateValue(String expression) {
         Parser p = new Parser(expression);
         return p.parseExpression();
     }
 
     public boolean evaluateCondition(String condition) {
-        Object v = evaluate(condition);
+        return isTrue(evaluateValue(condition));
+    }
+
+    /**
+     * An expression split into tokens once, so that evaluating it repeatedly
+     * (e.g. a conditional breakpoint) skips the lexer.
+     */
+    public static final class Prepared {
+        private final String source;
+        private final Token[] tokens;
+
+        private Prepared(String source, Token[] tokens) {
+            this.source = source;
+            this.tokens = tokens;
+        }
+
+        @Override
+        public String toString() {
+            return source;
+        }
+    }
+
+    public static Prepared prepare(String expression) {
+        return new Prepared(expression, lex(expression));
+    }
+
+    public Object evaluate(Prepared expression) {
+        return BasicString.export(new Parser(expression.tokens).parseExpression());
+    }
+
+    public boolean evaluateCondition(Prepared condition) {
+        return isTrue(new Parser(condition.tokens).parseExpression());
+    }
+
+    /**
+     * Parse an expression once into a tree for repeated evaluation (see
+     * {@link CompiledExpression}), typing variables from the given analysis.
+     * Text the tree builder cannot handle (syntax errors, numbers out of range)
+     * is kept as text and parsed on each evaluation, so errors surface when
+     * and how they always did.  Constant operations are folded.
+     */
+    static CompiledExpression compile(String expression, TypeInference types) {
+        return compile(expression, types, true);
+    }
+
+    /**
+     * @param fold whether to evaluate constant operations while compiling
+     */
+    static CompiledExpression compile(String expression, TypeInference types, boolean fold) {
+        try {
+            return new Compiler(lex(expression), types, fold).parseExpression();
+        } catch (RuntimeException e) {
+            return new CompiledExpression.Interpreted(expression);
+        }
+    }
+
+    /**
+     * Evaluate a compiled expression; string results may be {@link BasicString} views
+     */
+    Object evaluateValue(CompiledExpression expression) {
+        return expression.evaluate(this);
+    }
+
+    static boolean isTrue(Object v) {
         if (v instanceof Boolean b) return b;
         if (v instanceof Number n) return n.doubleValue() != 0.0;
-        if (v instanceof String s) return !s.isEmpty();
+        if (v instanceof CharSequence s) return s.length() != 0;
         return false;
     }
 
@@ -137,6 +217,20 @@ public class ExpressionEvaluator {
         }
     }
 
+    /**
+     * Whole token stream of an expression, ending with the EOF token
+     */
+    private static Token[] lex(String expression) {
+        Lexer lx = new Lexer(expression);
+        List<Token> tokens = new ArrayList<>();
+        Token t;
+        do {
+            t = lx.next();
+            tokens.add(t);
+        } while (t.type != TokType.EOF);
+        return tokens.toArray(new Token[0]);
+    }
+
     /**
      * Utility for test/diagnostic code: returns the raw token stream produced by the
      * lexer without performing any evaluation or symbol look-ups.
@@ -156,16 +250,30 @@ public class ExpressionEvaluator {
     /* --------------------------------------------------------------------- */
 
     private class Parser {
-        private final Lexer lexer;
+        private final Lexer lexer;   // null when parsing pre-lexed tokens
+        private final Token[] tokens;
+        private int pos;
         private Token look;
 
         Parser(String src) {
             this.lexer = new Lexer(src);
+            this.tokens = null;
             this.look = lexer.next();
         }
 
+        Parser(Token[] tokens) {
+            this.lexer = null;
+            this.tokens = tokens;
+            this.pos = 0;
+            this.look = tokens[0];
+        }
+
         private void consume() {
-            look = lexer.next();
+            if (lexer != null) {
+                look = lexer.next();
+            } else if (pos < tokens.length - 1) {
+                look = tokens[++pos];
+            }
         }
 
         private boolean accept(TokType type, String text) {
@@ -319,16 +427,184 @@ public class ExpressionEvaluator {
         private boolean toBoolean(Object o) {
             if (o instanceof Boolean b) return b;
             if (o instanceof Number n) return n.doubleValue() != 0.0;
-            if (o instanceof String s) return !s.isEmpty();
+            if (o instanceof CharSequence s) return s.length() != 0;
+            return false;
+        }
+    }
+
+    /**
+     * Builds a {@link CompiledExpression} following exactly the grammar of
+     * {@link Parser}, producing nodes where the Parser produces values
+     */
+    private static class Compiler {
+        // Evaluates constant operations; they never read symbols or RND
+        private static final ExpressionEvaluator FOLDER = new ExpressionEvaluator(Map.of());
+
+        private final Token[] tokens;
+        private final TypeInference types;
+        private final boolean fold;
+        private int pos;
+        private Token look;
+
+        Compiler(Token[] tokens, TypeInference types, boolean fold) {
+            this.tokens = tokens;
+            this.types = types;
+            this.fold = fold;
+            this.look = tokens[0];
+        }
+
+        /**
+         * The node, or its value as a constant if it can be worked out now
+         */
+        private CompiledExpression fold(CompiledExpression node) {
+            if (!fold || !node.foldable()) return node;
+            try {
+                Object value = node.evaluate(FOLDER);
+                return new CompiledExpression.Constant(value, CompiledExpression.typeOfValue(value));
+            } catch (RuntimeException e) {
+                return node; // e.g. LOG(0): raise the error if and when it is evaluated
+            }
+        }
+
+        private void consume() {
+            if (pos < tokens.length - 1) {
+                look = tokens[++pos];
+            }
+        }
+
+        private boolean accept(TokType type) {
+            if (look.type == type) {
+                consume();
+                return true;
+            }
             return false;
         }
+
+        private boolean atWord(String word) {
+            return look.type == TokType.IDENT && look.text.equalsIgnoreCase(word);
+        }
+
+        CompiledExpression parseExpression() {
+            CompiledExpression left = parseAnd();
+            while (atWord("OR")) {
+                consume();
+                left = fold(new CompiledExpression.Logical(false, left, parseAnd()));
+            }
+            return left;
+        }
+
+        private CompiledExpression parseAnd() {
+            CompiledExpression left = parseComparison();
+            while (atWord("AND")) {
+                consume();
+                left = fold(new CompiledExpression.Logical(true, left, parseComparison()));
+            }
+            return left;
+        }
+
+        private CompiledExpression parseComparison() {
+            CompiledExpression left = parseAdd();
+            while (look.type == TokType.OP && ("=<>".indexOf(look.text.charAt(0)) >= 0)) {
+                String op = look.text;
+                consume();
+                if ((op.equals("<") || op.equals(">")) && look.type == TokType.OP && look.text.equals("=")) {
+                    op += "=";
+                    consume();
+                } else if (op.equals("<") && look.type == TokType.OP && look.text.equals(">")) {
+                    op = "<>";
+                    consume();
+                }
+                left = fold(CompiledExpression.comparison(op, left, parseAdd()));
+            }
+            return left;
+        }
+
+        private CompiledExpression parseAdd() {
+            CompiledExpression left = parseMul();
+            while (look.type == TokType.OP && (look.text.equals("+") || look.text.equals("-"))) {
+                String op = look.text;
+                consume();
+                left = fold(CompiledExpression.arithmetic(op, left, parseMul()));
+            }
+            return left;
+        }
+
+        private CompiledExpression parseMul() {
+            CompiledExpression left = parsePow();
+            while (look.type == TokType.OP && (look.text.equals("*") || look.text.equals("/"))) {
+                String op = look.text;
+                consume();
+                left = fold(CompiledExpression.arithmetic(op, left, parsePow()));
+            }
+            return left;
+        }
+
+        private CompiledExpression parsePow() {
+            CompiledExpression left = parseUnary();
+            while (look.type == TokType.OP && look.text.equals("^")) {
+                consume();
+                left = fold(CompiledExpression.arithmetic("^", left, parseUnary()));
+            }
+            return left;
+        }
+
+        private CompiledExpression parseUnary() {
+            if (look.type == TokType.OP && (look.text.equals("+") || look.text.equals("-"))) {
+                String op = look.text;
+                consume();
+                CompiledExpression operand = parseUnary();
+                return op.equals("-") ? fold(CompiledExpression.negate(operand)) : operand;
+            }
+            return parsePrimary();
+        }
+
+        private CompiledExpression parsePrimary() {
+            if (look.type == TokType.NUMBER) {
+                String txt = look.text;
+                consume();
+                // A Double either way, as the Parser's conditional promotes its Integer;
+                // a literal without a point is still whole, so it takes the long paths
+                return txt.contains(".")
+                        ? new CompiledExpression.Constant(Double.parseDouble(txt), ValueType.NUMBER)
+                        : new CompiledExpression.Constant((double) Integer.parseInt(txt), ValueType.INTEGER);
+            }
+            if (look.type == TokType.STRING) {
+                String s = look.text;
+                consume();
+                return new CompiledExpression.Constant(s, ValueType.STRING);
+            }
+            if (look.type == TokType.IDENT) {
+                String name = look.text.toUpperCase();
+                consume();
+                if (accept(TokType.LPAREN)) {
+                    List<CompiledExpression> args = new ArrayList<>();
+                    if (!accept(TokType.RPAREN)) {
+                        do {
+                            args.add(parseExpression());
+                        } while (accept(TokType.COMMA));
+                        if (!accept(TokType.RPAREN)) throw new IllegalStateException("Expected )");
+                    }
+                    return fold(CompiledExpression.call(name, args, BUILTIN_NAMES.contains(name)));
+                }
+                if (!name.matches("(?i)[A-Z](\\d)?\\$?")) {
+                    throw new IllegalStateException("Invalid variable name: " + name);
+                }
+                return new CompiledExpression.Variable(name, types.typeOf(name));
+            }
+            if (accept(TokType.LPAREN)) {
+                CompiledExpression inner = parseExpression();
+                if (!accept(TokType.RPAREN)) throw new IllegalStateException("Expected )");
+                return inner;
+            }
+            return new CompiledExpression.Constant(0, ValueType.INTEGER);
+        }
     }
 
     /* --------------------------------------------------------------------- */
     /*  Helpers                                                              */
     /* --------------------------------------------------------------------- */
 
-    private boolean compareValues(Object left, Object right, String op) {
+    boolean compareValues(Object left, Object right, String op) {
         // numeric compare if both numbers else string compare
         if (left instanceof Number && right instanceof Number) {
             double l = ((Number) left).doubleValue();
@@ -343,9 +619,7 @@ public class ExpressionEvaluator {
                 default -> false;
             };
         }
-        String ls = left.toString();
-        String rs = right.toString();
-        int cmp = ls.compareTo(rs);
+        int cmp = CharSequence.compare(chars(left), chars(right));
         return switch (op) {
             case "=" -> cmp == 0;
             case "<>" -> cmp != 0;
@@ -357,10 +631,10 @@ public class ExpressionEvaluator {
         };
     }
 
-    private Object performArithmetic(Object l, Object r, String op) {
+    Object performArithmetic(Object l, Object r, String op) {
         // string concatenation for +
-        if (op.equals("+") && (l instanceof String || r instanceof String)) {
-            return l.toString() + r.toString();
+        if (op.equals("+") && (l instanceof CharSequence || r instanceof CharSequence)) {
+            return BasicString.concat(chars(l), chars(r));
         }
         double ld = toNumber(l);
         double rd = toNumber(r);
@@ -379,7 +653,11 @@ public class ExpressionEvaluator {
         return res;
     }
 
-    private double toNumber(Object obj) {
+    private static CharSequence chars(Object obj) {
+        return obj instanceof CharSequence cs ? cs : obj.toString();
+    }
+
+    double toNumber(Object obj) {
         if (obj instanceof Number n) return n.doubleValue();
         try {return Double.parseDouble(obj.toString());} catch (Exception e) {return 0;}
     }
@@ -392,12 +670,17 @@ public class ExpressionEvaluator {
 
     private final Map<String, Builtin> builtins = initBuiltins();
 
+    // Names in the builtins map, for the compiler, which has no evaluator instance
+    private static final Set<String> BUILTIN_NAMES = Set.of(
+            "INT", "RND", "SGN", "EXP", "LOG", "SIN", "COS", "TAN", "ATN", "SQR", "ABS",
+            "LEFT$", "RIGHT$", "MID$", "LEN", "STR$");
+
     private Map<String, Builtin> initBuiltins() {
         Map<String, Builtin> m = new HashMap<>();
         m.put("INT", args -> (int)Math.floor(toNumber(args.get(0))));
         m.put("RND", args -> {
             double a = toNumber(args.get(0));
-            return a <= 0 ? Math.random() : Math.random()*a;
+            return a <= 0 ? random.nextDouble() : random.nextDouble()*a;
         });
         m.put("SGN", args -> {
             double v = toNumber(args.get(0));
@@ -420,28 +703,29 @@ public class ExpressionEvaluator {
         });
         m.put("ABS", args -> Math.abs(toNumber(args.get(0))));
         // string fns
+        // Substrings are views sharing the argument's characters (see BasicString)
         m.put("LEFT$", args -> {
-            String s = args.get(0).toString();
+            CharSequence s = chars(args.get(0));
             int len = (int)toNumber(args.get(1));
             len = Math.max(0, Math.min(len, s.length()));
-            return s.substring(0, len);
+            return BasicString.slice(s, 0, len);
         });
         m.put("RIGHT$", args -> {
-            String s = args.get(0).toString();
+            CharSequence s = chars(args.get(0));
             int len = (int)toNumber(args.get(1));
             len = Math.max(0, Math.min(len, s.length()));
-            return s.substring(s.length()-len);
+            return BasicString.slice(s, s.length()-len, s.length());
         });
         m.put("MID$", args -> {
-            String s = args.get(0).toString();
+            CharSequence s = chars(args.get(0));
             int start = (int)toNumber(args.get(1)) - 1; // BASIC 1-based
             start = Math.max(0, Math.min(start, s.length()));
-            if (args.size()==2) return s.substring(start);
+            if (args.size()==2) return BasicString.slice(s, start, s.length());
             int len = (int)toNumber(args.get(2));
             len = Math.max(0, Math.min(len, s.length()-start));
-            return s.substring(start, start+len);
+            return BasicString.slice(s, start, start+len);
         });
-        m.put("LEN", args -> args.get(0).toString().length());
+        m.put("LEN", args -> chars(args.get(0)).length());
         m.put("STR$", args -> {
             double v = toNumber(args.get(0));
             String s;
@@ -460,7 +744,11 @@ public class ExpressionEvaluator {
         return builtins.containsKey(name) || userFunctions.containsKey(name);
     }
 
-    private Object callFunction(String name, List<Object> args) {
+    boolean isUserFunction(String name) {
+        return userFunctions.containsKey(name);
+    }
+
+    Object callFunction(String name, List<Object> args) {
         if (builtins.containsKey(name)) {
             return builtins.get(name).apply(args);
         }
@@ -470,14 +758,32 @@ public class ExpressionEvaluator {
         if (args.size()!=1) throw new RuntimeException("Function "+name+" expects 1 arg");
         Map<String,Object> temp = new HashMap<>(symbols);
         temp.put(def.getParameterName(), args.get(0));
-        ExpressionEvaluator sub = new ExpressionEvaluator(temp, userFunctions);
-        return sub.evaluate(def.getExpression());
+        ExpressionEvaluator sub = new ExpressionEvaluator(temp, userFunctions, random);
+        return sub.evaluateValue(def.getExpression());
     }
 
     /* --------------------------------------------------------------------- */
     /*  Array handling                                                       */
     /* --------------------------------------------------------------------- */
 
+    /**
+     * Value of a simple variable; an unset variable is an error
+     */
+    Object variable(String name) {
+        Object val = symbols.get(name);
+        if (val == null) {
+            throw new RuntimeException("Undefined variable: " + name);
+        }
+        return val;
+    }
+
+    /**
+     * The storage of a DIMmed array, or null
+     */
+    Object array(String name) {
+        return symbols.get("ARRAY:" + name);
+    }
+
     private Object arrayAccess(String name, List<Object> indices) {
         Object arr = symbols.get("ARRAY:"+name);
         if (arr == null) return 0;
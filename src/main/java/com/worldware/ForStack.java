@@ -0,0 +1,83 @@
+package com.worldware;
+
+import java.util.Arrays;
+
+/**
+ * The Executor's FOR stack as parallel arrays, one entry per active loop:
+ * the loop variable, the end and step values, and the global statement
+ * number of the FOR statement (see {@link Program#getStatementStarts}).
+ * The loop body starts at the statement after it.  A FOR and its NEXTs
+ * allocate nothing and box nothing once the arrays have grown to the
+ * program's deepest nesting.
+ * <p>
+ * An end value that is not a number is kept as NaN; NEXT leaves such a loop
+ * alone, as it always has.  Not synchronized; only the size is read from
+ * other threads, by the monitoring code.
+ */
+final class ForStack {
+    private String[] variables = new String[8];
+    private double[] stops = new double[8];
+    private double[] steps = new double[8];
+    private int[] heads = new int[8];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void push(String variable, double stop, double step, int head) {
+        if (size == heads.length) {
+            int capacity = size * 2;
+            variables = Arrays.copyOf(variables, capacity);
+            stops = Arrays.copyOf(stops, capacity);
+            steps = Arrays.copyOf(steps, capacity);
+            heads = Arrays.copyOf(heads, capacity);
+        }
+        variables[size] = variable;
+        stops[size] = stop;
+        steps[size] = step;
+        heads[size] = head;
+        size++;
+    }
+
+    /**
+     * Remove the innermost loop; the stack must not be empty
+     */
+    void pop() {
+        variables[--size] = null;
+    }
+
+    void clear() {
+        Arrays.fill(variables, 0, size, null);
+        size = 0;
+    }
+
+    // Entries by depth, 0 being the outermost and size() - 1 the innermost loop
+
+    String variable(int i) {
+        return variables[check(i)];
+    }
+
+    double stop(int i) {
+        return stops[check(i)];
+    }
+
+    double step(int i) {
+        return steps[check(i)];
+    }
+
+    int head(int i) {
+        return heads[check(i)];
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return i;
+    }
+}
@@ -0,0 +1,51 @@
+package com.worldware;
+
+import java.util.Arrays;
+
+/**
+ * The Executor's GOSUB stack: return points as global statement numbers
+ * (see {@link Program#getStatementStarts}) in a growable int array, so a
+ * GOSUB and its RETURN allocate nothing once the array has grown to the
+ * program's deepest nesting.  Not synchronized; only the size is read from
+ * other threads, by the monitoring code.
+ */
+final class GosubStack {
+    private int[] returns = new int[16];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void push(int statement) {
+        if (size == returns.length) {
+            returns = Arrays.copyOf(returns, size * 2);
+        }
+        returns[size++] = statement;
+    }
+
+    /**
+     * Remove the innermost return point; the stack must not be empty
+     */
+    int pop() {
+        return returns[--size];
+    }
+
+    /**
+     * The return point at depth i, 0 being the outermost
+     */
+    int get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return returns[i];
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
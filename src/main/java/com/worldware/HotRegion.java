@@ -0,0 +1,216 @@
+package com.worldware;
+
+import java.util.List;
+
+/**
+ * A hot loop of the program, compiled for the second execution tier.
+ * <p>
+ * The Executor interprets every statement at first and counts the backward
+ * jumps to each statement (NEXT going back to its FOR, GOTO or IF ... THEN to
+ * an earlier line).  When a statement has been jumped back to
+ * {@link #HOT_THRESHOLD} times, the statements from there to the end of the
+ * line that jumped are compiled into a region: an array of steps indexed by
+ * global statement number (see {@link Program#getStatementStarts}).
+ * Jumps inside the region become array indexes, and scalar assignments and
+ * NEXT run from precompiled forms.  Lines that run once never pay for this.
+ * <p>
+ * Both tiers work on the Executor's symbol table and FOR and GOSUB stacks, so
+ * the only state handed over is the control location.  Entering at any
+ * statement of the region takes the interpreter's location.  Leaving hands
+ * back the last statement run and any pending jump, and the interpreter
+ * continues from there exactly as if it had run that statement itself.
+ * The region is left when control goes outside it, when a statement
+ * changes the run status (END, STOP, a data breakpoint), when the statement
+ * budget runs out, or when an error is raised.  Statements without a
+ * compiled form are run by the general statement code.  This is the
+ * rare-path fallback.
+ */
+final class HotRegion {
+    /** Backward jumps to a statement before the loop starting there is compiled */
+    static final int HOT_THRESHOLD = 50;
+
+    // Returned by a step that leaves the next statement to the pending jump, if any
+    private static final int FOLLOW = -1;
+
+    private final int[] starts;
+    private final int first; // global statement numbers, inclusive
+    private final int last;
+    private final ControlLocation[] locations;
+    private final Step[] steps;
+
+    private HotRegion(int[] starts, int first, int last) {
+        this.starts = starts;
+        this.first = first;
+        this.last = last;
+        this.locations = new ControlLocation[last - first + 1];
+        this.steps = new Step[last - first + 1];
+    }
+
+    /**
+     * Compile the statements from head to the end of the line holding backEdge
+     */
+    static HotRegion compile(Executor ex, Program program, ControlLocation head, ControlLocation backEdge) {
+        int[] starts = program.getStatementStarts();
+        int first = starts[head.getIndex()] + head.getOffset();
+        int last = starts[backEdge.getIndex() + 1] - 1;
+        HotRegion region = new HotRegion(starts, first, last);
+        for (int index = head.getIndex(); index <= backEdge.getIndex(); index++) {
+            List<Statement> stmts = program.getLine(index).getStmts();
+            for (int offset = index == head.getIndex() ? head.getOffset() : 0; offset < stmts.size(); offset++) {
+                int s = starts[index] + offset;
+                region.locations[s - first] = new ControlLocation(index, offset);
+                region.steps[s - first] = region.lower(ex, s, index, offset, stmts.get(offset));
+            }
+        }
+        return region;
+    }
+
+    boolean contains(int statement) {
+        return statement >= first && statement <= last;
+    }
+
+    int size() {
+        return last - first + 1;
+    }
+
+    /**
+     * Run from the given statement, which the interpreter has made current,
+     * until control leaves the region
+     */
+    void run(Executor ex, int entry) throws BasicSyntaxError, BasicRuntimeError {
+        int s = entry;
+        while (true) {
+            int next = steps[s - first].execute(ex);
+            if (!ex.isRunning()) {
+                return;
+            }
+            if (next == FOLLOW) {
+                ControlLocation target = ex.pendingJump();
+                if (target == null) {
+                    next = s + 1;
+                } else {
+                    next = starts[target.getIndex()] + target.getOffset();
+                    if (!contains(next)) {
+                        return; // the interpreter takes the jump
+                    }
+                    ex.jump(null);
+                }
+            }
+            if (next > last) {
+                return; // falls through to the statement after the region
+            }
+            s = next;
+            if (!ex.enterStatement(locations[s - first])) {
+                return; // yielded; the interpreter continues here on the next run
+            }
+        }
+    }
+
+    private Step lower(Executor ex, int s, int index, int offset, Statement stmt) {
+        if (stmt instanceof AssignmentStatement assignment && !assignment.isArrayAssignment()) {
+            Superinstruction fused = ex.superinstruction(s, index, offset, stmt);
+            if (fused == Superinstruction.NONE) {
+                return new Assign(assignment.getVariable().toUpperCase(), ex.assignedValue(assignment.getExpression()));
+            }
+            return new Fused(fused, stmt);
+        }
+        if (stmt instanceof BasicStatement && stmt.getKeyword().equals("NEXT")) {
+            String variable = stmt.getArgs().trim().toUpperCase();
+            if (!variable.isEmpty() && variable.chars().allMatch(Character::isLetterOrDigit)) {
+                return new Next(variable, stmt);
+            }
+        }
+        return new Fused(ex.superinstruction(s, index, offset, stmt), stmt);
+    }
+
+    /* --------------------------------------------------------------------- */
+    /*  Steps                                                                */
+    /* --------------------------------------------------------------------- */
+
+    private abstract static class Step {
+        /**
+         * Run the statement; the global number of the next statement, or FOLLOW
+         */
+        abstract int execute(Executor ex) throws BasicSyntaxError, BasicRuntimeError;
+    }
+
+    /**
+     * A superinstruction if the statement has one, else the general statement code
+     */
+    private static final class Fused extends Step {
+        private final Superinstruction fused;
+        private final Statement stmt;
+
+        Fused(Superinstruction fused, Statement stmt) {
+            this.fused = fused;
+            this.stmt = stmt;
+        }
+
+        @Override
+        int execute(Executor ex) throws BasicSyntaxError, BasicRuntimeError {
+            if (!fused.execute(ex)) {
+                ex.executeStatement(stmt);
+            }
+            return FOLLOW;
+        }
+    }
+
+    private static final class Assign extends Step {
+        private final String variable;
+        private final CompiledExpression value;
+
+        Assign(String variable, CompiledExpression value) {
+            this.variable = variable;
+            this.value = value;
+        }
+
+        @Override
+        int execute(Executor ex) throws BasicRuntimeError {
+            ex.assign(variable, ex.evaluate(value));
+            return FOLLOW;
+        }
+    }
+
+    /**
+     * NEXT of the innermost loop, with its numbers already checked; anything
+     * else (no loop, another variable, non-numeric values) goes to the general code
+     */
+    private final class Next extends Step {
+        private final String variable;
+        private final Statement stmt;
+
+        Next(String variable, Statement stmt) {
+            this.variable = variable;
+            this.stmt = stmt;
+        }
+
+        @Override
+        int execute(Executor ex) throws BasicSyntaxError, BasicRuntimeError {
+            ForStack loops = ex.loops();
+            int top = loops.size() - 1;
+            if (top < 0 || !loops.variable(top).equals(variable)
+                    || !(ex.symbol(variable) instanceof Number current)
+                    || Double.isNaN(loops.stop(top))) {
+                ex.executeStatement(stmt);
+                return FOLLOW;
+            }
+            int body = loops.head(top) + 1;
+            if (!contains(body)) {
+                ex.executeStatement(stmt);
+                return FOLLOW;
+            }
+            // Same arithmetic as Executor.executeNext
+            double value = current.doubleValue();
+            double increment = loops.step(top);
+            double nextValue = value + increment;
+            double end = loops.stop(top);
+            if (increment > 0 ? nextValue <= end : nextValue >= end) {
+                ex.putSymbol(variable, nextValue);
+                return body;
+            }
+            ex.putSymbol(variable, value);
+            loops.pop();
+            return FOLLOW;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.worldware;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A pre-read script of answers for INPUT statements, used by automated players.
+ * <p>
+ * The whole script is read and split into records (one per line) up front.
+ * Every field is converted once to both its string form and its numeric form,
+ * so an INPUT statement only picks the pre-built value matching each
+ * variable's type and never re-parses text.
+ */
+public class InputScript {
+
+    /**
+     * One line of input, split on commas, with each field pre-converted
+     */
+    public static final class Record {
+        private final String[] text;
+        private final Object[] numbers;
+
+        Record(String[] text, Object[] numbers) {
+            this.text = text;
+            this.numbers = numbers;
+        }
+
+        public int size() {
+            return text.length;
+        }
+
+        /**
+         * Value for a string variable (upper-cased when the dialect requires it)
+         */
+        public String textAt(int i) {
+            return text[i];
+        }
+
+        /**
+         * Value for a numeric variable
+         */
+        public Object numberAt(int i) {
+            return numbers[i];
+        }
+    }
+
+    private static final Record EMPTY = parseLine("");
+
+    private final Record[] records;
+    private int next;
+
+    private InputScript(Record[] records) {
+        this.records = records;
+        this.next = 0;
+    }
+
+    /**
+     * Read and pre-parse an input script file
+     */
+    public static InputScript load(Path path) throws IOException {
+        return fromLines(Files.readAllLines(path));
+    }
+
+    public static InputScript fromLines(List<String> lines) {
+        Record[] records = new Record[lines.size()];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = parseLine(lines.get(i));
+        }
+        return new InputScript(records);
+    }
+
+    /**
+     * Take the next record.  Once the script is exhausted every INPUT sees an
+     * empty line, the same as EOF on the console.
+     */
+    public Record next() {
+        return next < records.length ? records[next++] : EMPTY;
+    }
+
+    /**
+     * Number of records not yet consumed
+     */
+    public int remaining() {
+        return records.length - next;
+    }
+
+    /**
+     * Split one line of user input into fields and convert each of them
+     */
+    public static Record parseLine(String line) {
+        String[] fields = line.split(",");
+        String[] text = new String[fields.length];
+        Object[] numbers = new Object[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            String value = fields[i].trim();
+            text[i] = Dialect.UPPERCASE_INPUT == 1 ? value.toUpperCase() : value;
+            numbers[i] = parseNumber(value);
+        }
+        return new Record(text, numbers);
+    }
+
+    /**
+     * Convert a field for a numeric variable.  Empty or invalid input reads as 0.
+     */
+    static Object parseNumber(String value) {
+        try {
+            if (value.contains(".")) {
+                return Double.parseDouble(value);
+            } else if (!value.isEmpty()) {
+                return Integer.parseInt(value);
+            } else {
+                return 0; // Default for empty input
+            }
+        } catch (NumberFormatException e) {
+            return 0; // Default for invalid numeric input
+        }
+    }
+}
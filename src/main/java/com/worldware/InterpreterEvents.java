@@ -0,0 +1,201 @@
+package com.worldware;
+
+import java.nio.file.Path;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events for the interpreter, shown under "TrekBasic" in
+ * JDK Mission Control next to the JVM's own events.
+ * <p>
+ * Record with, for example,
+ * {@code java -XX:StartFlightRecording=filename=run.jfr -cp ... com.worldware.Main prog.bas},
+ * or start a recording in a running interpreter with {@code jcmd <pid> JFR.start}.
+ * <p>
+ * Every call site first checks {@link #active()}, a single field read, and
+ * only then creates an event.  That matters more than it looks: loading an
+ * event class makes the JVM set up Flight Recorder's instrumentation, about
+ * a third of a second, even if nothing is ever recorded.  For the same reason
+ * the events are instant events whose phase and wait times are fields,
+ * timed with System.nanoTime, rather than duration events begun up front.
+ * Subroutine calls are two events (GOSUB and RETURN, paired by depth), so
+ * the Executor keeps no per-call state for them.  They can come at millions
+ * a second, so they are off unless asked for, e.g. with
+ * {@code -XX:StartFlightRecording:+com.worldware.Gosub#enabled=true,+com.worldware.Return#enabled=true}.  None of the events carries
+ * a Java stack trace: the BASIC line numbers say where they are.
+ */
+final class InterpreterEvents {
+    private InterpreterEvents() {}
+
+    /**
+     * Whether Flight Recorder is running, so events may be recorded
+     */
+    static boolean active() {
+        return FlightRecorder.isInitialized();
+    }
+
+    @Name("com.worldware.ProgramLoad")
+    @Label("Program Load")
+    @Category("TrekBasic")
+    @Description("A program file read and parsed, recorded when loading finishes")
+    @StackTrace(false)
+    static final class ProgramLoad extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Lines")
+        int lines;
+
+        @Label("Lazy")
+        @Description("Statements are parsed when first run")
+        boolean lazy;
+
+        @Label("Cache Hit")
+        @Description("The parsed program came from the program cache")
+        boolean cacheHit;
+
+        @Label("Read Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long readTime;
+
+        @Label("Cache Lookup Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long lookupTime;
+
+        @Label("Parse Time")
+        @Description("Includes reading when the cache is not used")
+        @Timespan(Timespan.NANOSECONDS)
+        long parseTime;
+
+        @Label("Cache Store Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long storeTime;
+
+        @Label("Total Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long totalTime;
+    }
+
+    @Name("com.worldware.Gosub")
+    @Label("GOSUB")
+    @Category("TrekBasic")
+    @Description("Entering a subroutine")
+    @StackTrace(false)
+    @Enabled(false)
+    static final class Gosub extends Event {
+        @Label("Line")
+        int line;
+
+        @Label("Target Line")
+        int targetLine;
+
+        @Label("Depth")
+        @Description("GOSUB stack depth inside the subroutine")
+        int depth;
+    }
+
+    @Name("com.worldware.Return")
+    @Label("RETURN")
+    @Category("TrekBasic")
+    @Description("Leaving a subroutine")
+    @StackTrace(false)
+    @Enabled(false)
+    static final class Return extends Event {
+        @Label("Line")
+        int line;
+
+        @Label("Return Line")
+        int returnLine;
+
+        @Label("Depth")
+        @Description("GOSUB stack depth inside the subroutine being left")
+        int depth;
+    }
+
+    @Name("com.worldware.InputWait")
+    @Label("INPUT Wait")
+    @Category("TrekBasic")
+    @Description("An INPUT statement that waited for a line from the console")
+    @StackTrace(false)
+    static final class InputWait extends Event {
+        @Label("Line")
+        int line;
+
+        @Label("Wait Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long waitTime;
+    }
+
+    @Name("com.worldware.RunError")
+    @Label("BASIC Error")
+    @Category("TrekBasic")
+    @Description("A syntax, runtime or internal error that ended a run")
+    @StackTrace(false)
+    static final class RunError extends Event {
+        @Label("Line")
+        int line;
+
+        @Label("Status")
+        String status;
+
+        @Label("Message")
+        String message;
+    }
+
+    /**
+     * Record a load; times are in nanoseconds, 0 for phases that did not happen
+     */
+    static void programLoaded(Path file, Program program, boolean lazy, boolean cacheHit,
+                              long readTime, long lookupTime, long parseTime, long storeTime) {
+        ProgramLoad event = new ProgramLoad();
+        event.file = file.toString();
+        event.lines = program.size();
+        event.lazy = lazy;
+        event.cacheHit = cacheHit;
+        event.readTime = readTime;
+        event.lookupTime = lookupTime;
+        event.parseTime = parseTime;
+        event.storeTime = storeTime;
+        event.totalTime = readTime + lookupTime + parseTime + storeTime;
+        event.commit();
+    }
+
+    static void inputWait(int line, long waitTime) {
+        InputWait event = new InputWait();
+        event.line = line;
+        event.waitTime = waitTime;
+        event.commit();
+    }
+
+    static void gosub(int line, int targetLine, int depth) {
+        Gosub event = new Gosub();
+        event.line = line;
+        event.targetLine = targetLine;
+        event.depth = depth;
+        event.commit();
+    }
+
+    static void returned(int line, int returnLine, int depth) {
+        Return event = new Return();
+        event.line = line;
+        event.returnLine = returnLine;
+        event.depth = depth;
+        event.commit();
+    }
+
+    static void error(int line, RunStatus status, String message) {
+        RunError event = new RunError();
+        event.line = line;
+        event.status = status.name();
+        event.message = message;
+        event.commit();
+    }
+}
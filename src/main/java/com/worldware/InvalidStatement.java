@@ -0,0 +1,34 @@
+package com.worldware;
+
+/**
+ * A statement of a lazily loaded line that does not parse.  Running it raises
+ * the syntax error loading the line eagerly would have raised.
+ */
+final class InvalidStatement implements Statement {
+    private final String text;
+    private final String error;
+
+    InvalidStatement(String text, String error) {
+        this.text = text;
+        this.error = error;
+    }
+
+    @Override
+    public String getKeyword() {
+        return "";
+    }
+
+    @Override
+    public String getArgs() {
+        return text;
+    }
+
+    String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
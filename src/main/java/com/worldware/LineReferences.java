@@ -0,0 +1,292 @@
+package com.worldware;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Where the literal line numbers are in the statements of one program line.
+ * <p>
+ * Covers every form that names a line: GOTO n, GOSUB n, RESTORE n,
+ * ON x GOTO/GOSUB n,m,..., IF ... THEN n [ELSE m], and all of these inside THEN
+ * and ELSE clauses (including nested IFs).  Each reference is recorded as a
+ * character span in one text field of a statement, so renumbering splices the
+ * new numbers into the existing text in a single pass and builds the new
+ * statement objects directly, without running the statement parser again.
+ * Computed targets (GOTO X*100) are not references and are left alone, but
+ * are noted so that control flow analysis knows a jump could go anywhere.
+ * <p>
+ * Scanning follows the same splitting rules the Executor uses when it runs
+ * the statements, so exactly the numbers that would be jumped to are found.
+ */
+final class LineReferences {
+    static final int FIELD_ARGS = 0;
+    static final int FIELD_THEN = 1;
+    static final int FIELD_ELSE = 2;
+
+    // What a reference is used for
+    static final int KIND_JUMP = 0;     // GOTO, GOSUB, ON, THEN/ELSE line number
+    static final int KIND_DATA = 1;     // RESTORE
+    static final int KIND_COMPUTED = 2; // GOTO/GOSUB to an expression; no span
+
+    /** Passed to jumpTargets' consumer for a computed jump */
+    static final int ANY_LINE = -1;
+
+    static final LineReferences NONE = new LineReferences(new int[0]);
+
+    // Five ints per reference: statement offset, field, kind, start, end (exclusive)
+    private static final int WIDTH = 5;
+    private final int[] refs;
+
+    private LineReferences(int[] refs) {
+        this.refs = refs;
+    }
+
+    /**
+     * Find the line references in a line's statements
+     */
+    static LineReferences scan(List<Statement> stmts) {
+        Collector out = new Collector();
+        for (int i = 0; i < stmts.size(); i++) {
+            Statement stmt = stmts.get(i);
+            out.statement = i;
+            if (stmt instanceof IfThenElseStatement ite) {
+                out.field = FIELD_THEN;
+                scanClause(ite.getThenStatements(), out);
+                out.field = FIELD_ELSE;
+                scanClause(ite.getElseStatements(), out);
+            } else if (stmt instanceof IfThenStatement it) {
+                out.field = FIELD_THEN;
+                scanClause(it.getThenStatements(), out);
+            } else if (stmt instanceof BasicStatement) {
+                out.field = FIELD_ARGS;
+                String args = stmt.getArgs();
+                switch (stmt.getKeyword().toUpperCase(Locale.ROOT)) {
+                    case "GOTO", "GOSUB" -> scanJump(args, 0, args.length(), out);
+                    case "RESTORE" -> scanNumber(args, 0, args.length(), KIND_DATA, out);
+                    case "ON" -> scanOnList(args, 0, args.length(), out);
+                    default -> { }
+                }
+            }
+        }
+        return out.size == 0 ? NONE : new LineReferences(Arrays.copyOf(out.refs, out.size));
+    }
+
+    boolean isEmpty() {
+        return refs.length == 0;
+    }
+
+    /**
+     * Pass each line number the statement at the offset can jump to from the
+     * given field (FIELD_ARGS for plain statements, FIELD_THEN or FIELD_ELSE
+     * for the clauses of an IF), or ANY_LINE for a computed jump
+     */
+    void jumpTargets(List<Statement> stmts, int offset, int field, IntConsumer target) {
+        for (int r = 0; r < refs.length; r += WIDTH) {
+            if (refs[r] != offset || refs[r + 1] != field) continue;
+            if (refs[r + 2] == KIND_COMPUTED) {
+                target.accept(ANY_LINE);
+            } else if (refs[r + 2] == KIND_JUMP) {
+                String text = field(stmts.get(offset), field);
+                target.accept(Integer.parseInt(text.substring(refs[r + 3], refs[r + 4])));
+            }
+        }
+    }
+
+    /**
+     * Statements with every referenced line number passed through the mapping.
+     * Statements without references are returned as they are.
+     */
+    List<Statement> rewrite(List<Statement> stmts, IntUnaryOperator mapping) {
+        if (isEmpty()) {
+            return stmts;
+        }
+        List<Statement> result = new ArrayList<>(stmts);
+        int r = 0;
+        while (r < refs.length) {
+            int offset = refs[r];
+            if (refs[r + 2] == KIND_COMPUTED) {
+                r += WIDTH;
+                continue;
+            }
+            Statement stmt = stmts.get(offset);
+            String[] fields = {field(stmt, FIELD_ARGS), field(stmt, FIELD_THEN), field(stmt, FIELD_ELSE)};
+            // References are recorded in statement, field, position order
+            while (r < refs.length && refs[r] == offset) {
+                int field = refs[r + 1];
+                String text = fields[field];
+                StringBuilder sb = new StringBuilder(text.length() + 8);
+                int last = 0;
+                while (r < refs.length && refs[r] == offset && refs[r + 1] == field) {
+                    if (refs[r + 2] != KIND_COMPUTED) {
+                        int start = refs[r + 3];
+                        int end = refs[r + 4];
+                        sb.append(text, last, start);
+                        sb.append(mapping.applyAsInt(Integer.parseInt(text.substring(start, end))));
+                        last = end;
+                    }
+                    r += WIDTH;
+                }
+                sb.append(text, last, text.length());
+                fields[field] = sb.toString();
+            }
+            result.set(offset, rebuild(stmt, fields));
+        }
+        return result;
+    }
+
+    private static String field(Statement stmt, int field) {
+        return switch (field) {
+            case FIELD_THEN -> stmt instanceof IfThenStatement it ? it.getThenStatements() : null;
+            case FIELD_ELSE -> stmt instanceof IfThenElseStatement ite ? ite.getElseStatements() : null;
+            default -> stmt.getArgs();
+        };
+    }
+
+    private static Statement rebuild(Statement stmt, String[] fields) {
+        if (stmt instanceof IfThenElseStatement ite) {
+            return new IfThenElseStatement(ite.getKeyword(), ite.getCondition(), fields[FIELD_THEN], fields[FIELD_ELSE]);
+        }
+        if (stmt instanceof IfThenStatement it) {
+            return new IfThenStatement(it.getKeyword(), it.getCondition(), fields[FIELD_THEN]);
+        }
+        return new BasicStatement(stmt.getKeyword(), fields[FIELD_ARGS]);
+    }
+
+    private static void scanClause(String text, Collector out) {
+        scanClause(text, 0, text.length(), out);
+    }
+
+    /**
+     * A THEN or ELSE clause occupying [from, to) of the text: statements
+     * separated by ':' outside string literals
+     */
+    private static void scanClause(String text, int from, int to, Collector out) {
+        boolean inString = false;
+        int start = from;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                inString = !inString;
+            } else if (c == ':' && !inString) {
+                scanStatementText(text, start, i, out);
+                start = i + 1;
+            }
+        }
+        scanStatementText(text, start, to, out);
+    }
+
+    /**
+     * One statement inside a clause, still in text form
+     */
+    private static void scanStatementText(String text, int start, int end, Collector out) {
+        start = skipSpaces(text, start, end);
+        end = trimEnd(text, start, end);
+        if (start >= end) return;
+        if (isDigits(text, start, end)) {
+            out.add(KIND_JUMP, start, end); // bare line number means GOTO
+            return;
+        }
+        String upper = text.substring(start, end).toUpperCase(Locale.ROOT);
+        if (upper.startsWith("GOTO")) {
+            scanJump(text, start + 4, end, out);
+        } else if (upper.startsWith("GOSUB")) {
+            scanJump(text, start + 5, end, out);
+        } else if (upper.startsWith("RESTORE")) {
+            scanNumber(text, start + 7, end, KIND_DATA, out);
+        } else if (upper.startsWith("ON")) {
+            scanOnList(text, start + 2, end, out);
+        } else if (upper.startsWith("IF")) {
+            // Same THEN/ELSE split as BasicLoader.parseIfStatement
+            int thenIndex = upper.indexOf("THEN", 2);
+            if (thenIndex == -1) return;
+            int elseIndex = upper.indexOf("ELSE", thenIndex + 4);
+            if (elseIndex == -1) {
+                scanClause(text, start + thenIndex + 4, end, out);
+            } else {
+                scanClause(text, start + thenIndex + 4, start + elseIndex, out);
+                scanClause(text, start + elseIndex + 4, end, out);
+            }
+        }
+    }
+
+    /**
+     * A lone line number, e.g. the argument of RESTORE
+     */
+    private static void scanNumber(String text, int start, int end, int kind, Collector out) {
+        start = skipSpaces(text, start, end);
+        end = trimEnd(text, start, end);
+        if (start < end && isDigits(text, start, end)) {
+            out.add(kind, start, end);
+        }
+    }
+
+    /**
+     * The target of GOTO or GOSUB: a line number, or an expression computing one
+     */
+    private static void scanJump(String text, int start, int end, Collector out) {
+        start = skipSpaces(text, start, end);
+        end = trimEnd(text, start, end);
+        if (start >= end) return;
+        if (isDigits(text, start, end)) {
+            out.add(KIND_JUMP, start, end);
+        } else {
+            out.add(KIND_COMPUTED, start, start);
+        }
+    }
+
+    /**
+     * "expr GOTO n,m,..." - the destination list of an ON statement
+     */
+    private static void scanOnList(String text, int start, int end, Collector out) {
+        String upper = text.substring(start, end).toUpperCase(Locale.ROOT);
+        String keyword = upper.contains("GOSUB") ? "GOSUB" : "GOTO";
+        int kwIndex = upper.indexOf(keyword);
+        if (kwIndex == -1) return;
+        int itemStart = start + kwIndex + keyword.length();
+        for (int i = itemStart; i <= end; i++) {
+            if (i == end || text.charAt(i) == ',') {
+                scanNumber(text, itemStart, i, KIND_JUMP, out);
+                itemStart = i + 1;
+            }
+        }
+    }
+
+    private static int skipSpaces(String text, int start, int end) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+        return start;
+    }
+
+    private static int trimEnd(String text, int start, int end) {
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+        return end;
+    }
+
+    private static boolean isDigits(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isDigit(text.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static final class Collector {
+        int[] refs = new int[4 * WIDTH];
+        int size;
+        int statement;
+        int field;
+
+        void add(int kind, int start, int end) {
+            if (size + WIDTH > refs.length) {
+                refs = Arrays.copyOf(refs, refs.length * 2);
+            }
+            refs[size++] = statement;
+            refs[size++] = field;
+            refs[size++] = kind;
+            refs[size++] = start;
+            refs[size++] = end;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.worldware;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import javax.management.JMException;
 
 /**
  * Main program for running a BASIC program from the command line.
@@ -10,10 +11,10 @@ import java.util.*;
 public class Main {
     // Constants
     private static final String BASIC_FILE_EXTENSION = ".bas";
-    private static final int EXIT_SUCCESS = 0;
-    private static final int EXIT_STOP = 1;
-    private static final int EXIT_ERROR = 2;
-    private static final String TRACE_FILE_NAME = "tracefile.txt";
+    static final int EXIT_SUCCESS = 0;
+    static final int EXIT_STOP = 1;
+    static final int EXIT_ERROR = 2;
+    private static final String TRACE_FILE_NAME = ExecutionTrace.DEFAULT_FILE_NAME;
 
     public static void main(String[] args) {
         try {
@@ -21,33 +22,56 @@ public class Main {
             
             // Find and load the program
             String programPath = findProgramFile(arguments.program);
-            Program program = loadProgramWithErrorHandling(programPath);
+            Program program = loadProgramWithErrorHandling(programPath, arguments.lazy, arguments.noCache);
             
             System.out.printf("Loaded program with %d lines%n", program.size());
+            if (arguments.optimizerReport) {
+                Optimizer.analyze(program).print(System.out);
+            }
             
             // Execute the program
             RunStatus runStatus;
             Executor executor;
-            if (arguments.trace) {
-                executor = new Executor(program, true);
-            } else {
-                executor = new Executor(program);
+            executor = new Executor(program, arguments.trace, arguments.coverageFile != null);
+            if (arguments.seed != null) {
+                executor.setSeed(arguments.seed);
+            }
+            if (arguments.inputScript != null) {
+                executor.setInputScript(InputScript.load(Paths.get(arguments.inputScript)), arguments.echoPrompts);
+            }
+            if (arguments.profile) {
+                executor.setProfiling(true);
+            }
+            if (arguments.jmx) {
+                try {
+                    ExecutorMonitor.register(executor);
+                } catch (JMException e) {
+                    System.err.println("Could not register the executor MBean: " + e.getMessage());
+                }
             }
             
             long startTime = arguments.time ? System.currentTimeMillis() : 0;
             
+            runStatus = null;
             try {
                 runStatus = executor.runProgram();
             } catch (BasicSyntaxError syntaxError) {
                 System.err.printf("%s in line %s of file.%n", syntaxError.getMessage(), syntaxError.getLineNumber());
-                System.exit(EXIT_ERROR);
-                return;
             } catch (BasicRuntimeError runtimeError) {
                 System.err.printf("Runtime Error: %s%n", runtimeError.getMessage());
-                System.exit(EXIT_ERROR);
-                return;
             } finally {
+                // Trace, coverage and profile are written for failed runs too
                 executor.close();
+                if (arguments.coverageFile != null) {
+                    executor.getCoverage().write(Paths.get(arguments.coverageFile));
+                }
+                if (arguments.profile) {
+                    executor.getProfile().print(System.out);
+                }
+            }
+            if (runStatus == null) {
+                System.exit(EXIT_ERROR);
+                return;
             }
             
             if (arguments.time) {
@@ -83,13 +107,45 @@ public class Main {
 
         Arguments arguments = new Arguments();
 
-        for (String arg : args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
             if (arg.equals("--trace") || arg.equals("-t")) {
                 arguments.trace = true;
             } else if (arg.equals("--symbols") || arg.equals("-s")) {
                 arguments.symbols = true;
             } else if (arg.equals("--time")) {
                 arguments.time = true;
+            } else if (arg.equals("--input")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Option --input requires a file name");
+                    System.exit(EXIT_ERROR);
+                }
+                arguments.inputScript = args[++i];
+            } else if (arg.equals("--seed")) {
+                try {
+                    arguments.seed = Long.parseLong(args[++i]);
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                    System.err.println("Option --seed requires a numeric value");
+                    System.exit(EXIT_ERROR);
+                }
+            } else if (arg.equals("--coverage")) {
+                if (i + 1 >= args.length) {
+                    System.err.println("Option --coverage requires a file name");
+                    System.exit(EXIT_ERROR);
+                }
+                arguments.coverageFile = args[++i];
+            } else if (arg.equals("--echo-prompts")) {
+                arguments.echoPrompts = true;
+            } else if (arg.equals("--optimizer-report")) {
+                arguments.optimizerReport = true;
+            } else if (arg.equals("--lazy")) {
+                arguments.lazy = true;
+            } else if (arg.equals("--jmx")) {
+                arguments.jmx = true;
+            } else if (arg.equals("--no-cache")) {
+                arguments.noCache = true;
+            } else if (arg.equals("--profile")) {
+                arguments.profile = true;
             } else if (arg.startsWith("-")) {
                 System.err.println("Unknown option: " + arg);
                 System.exit(EXIT_ERROR);
@@ -112,7 +168,7 @@ public class Main {
 
     private static void printUsageAndExit() {
         System.err.println("Usage: java Main [options] <program>");
-        System.err.println("Options:\n  --trace,-t     Enable execution trace written to '" + TRACE_FILE_NAME + "'\n  --symbols,-s   Print symbol table at end\n  --time         Show execution time");
+        System.err.println("Options:\n  --trace,-t     Enable binary execution trace written to '" + TRACE_FILE_NAME + "' (view with TraceDump)\n  --symbols,-s   Print symbol table at end\n  --time         Show execution time\n  --input FILE   Answer INPUT statements from FILE, one line per INPUT\n  --echo-prompts Print INPUT prompts when using --input\n  --seed N       Seed RND so runs are reproducible\n  --coverage FILE Write statement coverage to FILE (combine runs with CoverageMerge)\n  --optimizer-report Before running, list folded constant expressions and unreachable lines\n  --profile      After running, print statement counts per line and superinstruction hit rates\n  --lazy         Parse each line when it is first run; syntax errors show up then\n  --jmx          Register an ExecutorMXBean (com.worldware:type=Executor) for JMX clients\n  --no-cache     Always parse the file; do not read or write the compiled-program cache");
         System.exit(EXIT_ERROR);
     }
 
@@ -135,9 +191,9 @@ public class Main {
     /**
      * Load a BASIC program with comprehensive error handling
      */
-    private static Program loadProgramWithErrorHandling(String programPath) {
+    private static Program loadProgramWithErrorHandling(String programPath, boolean lazy, boolean noCache) {
         try {
-            return loadProgram(programPath);
+            return loadProgram(programPath, lazy, noCache);
         } catch (BasicSyntaxError syntaxError) {
             System.err.printf("%s in line %s of file.%n", syntaxError.getMessage(), syntaxError.getLineNumber());
             System.exit(EXIT_ERROR);
@@ -152,17 +208,17 @@ public class Main {
     }
 
     /**
-     * Load a BASIC program from a file
+     * Load a BASIC program from a file, through the compiled-program cache unless noCache
      */
-    private static Program loadProgram(String programPath) throws IOException, BasicSyntaxError {
-        List<String> lines = Files.readAllLines(Paths.get(programPath));
-        return BasicLoader.tokenize(lines);
+    private static Program loadProgram(String programPath, boolean lazy, boolean noCache) throws IOException, BasicSyntaxError {
+        Path path = Paths.get(programPath);
+        return noCache ? BasicLoader.load(path, lazy) : ProgramCache.defaultCache().load(path, lazy);
     }
 
     /**
      * Determine the appropriate exit code based on run status
      */
-    private static int determineExitCode(RunStatus runStatus) {
+    static int determineExitCode(RunStatus runStatus) {
         return switch (runStatus) {
             case END_OF_PROGRAM, END_CMD -> EXIT_SUCCESS;
             case END_STOP -> EXIT_STOP;
@@ -178,5 +234,14 @@ public class Main {
         boolean trace = false;
         boolean symbols = false;
         boolean time = false;
+        String inputScript;
+        boolean echoPrompts = false;
+        Long seed;
+        String coverageFile;
+        boolean optimizerReport = false;
+        boolean profile = false;
+        boolean lazy = false;
+        boolean noCache = false;
+        boolean jmx = false;
     }
 }
\ No newline at end of file
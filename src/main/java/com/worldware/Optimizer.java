@@ -0,0 +1,259 @@
+package com.worldware;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Static analysis run between loading and execution: which constant
+ * expressions are folded and which lines can never run.
+ * <p>
+ * Folding itself happens whenever an expression is compiled (see
+ * {@link CompiledExpression}); this pass compiles every expression of the
+ * program up front to report what was folded.  Reachability comes from a
+ * control flow graph over statements: each statement leads to the next one
+ * unless it is GOTO, END, STOP or RETURN, and also to the lines it names in
+ * GOTO, GOSUB, ON and THEN/ELSE.  An IF whose condition folds to a constant
+ * only leads into the branch that is taken.  A computed GOTO could go
+ * anywhere, so once one is reachable every line counts as reachable.
+ * <p>
+ * Unreachable lines are reported, not deleted: removing them would change
+ * the statement numbering that traces, coverage and breakpoints use.
+ */
+final class Optimizer {
+
+    /**
+     * An expression that changed when folded, as it is after folding
+     */
+    record Fold(int line, String expression, String folded) {}
+
+    record Report(List<Integer> unreachableLines, int unreachableStatements, List<Fold> folds) {
+
+        void print(PrintStream out) {
+            out.printf("Optimizer: %d expression(s) folded, %d unreachable line(s), %d unreachable statement(s)%n",
+                    folds.size(), unreachableLines.size(), unreachableStatements);
+            for (Fold fold : folds) {
+                out.printf("  line %d: %s -> %s%n", fold.line(), fold.expression(), fold.folded());
+            }
+            if (!unreachableLines.isEmpty()) {
+                StringBuilder sb = new StringBuilder("  unreachable lines:");
+                for (int line : unreachableLines) sb.append(' ').append(line);
+                out.println(sb);
+            }
+        }
+    }
+
+    private final Program program;
+    private final TypeInference types;
+    private final int[] starts;
+    private final boolean[] reachable;
+    private final int[] work;
+    private int workSize;
+    private boolean anyLine;
+
+    private Optimizer(Program program) {
+        this.program = program;
+        this.types = program.getTypes();
+        this.starts = program.getStatementStarts();
+        this.reachable = new boolean[starts[program.size()]];
+        this.work = new int[reachable.length];
+    }
+
+    static Report analyze(Program program) {
+        return new Optimizer(program).run();
+    }
+
+    private Report run() {
+        List<Fold> folds = new ArrayList<>();
+        for (ProgramLine line : program) {
+            for (Statement stmt : line.getStmts()) {
+                List<String> expressions = new ArrayList<>();
+                expressionsOf(stmt, expressions);
+                for (String expression : expressions) {
+                    String plain = ExpressionEvaluator.compile(expression, types, false).toString();
+                    String folded = ExpressionEvaluator.compile(expression, types).toString();
+                    if (!plain.equals(folded)) {
+                        folds.add(new Fold(line.getLine(), expression.trim(), folded));
+                    }
+                }
+            }
+        }
+
+        if (reachable.length > 0) reach(0);
+        while (workSize > 0 && !anyLine) {
+            int s = work[--workSize];
+            int index = lineIndexOf(s);
+            successors(index, s - starts[index]);
+        }
+
+        List<Integer> unreachableLines = new ArrayList<>();
+        int unreachableStatements = 0;
+        if (!anyLine) {
+            for (int i = 0; i < program.size(); i++) {
+                boolean lineReached = false;
+                for (int s = starts[i]; s < starts[i + 1]; s++) {
+                    if (reachable[s]) lineReached = true; else unreachableStatements++;
+                }
+                if (!lineReached) unreachableLines.add(program.getLine(i).getLine());
+            }
+        }
+        return new Report(unreachableLines, unreachableStatements, folds);
+    }
+
+    private int lineIndexOf(int statement) {
+        int index = Arrays.binarySearch(starts, 0, program.size(), statement);
+        if (index < 0) return -index - 2;
+        // Lines without statements share a start; the statement belongs to the last of them
+        while (index + 1 < program.size() && starts[index + 1] == statement) index++;
+        return index;
+    }
+
+    private void reach(int statement) {
+        if (statement < reachable.length && !reachable[statement]) {
+            reachable[statement] = true;
+            work[workSize++] = statement;
+        }
+    }
+
+    private void reachLine(int lineNumber) {
+        if (lineNumber == LineReferences.ANY_LINE) {
+            anyLine = true;
+            return;
+        }
+        try {
+            reach(starts[program.findLineIndex(lineNumber)]);
+        } catch (BasicSyntaxError e) {
+            // Jump to a missing line: an error when executed, so it leads nowhere
+        }
+    }
+
+    private void successors(int index, int offset) {
+        ProgramLine line = program.getLine(index);
+        List<Statement> stmts = line.getStmts();
+        Statement stmt = stmts.get(offset);
+        LineReferences refs = line.getLineReferences();
+        int next = starts[index] + offset + 1;
+
+        if (stmt instanceof IfThenStatement ifThen) {
+            Boolean known = constantCondition(ifThen.getCondition());
+            boolean thenFalls = clauseFallsThrough(ifThen.getThenStatements());
+            boolean falls;
+            if (!Boolean.FALSE.equals(known)) {
+                refs.jumpTargets(stmts, offset, LineReferences.FIELD_THEN, this::reachLine);
+            }
+            if (stmt instanceof IfThenElseStatement ite) {
+                boolean elseFalls = clauseFallsThrough(ite.getElseStatements());
+                if (!Boolean.TRUE.equals(known)) {
+                    refs.jumpTargets(stmts, offset, LineReferences.FIELD_ELSE, this::reachLine);
+                }
+                falls = known == null ? thenFalls || elseFalls : known ? thenFalls : elseFalls;
+            } else {
+                falls = !Boolean.TRUE.equals(known) || thenFalls;
+            }
+            if (falls) reach(next);
+            return;
+        }
+        switch (stmt.getKeyword().toUpperCase(Locale.ROOT)) {
+            case "GOTO" -> refs.jumpTargets(stmts, offset, LineReferences.FIELD_ARGS, this::reachLine);
+            case "GOSUB", "ON" -> {
+                refs.jumpTargets(stmts, offset, LineReferences.FIELD_ARGS, this::reachLine);
+                reach(next);
+            }
+            case "END", "STOP", "RETURN" -> { }
+            case "IF" -> {
+                // IF without THEN skips the rest of the line when false
+                reach(next);
+                if (index + 1 < program.size()) reach(starts[index + 1]);
+            }
+            default -> reach(next);
+        }
+    }
+
+    /**
+     * The value of a condition that folds to a constant, else null
+     */
+    private Boolean constantCondition(String condition) {
+        CompiledExpression compiled = ExpressionEvaluator.compile(condition, types);
+        if (compiled instanceof CompiledExpression.Constant constant) {
+            return ExpressionEvaluator.isTrue(constant.value());
+        }
+        return null;
+    }
+
+    /**
+     * False if running the clause always ends in a jump or stops the program
+     */
+    private static boolean clauseFallsThrough(String clause) {
+        for (String part : BasicLoader.smartSplit(clause, ':')) {
+            if (part.trim().isEmpty()) continue;
+            try {
+                String keyword = BasicLoader.parseStatement(part).getKeyword().toUpperCase(Locale.ROOT);
+                switch (keyword) {
+                    case "GOTO", "END", "STOP", "RETURN" -> {
+                        return false;
+                    }
+                    default -> { }
+                }
+            } catch (BasicSyntaxError e) {
+                return false; // fails when executed
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The expression texts the Executor evaluates for a statement
+     */
+    private static void expressionsOf(Statement stmt, List<String> out) {
+        if (stmt instanceof IfStatement ifStmt) {
+            out.add(ifStmt.getCondition());
+            if (stmt instanceof IfThenStatement ifThen) {
+                clauseExpressions(ifThen.getThenStatements(), out);
+            }
+            if (stmt instanceof IfThenElseStatement ite) {
+                clauseExpressions(ite.getElseStatements(), out);
+            }
+        } else if (stmt instanceof AssignmentStatement assignment) {
+            if (assignment.isArrayAssignment() && assignment.getArrayIndices() != null) {
+                for (String index : assignment.getArrayIndices().split(",")) out.add(index.trim());
+            }
+            out.add(assignment.getExpression());
+        } else if (stmt instanceof ForStatement forStmt) {
+            out.add(forStmt.getStartExpression());
+            out.add(forStmt.getEndExpression());
+            out.add(forStmt.getStepExpression());
+        } else {
+            String args = stmt.getArgs().trim();
+            switch (stmt.getKeyword().toUpperCase(Locale.ROOT)) {
+                case "PRINT" -> {
+                    for (String item : Executor.splitPrintList(args, null)) {
+                        String part = item.trim();
+                        if (!part.isEmpty() && !(part.startsWith("\"") && part.endsWith("\""))) out.add(part);
+                    }
+                }
+                case "GOTO", "GOSUB" -> {
+                    if (!args.isEmpty() && !args.chars().allMatch(Character::isDigit)) out.add(args);
+                }
+                case "ON" -> {
+                    String upper = args.toUpperCase(Locale.ROOT);
+                    int kwIndex = upper.indexOf(upper.contains("GOSUB") ? "GOSUB" : "GOTO");
+                    if (kwIndex > 0) out.add(args.substring(0, kwIndex).trim());
+                }
+                default -> { }
+            }
+        }
+    }
+
+    private static void clauseExpressions(String clause, List<String> out) {
+        for (String part : BasicLoader.smartSplit(clause, ':')) {
+            if (part.trim().isEmpty()) continue;
+            try {
+                expressionsOf(BasicLoader.parseStatement(part), out);
+            } catch (BasicSyntaxError e) {
+                // Reported when executed
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.worldware;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A FOR loop whose iterations are independent, run on a fork/join pool (the
+ * common pool unless the Executor is given another) instead of one
+ * iteration after another.  A pool of one worker runs nothing in parallel.
+ * <p>
+ * The analysis, done once per FOR statement when it first runs, looks at
+ * the statements up to the loop's NEXT.  Each one must be an assignment
+ * {@code A(I)=expression}, where I is the loop variable itself, and the
+ * expressions may only read the loop variable, simple variables (which the
+ * body cannot change, as it assigns none), and arrays that the body does
+ * not write.  RND and anything left to the parser are not allowed; neither
+ * is any other statement, so there is no GOTO, GOSUB, PRINT, INPUT or
+ * nested loop.  Iteration k then only writes element I(k) of each array,
+ * from values no other iteration changes.
+ * <p>
+ * Each time the FOR runs, the loop is checked once more against the actual
+ * values: start and step whole numbers, the end a number, every element
+ * index inside its one-dimensional array, every variable read
+ * set to a number, no user function of an array's name, and at least
+ * {@link #MIN_ITERATIONS} iterations by default.  The iteration range is
+ * then split among the pool's workers.  Each evaluates the compiled expressions
+ * with its own copy of the symbol table holding its value of the loop
+ * variable: the start value as evaluated, then Doubles, as NEXT makes
+ * them.  Results go to buffers first and are stored into the arrays only
+ * once every iteration has succeeded, in program order.  If anything
+ * fails, nothing has been changed and the FOR runs sequentially, which
+ * raises the same error at the same point.
+ */
+final class ParallelLoop {
+    /** Iterations below which a loop is not worth splitting */
+    static final int MIN_ITERATIONS = 4096;
+
+    // Iterations per task at least, so each task's symbol table copy is paid for
+    private static final int MIN_SPLIT = 1024;
+
+    /** A FOR whose loop is not run in parallel */
+    static final ParallelLoop NONE = new ParallelLoop("", new String[0], new CompiledExpression[0], Set.of(), Set.of(), 0, 0);
+
+    private final String variable;
+    private final String[] targets;
+    private final CompiledExpression[] values;
+    private final Set<String> variablesRead;
+    private final Set<String> arraysRead;
+    private final int next; // global statement number of the NEXT
+    private final int statementsPerIteration; // the body and NEXT
+
+    private ParallelLoop(String variable, String[] targets, CompiledExpression[] values,
+                         Set<String> variablesRead, Set<String> arraysRead, int next, int statementsPerIteration) {
+        this.variable = variable;
+        this.targets = targets;
+        this.values = values;
+        this.variablesRead = variablesRead;
+        this.arraysRead = arraysRead;
+        this.next = next;
+        this.statementsPerIteration = statementsPerIteration;
+    }
+
+    /**
+     * The loop of the FOR at the given global statement number, or NONE if
+     * its iterations cannot be shown to be independent
+     */
+    static ParallelLoop analyze(Executor ex, Program program, int statement, ForStatement loop) {
+        String variable = loop.getIndexVariable().trim().toUpperCase();
+        if (variable.isEmpty() || !variable.chars().allMatch(Character::isLetterOrDigit)) {
+            return NONE;
+        }
+        int[] starts = program.getStatementStarts();
+        int index = 0;
+        List<String> targets = new ArrayList<>();
+        List<CompiledExpression> values = new ArrayList<>();
+        Set<String> variablesRead = new HashSet<>();
+        Set<String> arraysRead = new HashSet<>();
+        for (int s = statement + 1; s < starts[program.size()]; s++) {
+            while (starts[index + 1] <= s) {
+                index++;
+            }
+            Statement stmt = program.getLine(index).getStmts().get(s - starts[index]);
+            if (stmt instanceof AssignmentStatement assignment && assignment.isArrayAssignment()) {
+                String target = assignment.getArrayName();
+                String subscript = assignment.getArrayIndices();
+                if (target.endsWith("$") || subscript == null || !subscript.trim().toUpperCase().equals(variable)) {
+                    return NONE;
+                }
+                CompiledExpression value = ex.assignedValue(assignment.getExpression());
+                if (!value.reads(variablesRead, arraysRead)) {
+                    return NONE;
+                }
+                targets.add(target);
+                values.add(value);
+            } else if (stmt.getKeyword().equals("NEXT") && stmt.getArgs().trim().toUpperCase().equals(variable)) {
+                if (targets.isEmpty() || s + 1 == starts[program.size()]) {
+                    return NONE;
+                }
+                for (String read : arraysRead) {
+                    if (read.endsWith("$") || targets.contains(read)) {
+                        return NONE;
+                    }
+                }
+                variablesRead.remove(variable);
+                return new ParallelLoop(variable, targets.toArray(new String[0]),
+                        values.toArray(new CompiledExpression[0]), variablesRead, arraysRead, s, s - statement);
+            } else if (!stmt.getKeyword().equals("REM")) {
+                return NONE;
+            }
+        }
+        return NONE;
+    }
+
+    String variable() {
+        return variable;
+    }
+
+    /**
+     * Global statement number of the loop's NEXT
+     */
+    int next() {
+        return next;
+    }
+
+    /**
+     * Statements each iteration runs, counting its NEXT
+     */
+    int statementsPerIteration() {
+        return statementsPerIteration;
+    }
+
+    /**
+     * Run the whole loop on the pool if the values allow it, in at most
+     * maxIterations iterations; the number of iterations run, or 0 if it must run
+     * sequentially.  Only array elements are stored; the caller sets the
+     * loop variable and the FOR stack.
+     */
+    long run(ForkJoinPool pool, Object start, Object end, Object step, Map<String, Object> symbols,
+             Map<String, DefStatement> userFunctions, int minIterations, long maxIterations) {
+        if (!(start instanceof Number startNumber) || !(end instanceof Number endNumber)
+                || !(step instanceof Number stepNumber)) {
+            return 0;
+        }
+        double first = startNumber.doubleValue();
+        double increment = stepNumber.doubleValue();
+        double last = endNumber.doubleValue();
+        if (first != Math.rint(first) || increment != Math.rint(increment) || increment == 0
+                || Double.isNaN(last) || Math.abs(first) > Integer.MAX_VALUE || Math.abs(increment) > Integer.MAX_VALUE) {
+            return 0;
+        }
+        // The body runs once even if the start is past the end, as NEXT decides
+        long iterations = 1;
+        if (increment > 0 ? first + increment <= last : first + increment >= last) {
+            iterations += (long) Math.floor((last - first) / increment);
+        }
+        if (iterations < minIterations || iterations > maxIterations || pool.getParallelism() < 2) {
+            return 0;
+        }
+        double lastValue = first + (iterations - 1) * increment;
+
+        // Elements I(0) .. I(n-1) must all exist in each one-dimensional target
+        int low = (int) Math.min(first, lastValue) - Dialect.ARRAY_OFFSET;
+        int high = (int) Math.max(first, lastValue) - Dialect.ARRAY_OFFSET;
+        Object[][] arrays = new Object[targets.length][];
+        for (int t = 0; t < targets.length; t++) {
+            if (!(symbols.get("ARRAY:" + targets[t]) instanceof Object[] array)
+                    || low < 0 || high >= array.length || array[0] instanceof Object[]) {
+                return 0;
+            }
+            arrays[t] = array;
+        }
+        for (String name : variablesRead) {
+            if (!(symbols.get(name) instanceof Number)) {
+                return 0;
+            }
+        }
+        for (String name : arraysRead) {
+            if (userFunctions.containsKey(name)) {
+                return 0;
+            }
+        }
+
+        Object[][] results = new Object[targets.length][(int) iterations];
+        int split = (int) Math.max(MIN_SPLIT, iterations / (4L * pool.getParallelism()));
+        try {
+            pool.invoke(new Range(start, first, increment, 0, (int) iterations, split,
+                    results, symbols, userFunctions));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+        for (int t = 0; t < targets.length; t++) {
+            Object[] array = arrays[t];
+            Object[] result = results[t];
+            for (int k = 0; k < result.length; k++) {
+                array[(int) (first + k * increment) - Dialect.ARRAY_OFFSET] = result[k];
+            }
+        }
+        return iterations;
+    }
+
+    /**
+     * Iterations [from, to), split in halves down to the split size
+     */
+    private final class Range extends RecursiveAction {
+        private final Object start;
+        private final double first;
+        private final double increment;
+        private final int from;
+        private final int to;
+        private final int split;
+        private final Object[][] results;
+        private final Map<String, Object> symbols;
+        private final Map<String, DefStatement> userFunctions;
+
+        Range(Object start, double first, double increment, int from, int to, int split,
+              Object[][] results, Map<String, Object> symbols, Map<String, DefStatement> userFunctions) {
+            this.start = start;
+            this.first = first;
+            this.increment = increment;
+            this.from = from;
+            this.to = to;
+            this.split = split;
+            this.results = results;
+            this.symbols = symbols;
+            this.userFunctions = userFunctions;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > split) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Range(start, first, increment, from, mid, split, results, symbols, userFunctions),
+                        new Range(start, first, increment, mid, to, split, results, symbols, userFunctions));
+                return;
+            }
+            Map<String, Object> local = new HashMap<>(symbols);
+            ExpressionEvaluator ev = new ExpressionEvaluator(local, userFunctions, null);
+            for (int k = from; k < to; k++) {
+                local.put(variable, k == 0 ? start : (Object) (first + k * increment));
+                for (int t = 0; t < values.length; t++) {
+                    results[t][k] = ev.evaluateValue(values[t]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.worldware;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Per-statement execution counts of one run, printed per line.
+ * <p>
+ * Statements are numbered globally as in {@link Coverage}.  For statements
+ * the Executor fused into a {@link Superinstruction}, the profile also counts
+ * how often the fused fast path ran, so its hit rate can be checked.
+ */
+public class Profile {
+    private final Program program;
+    private final int[] lineStarts;
+    private final long[] executed;
+    private final long[] fusedHits;
+    private final String[] fusedKinds;
+
+    public Profile(Program program) {
+        this.program = program;
+        this.lineStarts = program.getStatementStarts();
+        int statements = lineStarts[program.size()];
+        this.executed = new long[statements];
+        this.fusedHits = new long[statements];
+        this.fusedKinds = new String[statements];
+    }
+
+    void executed(int statement) {
+        executed[statement]++;
+    }
+
+    void fusedHit(int statement) {
+        fusedHits[statement]++;
+    }
+
+    void fused(int statement, String kind) {
+        fusedKinds[statement] = kind;
+    }
+
+    public long executions(int lineIndex, int offset) {
+        return executed[lineStarts[lineIndex] + offset];
+    }
+
+    public long fusedHits(int lineIndex, int offset) {
+        return fusedHits[lineStarts[lineIndex] + offset];
+    }
+
+    /**
+     * The superinstruction the statement was fused into, or null
+     */
+    public String fusedKind(int lineIndex, int offset) {
+        return fusedKinds[lineStarts[lineIndex] + offset];
+    }
+
+    /**
+     * One row per executed line: statements executed on it, then each fused
+     * statement as clause:KIND with its fast path hits and hit rate
+     */
+    public void print(PrintStream out) {
+        out.println("Profile:");
+        out.printf("%8s %12s  %s%n", "LINE", "STATEMENTS", "FUSED");
+        for (int i = 0; i < program.size(); i++) {
+            long count = 0;
+            StringBuilder fused = new StringBuilder();
+            for (int s = lineStarts[i]; s < lineStarts[i + 1]; s++) {
+                count += executed[s];
+                if (fusedKinds[s] != null && executed[s] > 0) {
+                    if (fused.length() > 0) fused.append("  ");
+                    fused.append(String.format(Locale.ROOT, "%d:%s %d (%.1f%%)", s - lineStarts[i], fusedKinds[s],
+                            fusedHits[s], 100.0 * fusedHits[s] / executed[s]));
+                }
+            }
+            if (count > 0) {
+                out.printf("%8d %12d  %s%n", program.getLine(i).getLine(), count, fused);
+            }
+        }
+    }
+}
@@ -6,31 +6,121 @@ import java.util.*;
  * Encapsulates a BASIC program as a collection of ProgramLine objects.
  * Provides methods for navigation, line lookup, and program modification
  * while hiding the internal list implementation details.
+ * <p>
+ * Lines are kept in a tree sorted by line number, so inserting, replacing or
+ * deleting a line is O(log n).  Everything indexed by position (the line
+ * array, the line number table, the DATA pool and statement numbering) is
+ * derived from the tree and rebuilt lazily the first time it is needed after
+ * an edit, so entering a long program line by line costs one rebuild at the
+ * next run rather than one per line.
  */
 public class Program implements java.lang.Iterable<ProgramLine> {
-    private final List<ProgramLine> lines;
-    private final Map<Integer, Integer> lineToIndex;
+    private final TreeMap<Integer, ProgramLine> store;
+
+    // Derived views, null while stale
+    private ProgramLine[] lineArray;
+    private List<ProgramLine> lines;
+    private int[] lineNumbers;
+    private DataPool dataPool;
+    private int[] statementStarts;
+    private TypeInference types;
 
     /**
      * Initialize with a list of ProgramLine objects.
-     * Lines should be in ascending line number order.
+     * Lines are ordered by line number; a later line replaces an earlier one with the same number.
      */
     public Program(List<ProgramLine> programLines) {
-        // Store the lines
-        this.lines = new ArrayList<>(programLines);
-        
-        // Build line number to index mapping for fast lookup
-        this.lineToIndex = new HashMap<>();
-        for (int i = 0; i < lines.size(); i++) {
-            lineToIndex.put(lines.get(i).getLine(), i);
+        this.store = new TreeMap<>();
+        for (ProgramLine line : programLines) {
+            store.put(line.getLine(), line);
+        }
+        reindex();
+
+        // Gather all DATA values up front so READ never depends on DATA being executed
+        this.dataPool = DataPool.build(lines);
+    }
+
+    /**
+     * Rebuild the positional views from the tree
+     */
+    private void reindex() {
+        ProgramLine[] array = store.values().toArray(new ProgramLine[0]);
+        int[] numbers = new int[array.length];
+        for (int i = 0; i < array.length; i++) {
+            numbers[i] = array[i].getLine();
+        }
+        lineArray = array;
+        lines = Collections.unmodifiableList(Arrays.asList(array));
+        lineNumbers = numbers;
+    }
+
+    private List<ProgramLine> lines() {
+        if (lines == null) {
+            reindex();
         }
+        return lines;
+    }
+
+    /**
+     * Get the DATA values of the program, rebuilding them if lines were edited
+     */
+    public DataPool getDataPool() {
+        if (dataPool == null) {
+            dataPool = DataPool.build(lines());
+        }
+        return dataPool;
+    }
+
+    /**
+     * Global numbering of statements: entry i is the number of the first
+     * statement of line index i, counting every statement of the lines before
+     * it.  The extra last entry is the total statement count.  Rebuilt lazily
+     * after edits; callers must not modify the array.
+     */
+    public int[] getStatementStarts() {
+        if (statementStarts == null) {
+            List<ProgramLine> lines = lines();
+            int[] starts = new int[lines.size() + 1];
+            for (int i = 0; i < lines.size(); i++) {
+                starts[i + 1] = starts[i] + lines.get(i).statementCount();
+            }
+            statementStarts = starts;
+        }
+        return statementStarts;
+    }
+
+    /**
+     * Which variables hold only whole numbers (see TypeInference).
+     * Rebuilt lazily after edits.  While lines of a lazily loaded program are
+     * not parsed yet, nothing is known, rather than parsing them all for it.
+     */
+    TypeInference getTypes() {
+        if (types == null) {
+            for (ProgramLine line : lines()) {
+                if (!line.isParsed()) {
+                    return TypeInference.NONE;
+                }
+            }
+            types = TypeInference.analyze(this);
+        }
+        return types;
+    }
+
+    /**
+     * Use type analysis done earlier for these same lines
+     */
+    void setTypes(TypeInference types) {
+        this.types = types;
     }
 
     /**
      * Get line by index in the program
      */
     public ProgramLine getLine(int index) {
-        return lines.get(index);
+        if (lines == null) {
+            reindex();
+        }
+        return lineArray[index];
     }
 
     /**
@@ -38,17 +128,17 @@ public class Program implements java.lang.Iterable<ProgramLine> {
      */
     public Integer getNextIndex(int currentIndex) {
         int nextIndex = currentIndex + 1;
-        return nextIndex < lines.size() ? nextIndex : null;
+        return nextIndex < store.size() ? nextIndex : null;
     }
 
     /**
      * Get the next statement location after the current one
      */
     public ControlLocation getNextStatementLocation(int currentIndex, int currentOffset) {
-        ProgramLine currentLine = lines.get(currentIndex);
+        ProgramLine currentLine = lines().get(currentIndex);
         int nextOffset = currentOffset + 1;
         
-        if (nextOffset < currentLine.getStmts().size()) {
+        if (nextOffset < currentLine.statementCount()) {
             // More statements on current line
             return new ControlLocation(currentIndex, nextOffset);
         } else {
@@ -66,17 +156,28 @@ public class Program implements java.lang.Iterable<ProgramLine> {
      * Find the index of a line by line number
      */
     public int findLineIndex(int lineNumber) throws BasicSyntaxError {
-        Integer index = lineToIndex.get(lineNumber);
-        if (index == null) {
+        if (lines == null) {
+            reindex();
+        }
+        int index = Arrays.binarySearch(lineNumbers, lineNumber);
+        if (index < 0) {
             throw new BasicSyntaxError("Line " + lineNumber + " not found");
         }
         return index;
     }
 
+    /**
+     * Check whether a line number exists, without building the index
+     */
+    public boolean hasLine(int lineNumber) {
+        return store.containsKey(lineNumber);
+    }
+
     /**
      * Get a range of lines as strings for display
      */
     public List<String> getLinesRange(int startIndex, Integer count) {
+        List<ProgramLine> lines = lines();
         List<String> result = new ArrayList<>();
         int endIndex = count != null ? Math.min(startIndex + count, lines.size()) : lines.size();
         
@@ -90,38 +191,36 @@ public class Program implements java.lang.Iterable<ProgramLine> {
      * Get the number of lines in the program
      */
     public int size() {
-        return lines.size();
+        return store.size();
     }
 
     /**
      * Check if the program is empty
      */
     public boolean isEmpty() {
-        return lines.isEmpty();
+        return store.isEmpty();
     }
 
     /**
      * Get an iterator over the program lines
      */
     public Iterator<ProgramLine> iterator() {
-        return lines.iterator();
+        return lines().iterator();
     }
 
     /**
      * Get a program line by index (for array-like access)
      */
     public ProgramLine get(int index) {
-        return lines.get(index);
+        return getLine(index);
     }
 
     /**
      * Delete a line by its line number. Returns true if removed.
      */
     public boolean deleteLine(int lineNumber) {
-        Integer idx = lineToIndex.get(lineNumber);
-        if (idx == null) return false;
-        lines.remove((int) idx);
-        rebuildIndexMap();
+        if (store.remove(lineNumber) == null) return false;
+        invalidate();
         return true;
     }
 
@@ -130,26 +229,18 @@ public class Program implements java.lang.Iterable<ProgramLine> {
      * @return true if replaced, false if inserted new line.
      */
     public boolean insertOrReplaceLine(ProgramLine newLine) {
-        Integer idx = lineToIndex.get(newLine.getLine());
-        if (idx != null) {
-            lines.set(idx, newLine);
-            return true; // replaced
-        }
-        // insert keeping sorted order by line number
-        int insertPos = 0;
-        while (insertPos < lines.size() && lines.get(insertPos).getLine() < newLine.getLine()) {
-            insertPos++;
-        }
-        lines.add(insertPos, newLine);
-        rebuildIndexMap();
-        return false; // inserted
+        boolean replaced = store.put(newLine.getLine(), newLine) != null;
+        invalidate();
+        return replaced;
     }
 
-    /** Rebuild the line number -> index map after structural changes */
-    private void rebuildIndexMap() {
-        lineToIndex.clear();
-        for (int i = 0; i < lines.size(); i++) {
-            lineToIndex.put(lines.get(i).getLine(), i);
-        }
+    /** Drop the derived views after an edit; they are rebuilt on next use */
+    private void invalidate() {
+        lineArray = null;
+        lines = null;
+        lineNumbers = null;
+        dataPool = null;
+        statementStarts = null;
+        types = null;
     }
-} 
\ No newline at end of file
+}
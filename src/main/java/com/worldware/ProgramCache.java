@@ -0,0 +1,424 @@
+package com.worldware;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of parsed programs, so that loading an unchanged file skips
+ * lexing, parsing and type analysis.
+ * <p>
+ * An entry is named by the SHA-256 of the interpreter version and the source
+ * bytes, and holds the parsed statements of every line and the whole-number
+ * variables found by {@link TypeInference}.  Invalidation:
+ * <ul>
+ *   <li>Editing the source or changing the interpreter changes the key, so
+ *       the old entry is never looked up again.</li>
+ *   <li>An entry is used only if its magic, format version and stored digest
+ *       match; an unreadable or corrupt entry is ignored and rewritten.</li>
+ *   <li>Entries not used for {@link #MAX_AGE_DAYS} days are deleted when a
+ *       new entry is written.</li>
+ *   <li>Only fully parsed programs are stored.  A lazy load that misses the
+ *       cache indexes the file and writes nothing; programs with errors
+ *       never load, so they are never stored.</li>
+ *   <li>Files under {@link #MIN_SOURCE_SIZE} bytes bypass the cache.</li>
+ * </ul>
+ * Entries are written to a temporary file and moved into place, and any I/O
+ * problem with the cache falls back to loading the file normally.
+ * <p>
+ * File layout (big-endian): int magic, int version, the 32-byte key, a string
+ * table (count, then per string its UTF-8 length and bytes), then int line
+ * count and per line its number, source and statements (count, then per
+ * statement a one-byte kind and its fields as string table indexes), then
+ * the whole-number variables as a count and string indexes.  Keywords and
+ * other repeated text are stored once.
+ */
+final class ProgramCache {
+    static final int MAGIC = 0x54424B50; // "TBKP"
+    static final int VERSION = 1;
+
+    /** Entries unused for this long are removed */
+    static final int MAX_AGE_DAYS = 30;
+
+    /**
+     * Smaller sources are parsed without the cache: setting up SHA-256 in a
+     * fresh JVM takes longer than parsing them
+     */
+    static final int MIN_SOURCE_SIZE = 8 * 1024;
+
+    private static final String SUFFIX = ".tbp";
+
+    // Statement kinds
+    private static final byte KIND_BASIC = 'B';
+    private static final byte KIND_PRINT = 'P';
+    private static final byte KIND_FOR = 'F';
+    private static final byte KIND_ASSIGN = 'A';
+    private static final byte KIND_DATA = 'D';
+    private static final byte KIND_DEF = 'E';
+    private static final byte KIND_DIM = 'M';
+    private static final byte KIND_INPUT = 'N';
+    private static final byte KIND_READ = 'R';
+    private static final byte KIND_IF = 'I';
+    private static final byte KIND_IF_THEN = 'T';
+    private static final byte KIND_IF_THEN_ELSE = 'L';
+
+    private final Path directory;
+    private final int minSourceSize;
+
+    ProgramCache(Path directory) {
+        this(directory, MIN_SOURCE_SIZE);
+    }
+
+    ProgramCache(Path directory, int minSourceSize) {
+        this.directory = directory;
+        this.minSourceSize = minSourceSize;
+    }
+
+    /**
+     * The cache in the directory named by the trekbasic.cache.dir system
+     * property, else $XDG_CACHE_HOME/trekbasicj or ~/.cache/trekbasicj
+     */
+    static ProgramCache defaultCache() {
+        String dir = System.getProperty("trekbasic.cache.dir");
+        if (dir == null) {
+            String xdg = System.getenv("XDG_CACHE_HOME");
+            Path base = xdg != null && !xdg.isEmpty() ? Paths.get(xdg) : Paths.get(System.getProperty("user.home"), ".cache");
+            return new ProgramCache(base.resolve("trekbasicj"));
+        }
+        return new ProgramCache(Paths.get(dir));
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    /**
+     * Load a program file, from the cache if it holds the file as it is now
+     */
+    Program load(Path file, boolean lazy) throws IOException, BasicSyntaxError {
+        long start = System.nanoTime();
+        byte[] source = Files.readAllBytes(file);
+        long read = System.nanoTime();
+        if (source.length < minSourceSize) {
+            Program program = BasicLoader.parse(source, lazy);
+            long parsed = System.nanoTime();
+            recordLoad(file, program, lazy, false, start, read, read, parsed, parsed);
+            return program;
+        }
+
+        byte[] key = key(source);
+        Path entry = directory.resolve(hex(key) + SUFFIX);
+        Program cached = read(entry, key);
+        long lookedUp = System.nanoTime();
+        if (cached != null) {
+            recordLoad(file, cached, lazy, true, start, read, lookedUp, lookedUp, lookedUp);
+            return cached;
+        }
+        Program program = BasicLoader.parse(source, lazy);
+        long parsed = System.nanoTime();
+        if (!lazy) {
+            write(entry, key, program);
+        }
+        recordLoad(file, program, lazy, false, start, read, lookedUp, parsed, System.nanoTime());
+        return program;
+    }
+
+    /**
+     * Flight Recorder event for a load, from the System.nanoTime at which each phase ended
+     */
+    private static void recordLoad(Path file, Program program, boolean lazy, boolean cacheHit,
+                                   long start, long read, long lookedUp, long parsed, long stored) {
+        if (InterpreterEvents.active()) {
+            InterpreterEvents.programLoaded(file, program, lazy, cacheHit,
+                    read - start, lookedUp - read, parsed - lookedUp, stored - parsed);
+        }
+    }
+
+    /**
+     * Digest of the interpreter version and the source
+     */
+    static byte[] key(byte[] source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(interpreterVersion().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(source);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Computed on first use; the classes a JVM runs do not change under it
+    private static String interpreterVersion;
+
+    /**
+     * The cache format, the release, and the build time of the interpreter,
+     * so a rebuilt interpreter without a release number also misses
+     */
+    static synchronized String interpreterVersion() {
+        if (interpreterVersion == null) {
+            String release = ProgramCache.class.getPackage().getImplementationVersion();
+            long built = 0;
+            try {
+                built = buildTime(Paths.get(BasicLoader.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+            } catch (IOException | URISyntaxException | RuntimeException e) {
+                // Unknown build time; the release still counts
+            }
+            interpreterVersion = VERSION + "/" + (release == null ? "dev" : release) + "/" + built;
+        }
+        return interpreterVersion;
+    }
+
+    /**
+     * When the code was last built: the jar's file time, or when running from
+     * a classes directory the newest class file in it, since an incremental
+     * build rewrites only the classes whose sources changed.  File times, not
+     * URLConnection.getLastModified, which costs a JVM start the date and
+     * locale machinery just to read a jar entry's time.
+     */
+    static long buildTime(Path code) throws IOException {
+        if (!Files.isDirectory(code)) {
+            return Files.getLastModifiedTime(code).toMillis();
+        }
+        long newest = 0;
+        try (Stream<Path> files = Files.walk(code)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".class")).toList()) {
+                newest = Math.max(newest, Files.getLastModifiedTime(file).toMillis());
+            }
+        }
+        return newest;
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /* --------------------------------------------------------------------- */
+    /*  Reading                                                              */
+    /* --------------------------------------------------------------------- */
+
+    /**
+     * The program in a cache entry, or null if there is no usable entry
+     */
+    static Program read(Path entry, byte[] key) {
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return null;
+            }
+            byte[] stored = new byte[key.length];
+            in.get(stored);
+            if (!MessageDigest.isEqual(stored, key)) {
+                return null;
+            }
+            String[] strings = new String[count(in)];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] utf8 = new byte[count(in)];
+                in.get(utf8);
+                strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+            int lineCount = count(in);
+            List<ProgramLine> lines = new ArrayList<>(lineCount);
+            for (int i = 0; i < lineCount; i++) {
+                int number = in.getInt();
+                String source = strings[in.getInt()];
+                int statementCount = count(in);
+                List<Statement> stmts = new ArrayList<>(statementCount);
+                for (int s = 0; s < statementCount; s++) {
+                    stmts.add(readStatement(in, strings));
+                }
+                lines.add(new ProgramLine(number, stmts, source));
+            }
+            Set<String> integers = new HashSet<>();
+            for (int i = count(in); i > 0; i--) {
+                integers.add(strings[in.getInt()]);
+            }
+            Program program = new Program(lines);
+            program.setTypes(TypeInference.of(integers));
+            touch(entry);
+            return program;
+        } catch (IOException | BasicSyntaxError | RuntimeException e) {
+            return null; // unreadable or corrupt: load the source instead
+        }
+    }
+
+    private static int count(ByteBuffer in) {
+        int n = in.getInt();
+        if (n < 0 || n > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return n;
+    }
+
+    private static Statement readStatement(ByteBuffer in, String[] strings) throws BasicSyntaxError {
+        byte kind = in.get();
+        String keyword = strings[in.getInt()];
+        String args = strings[in.getInt()];
+        return switch (kind) {
+            case KIND_BASIC -> new BasicStatement(keyword, args);
+            case KIND_PRINT -> new PrintStatement(keyword, args);
+            case KIND_FOR -> new ForStatement(keyword, args);
+            case KIND_ASSIGN -> new AssignmentStatement(keyword, args);
+            case KIND_DATA -> new DataStatement(keyword, args);
+            case KIND_DEF -> new DefStatement(keyword, args);
+            case KIND_DIM -> new DimStatement(keyword, args);
+            case KIND_INPUT -> new InputStatement(keyword, args);
+            case KIND_READ -> new ReadStatement(keyword, args);
+            case KIND_IF -> new IfStatement(keyword, args);
+            case KIND_IF_THEN -> new IfThenStatement(keyword, args, strings[in.getInt()]);
+            case KIND_IF_THEN_ELSE -> new IfThenElseStatement(keyword, args, strings[in.getInt()], strings[in.getInt()]);
+            default -> throw new IllegalStateException("Unknown statement kind " + kind);
+        };
+    }
+
+    /**
+     * Mark an entry as used, so it is not pruned
+     */
+    private static void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // A read-only cache still works; the entry may be pruned early
+        }
+    }
+
+    /* --------------------------------------------------------------------- */
+    /*  Writing                                                              */
+    /* --------------------------------------------------------------------- */
+
+    /**
+     * Store a program, unless it has statements the format cannot hold
+     */
+    void write(Path entry, byte[] key, Program program) {
+        try {
+            byte[] bytes = encode(key, program);
+            Files.createDirectories(directory);
+            prune();
+            Path temp = Files.createTempFile(directory, "entry", ".tmp");
+            try {
+                Files.write(temp, bytes);
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // The cache is only a shortcut; the program was loaded anyway
+        }
+    }
+
+    static byte[] encode(byte[] key, Program program) throws IOException {
+        Map<String, Integer> table = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(program.size());
+        for (ProgramLine line : program) {
+            out.writeInt(line.getLine());
+            out.writeInt(intern(line.getSource(), table, strings));
+            out.writeInt(line.getStmts().size());
+            for (Statement stmt : line.getStmts()) {
+                writeStatement(out, stmt, table, strings);
+            }
+        }
+        Set<String> integers = program.getTypes().integerVariables();
+        out.writeInt(integers.size());
+        for (String name : integers) {
+            out.writeInt(intern(name, table, strings));
+        }
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream(body.size() + 1024);
+        DataOutputStream header = new DataOutputStream(file);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.write(key);
+        header.writeInt(strings.size());
+        for (String s : strings) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            header.writeInt(utf8.length);
+            header.write(utf8);
+        }
+        body.writeTo(header);
+        return file.toByteArray();
+    }
+
+    private static int intern(String s, Map<String, Integer> table, List<String> strings) {
+        return table.computeIfAbsent(s, k -> {
+            strings.add(k);
+            return strings.size() - 1;
+        });
+    }
+
+    private static void writeStatement(DataOutputStream out, Statement stmt, Map<String, Integer> table, List<String> strings)
+            throws IOException {
+        Class<?> type = stmt.getClass();
+        byte kind;
+        if (type == BasicStatement.class) kind = KIND_BASIC;
+        else if (type == PrintStatement.class) kind = KIND_PRINT;
+        else if (type == ForStatement.class) kind = KIND_FOR;
+        else if (type == AssignmentStatement.class) kind = KIND_ASSIGN;
+        else if (type == DataStatement.class) kind = KIND_DATA;
+        else if (type == DefStatement.class) kind = KIND_DEF;
+        else if (type == DimStatement.class) kind = KIND_DIM;
+        else if (type == InputStatement.class) kind = KIND_INPUT;
+        else if (type == ReadStatement.class) kind = KIND_READ;
+        else if (type == IfStatement.class) kind = KIND_IF;
+        else if (type == IfThenStatement.class) kind = KIND_IF_THEN;
+        else if (type == IfThenElseStatement.class) kind = KIND_IF_THEN_ELSE;
+        else throw new IOException("Cannot cache statement " + type.getSimpleName());
+
+        out.writeByte(kind);
+        out.writeInt(intern(stmt.getKeyword(), table, strings));
+        out.writeInt(intern(stmt.getArgs(), table, strings));
+        if (stmt instanceof IfThenStatement ifThen) {
+            out.writeInt(intern(ifThen.getThenStatements(), table, strings));
+        }
+        if (stmt instanceof IfThenElseStatement ifThenElse) {
+            out.writeInt(intern(ifThenElse.getElseStatements(), table, strings));
+        }
+    }
+
+    /**
+     * Delete entries not used for MAX_AGE_DAYS, and temporary files left by
+     * interrupted writes
+     */
+    private void prune() throws IOException {
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*{" + SUFFIX + ",.tmp}")) {
+            for (Path entry : entries) {
+                if (Files.getLastModifiedTime(entry).toMillis() < cutoff) {
+                    Files.deleteIfExists(entry);
+                }
+            }
+        }
+    }
+}
@@ -5,16 +5,42 @@ import java.util.Objects;
 
 /**
  * Represents one line in a BASIC program, which may be composed of multiple statements
+ * <p>
+ * Lines indexed by {@link BasicLoader#index} are not parsed yet: they hold
+ * the offsets of their text in the program source shared by all lines, and
+ * the number of statements on them, and parse their statements on first use.
  */
 public class ProgramLine {
     private final int line;          // The line number, e.g., "100" in "100 PRINT:PRINT:END"
-    private final List<Statement> stmts;  // A list of statements
-    private final String source;     // The original line as a string
+    private List<Statement> stmts;   // A list of statements; null until a lazy line is parsed
+    private final String text;       // The original line, or the program source holding it
+    private final int start;         // The line in text
+    private final int end;
+    private final int bodyStart;     // Where the statements start in text, for lazy lines
+    private final int statementCount;
+    private LineReferences lineReferences; // Found on first use; statements never change
 
     public ProgramLine(int line, List<Statement> stmts, String source) {
         this.line = line;
         this.stmts = List.copyOf(stmts);  // Make immutable copy
-        this.source = source;
+        this.text = source;
+        this.start = 0;
+        this.end = source.length();
+        this.bodyStart = 0;
+        this.statementCount = this.stmts.size();
+    }
+
+    /**
+     * A line to parse on first use: text[start, end) is the trimmed line and
+     * its statements start at bodyStart
+     */
+    ProgramLine(int line, String text, int start, int end, int bodyStart, int statementCount) {
+        this.line = line;
+        this.text = text;
+        this.start = start;
+        this.end = end;
+        this.bodyStart = bodyStart;
+        this.statementCount = statementCount;
     }
 
     public int getLine() {
@@ -22,11 +48,51 @@ public class ProgramLine {
     }
 
     public List<Statement> getStmts() {
+        if (stmts == null) {
+            stmts = BasicLoader.parseLazily(text.substring(bodyStart, end), statementCount);
+        }
         return stmts;
     }
 
     public String getSource() {
-        return source;
+        return start == 0 && end == text.length() ? text : text.substring(start, end);
+    }
+
+    /**
+     * Number of statements on the line, known without parsing it
+     */
+    int statementCount() {
+        return statementCount;
+    }
+
+    boolean isParsed() {
+        return stmts != null;
+    }
+
+    /**
+     * False only if the line is not parsed yet and the word (in any case)
+     * appears nowhere in its statements, e.g. a line without DATA statements
+     */
+    boolean mayContain(String word) {
+        if (stmts != null) {
+            return true;
+        }
+        for (int i = bodyStart; i + word.length() <= end; i++) {
+            if (text.regionMatches(true, i, word, 0, word.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Positions of the line numbers this line refers to (GOTO targets etc.)
+     */
+    LineReferences getLineReferences() {
+        if (lineReferences == null) {
+            lineReferences = LineReferences.scan(getStmts());
+        }
+        return lineReferences;
     }
 
     /**
@@ -37,22 +103,23 @@ public class ProgramLine {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ProgramLine that = (ProgramLine) o;
-        return line == that.line && Objects.equals(stmts, that.stmts);
+        return line == that.line && Objects.equals(getStmts(), that.getStmts());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(line, stmts);
+        return Objects.hash(line, getStmts());
     }
 
     @Override
     public String toString() {
+        List<Statement> stmts = getStmts();
         StringBuilder stmtsStr = new StringBuilder();
         for (int i = 0; i < stmts.size(); i++) {
             if (i > 0) stmtsStr.append(", ");
             stmtsStr.append(stmts.get(i));
         }
         return String.format("ProgramLine(line=%d, stmts=[%s], source=\"%s\")", 
-                           line, stmtsStr, source);
+                           line, stmtsStr, getSource());
     }
 } 
\ No newline at end of file
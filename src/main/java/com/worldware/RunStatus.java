@@ -11,7 +11,9 @@ public enum RunStatus {
     END_ERROR_SYNTAX,
     END_ERROR_INTERNAL,
     END_ERROR_RUNTIME,
+    END_ERROR_QUOTA,        // Went over a quota set with Executor.setQuotas
     BREAK_CODE,
     BREAK_DATA,
-    BREAK_STEP
+    BREAK_STEP,
+    YIELD                   // Used up the statement budget of runProgram(long); run again to continue
 } 
\ No newline at end of file
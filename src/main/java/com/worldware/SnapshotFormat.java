@@ -0,0 +1,138 @@
+package com.worldware;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary encoding of interpreter values used by {@link Executor#snapshot()} and
+ * {@link Executor#restore(byte[])}.
+ * <p>
+ * Every value is written as a one-byte tag followed by its payload.  Arrays whose
+ * elements are all Integers (or all Doubles) are written as a packed run of
+ * primitives instead of one tagged element at a time, which keeps DIMmed
+ * numeric arrays compact.
+ */
+final class SnapshotFormat {
+    static final int MAGIC = 0x54424B53; // "TBKS"
+    static final int VERSION = 3;
+
+    private static final byte TAG_INT = 'I';
+    private static final byte TAG_DOUBLE = 'D';
+    private static final byte TAG_STRING = 'S';
+    private static final byte TAG_BOOLEAN = 'B';
+    private static final byte TAG_ARRAY = 'A';
+    private static final byte TAG_INT_ARRAY = 'i';
+    private static final byte TAG_DOUBLE_ARRAY = 'd';
+
+    private SnapshotFormat() {}
+
+    /**
+     * Write a single symbol value (scalar or nested array)
+     */
+    static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Integer i) {
+            out.writeByte(TAG_INT);
+            out.writeInt(i);
+        } else if (value instanceof Double d) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(d);
+        } else if (value instanceof CharSequence s) {
+            out.writeByte(TAG_STRING);
+            writeString(out, s.toString());
+        } else if (value instanceof Boolean b) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean(b);
+        } else if (value instanceof Object[] array) {
+            writeArray(out, array);
+        } else {
+            throw new IOException("Cannot snapshot value of type " + (value == null ? "null" : value.getClass().getSimpleName()));
+        }
+    }
+
+    /**
+     * Read a value previously written by {@link #writeValue}
+     */
+    static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_INT:
+                return in.readInt();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_STRING:
+                return readString(in);
+            case TAG_BOOLEAN:
+                return in.readBoolean();
+            case TAG_INT_ARRAY: {
+                Object[] array = new Object[in.readInt()];
+                for (int i = 0; i < array.length; i++) array[i] = in.readInt();
+                return array;
+            }
+            case TAG_DOUBLE_ARRAY: {
+                Object[] array = new Object[in.readInt()];
+                for (int i = 0; i < array.length; i++) array[i] = in.readDouble();
+                return array;
+            }
+            case TAG_ARRAY: {
+                Object[] array = new Object[in.readInt()];
+                for (int i = 0; i < array.length; i++) array[i] = readValue(in);
+                return array;
+            }
+            default:
+                throw new IOException("Corrupt snapshot: unknown value tag " + tag);
+        }
+    }
+
+    /**
+     * Strings are written as a length-prefixed char sequence so that values
+     * longer than 64K (which writeUTF rejects) survive a round trip.
+     */
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) throw new IOException("Corrupt snapshot: negative string length");
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++) chars[i] = in.readChar();
+        return new String(chars);
+    }
+
+    private static void writeArray(DataOutputStream out, Object[] array) throws IOException {
+        boolean allInt = true;
+        boolean allDouble = true;
+        for (Object o : array) {
+            allInt &= o instanceof Integer;
+            allDouble &= o instanceof Double;
+        }
+        if (array.length > 0 && allInt) {
+            out.writeByte(TAG_INT_ARRAY);
+            out.writeInt(array.length);
+            for (Object o : array) out.writeInt((Integer) o);
+        } else if (array.length > 0 && allDouble) {
+            out.writeByte(TAG_DOUBLE_ARRAY);
+            out.writeInt(array.length);
+            for (Object o : array) out.writeDouble((Double) o);
+        } else {
+            out.writeByte(TAG_ARRAY);
+            out.writeInt(array.length);
+            for (Object o : array) writeValue(out, o);
+        }
+    }
+
+    /**
+     * Cheap fingerprint of a program's source so a snapshot is never restored
+     * into an executor running a different program.
+     */
+    static int fingerprint(Program program) {
+        int h = program.size();
+        for (ProgramLine line : program) {
+            h = 31 * h + line.getLine();
+            h = 31 * h + line.getSource().hashCode();
+        }
+        return h;
+    }
+}
@@ -0,0 +1,239 @@
+package com.worldware;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Measures how long the interpreter takes to start, with and without the
+ * AppCDS archive built by the cdsArchive Gradle task.
+ * <p>
+ * Each launcher ({@link Main} running a program, and {@link BasicShell}
+ * loading it and quitting) is started in a fresh JVM a number of times.  The
+ * time from starting the process to the first byte on its standard output
+ * is the time-to-first-output; the time to process exit is recorded too.
+ * One untimed run per configuration comes first, so the OS file cache and
+ * the program cache are warm for all configurations alike.  The program
+ * cache is a temporary directory, removed afterwards.
+ * <p>
+ * The classpath must be the one the archive was created with (the jar built
+ * by Gradle), since the JVM ignores an archive whose classpath differs.
+ * <p>
+ * The JSON report has one result per line, for diffing and tracking over time:
+ * <pre>
+ * {"timestamp": "...", "java": "23.0.2", "program": "hello.bas", "runs": 10, "results": [
+ *   {"launcher": "Main", "archive": false, "firstOutputMillis": 210.512, "firstOutputMinMillis": 201.003, "firstOutputMaxMillis": 240.118, "exitMillis": 231.870},
+ *   ...
+ * ]}
+ * </pre>
+ * Millisecond values are medians unless marked Min or Max.
+ * <p>
+ * Options:
+ * <pre>
+ *   --classpath CP     classpath for the launched JVMs (default: this JVM's)
+ *   --archive FILE     AppCDS archive; without it only unarchived runs are measured
+ *   --program FILE     program to launch (default hello.bas)
+ *   --runs N           timed runs per configuration (default 10)
+ *   --report FILE      write a JSON report
+ * </pre>
+ */
+public class StartupBenchmark {
+    private static final int DEFAULT_RUNS = 10;
+
+    /**
+     * Timings of one launcher in one configuration, in nanoseconds
+     */
+    record Result(String launcher, boolean archive, long[] firstOutputNanos, long[] exitNanos) {
+        long medianFirstOutput() {
+            return median(firstOutputNanos);
+        }
+
+        long medianExit() {
+            return median(exitNanos);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Arguments arguments = parseArguments(args);
+        if (arguments.archive != null && !Files.isRegularFile(arguments.archive)) {
+            System.err.println("No archive at " + arguments.archive + " (run the cdsArchive task)");
+            System.exit(1);
+        }
+        if (!Files.isRegularFile(arguments.program)) {
+            System.err.println("No program at " + arguments.program);
+            System.exit(1);
+        }
+
+        Path cacheDir = Files.createTempDirectory("trekbasic-startup");
+        List<Result> results = new ArrayList<>();
+        try {
+            for (String launcher : List.of("Main", "BasicShell")) {
+                results.add(measure(arguments, launcher, null, cacheDir));
+                if (arguments.archive != null) {
+                    results.add(measure(arguments, launcher, arguments.archive, cacheDir));
+                }
+            }
+        } finally {
+            deleteTree(cacheDir);
+        }
+
+        for (Result r : results) {
+            System.out.printf(Locale.ROOT, "%-10s %-10s first output %8.1f ms  exit %8.1f ms%n",
+                    r.launcher(), r.archive() ? "archive" : "no archive",
+                    r.medianFirstOutput() / 1e6, r.medianExit() / 1e6);
+        }
+        if (arguments.report != null) {
+            writeReport(results, arguments, arguments.report);
+            System.out.println("Report written to " + arguments.report);
+        }
+    }
+
+    /**
+     * Launch one configuration once untimed and then runs times
+     */
+    static Result measure(Arguments arguments, String launcher, Path archive, Path cacheDir)
+            throws IOException, InterruptedException {
+        List<String> command = command(arguments, launcher, archive, cacheDir);
+        long[] firstOutput = new long[arguments.runs];
+        long[] exit = new long[arguments.runs];
+        launch(command, launcher);
+        for (int i = 0; i < arguments.runs; i++) {
+            long[] times = launch(command, launcher);
+            firstOutput[i] = times[0];
+            exit[i] = times[1];
+        }
+        return new Result(launcher, archive != null, firstOutput, exit);
+    }
+
+    static List<String> command(Arguments arguments, String launcher, Path archive, Path cacheDir) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive.toAbsolutePath());
+            // As in scripts/trekbasic: an unusable archive warns on stderr, not stdout
+            command.add("-Xlog:disable");
+            command.add("-Xlog:all=warning:stderr");
+        }
+        command.add("-Dtrekbasic.cache.dir=" + cacheDir.toAbsolutePath());
+        command.add("-cp");
+        command.add(arguments.classpath);
+        command.add("com.worldware." + launcher);
+        command.add(arguments.program.toString());
+        return command;
+    }
+
+    /**
+     * Run the command to completion; nanoseconds to the first output byte and to exit
+     */
+    private static long[] launch(List<String> command, String launcher) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        long start = System.nanoTime();
+        Process proc = pb.start();
+        try (OutputStream stdin = proc.getOutputStream()) {
+            // The shell quits at once; Main sees end of input if the program asks
+            if (launcher.equals("BasicShell")) {
+                stdin.write("quit\n".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        long firstOutput;
+        try (InputStream stdout = proc.getInputStream()) {
+            int first = stdout.read();
+            firstOutput = System.nanoTime() - start;
+            if (first < 0) {
+                throw new IOException(launcher + " printed nothing: " + String.join(" ", command));
+            }
+            stdout.transferTo(OutputStream.nullOutputStream());
+        }
+        proc.waitFor();
+        return new long[] {firstOutput, System.nanoTime() - start};
+    }
+
+    static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+
+    static void writeReport(List<Result> results, Arguments arguments, Path file) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file)) {
+            w.write(String.format(Locale.ROOT, "{\"timestamp\": \"%s\", \"java\": \"%s\", \"program\": \"%s\", \"runs\": %d, \"results\": [",
+                    Instant.now(), escape(System.getProperty("java.version")),
+                    escape(arguments.program.getFileName().toString()), arguments.runs));
+            w.newLine();
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                w.write(String.format(Locale.ROOT,
+                        "  {\"launcher\": \"%s\", \"archive\": %b, \"firstOutputMillis\": %.3f, \"firstOutputMinMillis\": %.3f, \"firstOutputMaxMillis\": %.3f, \"exitMillis\": %.3f}",
+                        r.launcher(), r.archive(), r.medianFirstOutput() / 1e6,
+                        Arrays.stream(r.firstOutputNanos()).min().orElse(0) / 1e6,
+                        Arrays.stream(r.firstOutputNanos()).max().orElse(0) / 1e6,
+                        r.medianExit() / 1e6));
+                if (i < results.size() - 1) w.write(",");
+                w.newLine();
+            }
+            w.write("]}");
+            w.newLine();
+        }
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static Arguments parseArguments(String[] args) {
+        Arguments arguments = new Arguments();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            try {
+                switch (arg) {
+                    case "--classpath", "-cp" -> arguments.classpath = args[++i];
+                    case "--archive" -> arguments.archive = Paths.get(args[++i]);
+                    case "--program" -> arguments.program = Paths.get(args[++i]);
+                    case "--runs" -> arguments.runs = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--report" -> arguments.report = Paths.get(args[++i]);
+                    default -> {
+                        System.err.println("Unknown option: " + arg);
+                        System.exit(1);
+                    }
+                }
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                System.err.println("Option " + arg + " requires a value");
+                System.exit(1);
+            }
+        }
+        return arguments;
+    }
+
+    /**
+     * Simple argument holder class
+     */
+    static class Arguments {
+        String classpath = System.getProperty("java.class.path");
+        Path archive;
+        Path program = Paths.get("hello.bas");
+        int runs = DEFAULT_RUNS;
+        Path report;
+    }
+}
@@ -0,0 +1,106 @@
+package com.worldware;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JSON timing report produced by {@link TestSuiteRunner}.
+ * <p>
+ * The report is written with one program object per line so that it stays
+ * diff-friendly and can be read back as a baseline without a JSON library:
+ * <pre>
+ * {"programs": [
+ *   {"name": "a.bas", "exitCode": 0, "passed": true, "wallMillis": 12.500, "statements": 1000, "statementsPerSecond": 80000.0},
+ *   ...
+ * ]}
+ * </pre>
+ * statements and statementsPerSecond are -1 when the count is unknown (forked runs).
+ */
+final class SuiteReport {
+    private static final Pattern NAME_PAT = Pattern.compile("\"name\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern RATE_PAT = Pattern.compile("\"statementsPerSecond\"\\s*:\\s*(-?[0-9.eE+-]+)");
+
+    private SuiteReport() {}
+
+    /**
+     * Timing and outcome of one program
+     */
+    record Entry(String name, int exitCode, boolean passed, long wallNanos, long statements) {
+        double statementsPerSecond() {
+            if (statements < 0 || wallNanos <= 0) return -1;
+            return statements / (wallNanos / 1e9);
+        }
+    }
+
+    static void write(List<Entry> entries, Path file) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file)) {
+            w.write("{\"programs\": [");
+            w.newLine();
+            for (int i = 0; i < entries.size(); i++) {
+                Entry e = entries.get(i);
+                w.write(String.format(Locale.ROOT,
+                        "  {\"name\": \"%s\", \"exitCode\": %d, \"passed\": %b, \"wallMillis\": %.3f, \"statements\": %d, \"statementsPerSecond\": %.1f}",
+                        escape(e.name()), e.exitCode(), e.passed(), e.wallNanos() / 1e6, e.statements(), e.statementsPerSecond()));
+                if (i < entries.size() - 1) w.write(",");
+                w.newLine();
+            }
+            w.write("]}");
+            w.newLine();
+        }
+    }
+
+    /**
+     * Read program name -> statements per second from a report written by
+     * {@link #write}.  Programs without a known rate are omitted.
+     */
+    static Map<String, Double> readThroughput(Path file) throws IOException {
+        Map<String, Double> rates = new HashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            Matcher name = NAME_PAT.matcher(line);
+            Matcher rate = RATE_PAT.matcher(line);
+            if (name.find() && rate.find()) {
+                double value = Double.parseDouble(rate.group(1));
+                if (value > 0) {
+                    rates.put(unescape(name.group(1)), value);
+                }
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * List programs whose throughput fell more than thresholdPercent below
+     * the baseline.
+     */
+    static List<String> findRegressions(List<Entry> entries, Map<String, Double> baseline, double thresholdPercent) {
+        List<String> regressions = new ArrayList<>();
+        for (Entry e : entries) {
+            Double before = baseline.get(e.name());
+            double now = e.statementsPerSecond();
+            if (before == null || now < 0) continue;
+            double dropPercent = 100.0 * (before - now) / before;
+            if (dropPercent > thresholdPercent) {
+                regressions.add(String.format(Locale.ROOT, "%s (%.0f -> %.0f statements/s, %.1f%% slower)",
+                        e.name(), before, now, dropPercent));
+            }
+        }
+        return regressions;
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static String unescape(String s) {
+        return s.replace("\\\"", "\"").replace("\\\\", "\\");
+    }
+}
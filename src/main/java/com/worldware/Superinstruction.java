@@ -0,0 +1,272 @@
+package com.worldware;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fused form of one of the statement shapes that dominate BASIC programs,
+ * executed in place of the general statement code.
+ * <p>
+ * The Executor lowers each statement the first time it runs.  Shapes with a
+ * fused form:
+ * <ul>
+ *   <li>BRANCH: IF cond THEN n / IF cond THEN GOTO n, a conditional jump to a
+ *       resolved target instead of re-parsing the THEN text</li>
+ *   <li>GOTO / GOSUB n: the target, and for GOSUB the return location, resolved once</li>
+ *   <li>INCREMENT: X=X+c or X=X-c, updating the variable without evaluating an
+ *       expression, when X holds an Integer and c is a whole constant</li>
+ *   <li>PRINT: a print list of literal strings only, preformatted once</li>
+ * </ul>
+ * {@link #execute} returns false when the fast path does not apply this
+ * time (e.g. X is not an Integer); the Executor then runs the statement the
+ * general way, so results are always the same as without fusion.
+ */
+abstract class Superinstruction {
+    /** For statements without a fused form */
+    static final Superinstruction NONE = new Superinstruction("NONE") {
+        @Override
+        boolean execute(Executor ex) {
+            return false;
+        }
+    };
+
+    private final String kind;
+
+    private Superinstruction(String kind) {
+        this.kind = kind;
+    }
+
+    /**
+     * Name shown in the profile
+     */
+    String kind() {
+        return kind;
+    }
+
+    /**
+     * Run the statement, or return false to have it run the general way
+     */
+    abstract boolean execute(Executor ex) throws BasicRuntimeError;
+
+    /**
+     * The fused form of the statement at (index, offset), or NONE
+     */
+    static Superinstruction lower(Executor ex, Program program, int index, int offset, Statement stmt) {
+        try {
+            if (stmt instanceof IfThenElseStatement) {
+                return NONE;
+            }
+            if (stmt instanceof IfThenStatement ifThen) {
+                ControlLocation target = jumpTarget(program, ifThen.getThenStatements());
+                return target == null ? NONE : new Branch(ex.compiled(ifThen.getCondition()), target);
+            }
+            if (stmt instanceof AssignmentStatement assignment) {
+                return lowerAssignment(ex, assignment);
+            }
+            switch (stmt.getKeyword()) {
+                case "GOTO" -> {
+                    ControlLocation target = lineTarget(program, stmt.getArgs());
+                    return target == null ? NONE : new Goto(target);
+                }
+                case "GOSUB" -> {
+                    ControlLocation target = lineTarget(program, stmt.getArgs());
+                    return target == null ? NONE
+                            : new Gosub(target, program.getNextStatementLocation(index, offset));
+                }
+                case "PRINT" -> {
+                    return lowerPrint(stmt.getArgs());
+                }
+                default -> {
+                    return NONE;
+                }
+            }
+        } catch (BasicSyntaxError e) {
+            return NONE; // e.g. a jump to a missing line: the general code reports it
+        }
+    }
+
+    /**
+     * Start of the line named by a THEN clause that is only "n" or "GOTO n"
+     */
+    private static ControlLocation jumpTarget(Program program, String clause) throws BasicSyntaxError {
+        String text = clause.trim();
+        if (text.regionMatches(true, 0, "GOTO", 0, 4)) {
+            text = text.substring(4);
+        }
+        return lineTarget(program, text);
+    }
+
+    /**
+     * Start of the line a literal line number names, or null if the text is not one
+     */
+    private static ControlLocation lineTarget(Program program, String text) throws BasicSyntaxError {
+        text = text.trim();
+        if (text.isEmpty() || !text.chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        try {
+            return new ControlLocation(program.findLineIndex(Integer.parseInt(text)), 0);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * X=X+c, X=c+X or X=X-c with a whole constant c
+     */
+    private static Superinstruction lowerAssignment(Executor ex, AssignmentStatement assignment) {
+        if (assignment.isArrayAssignment()) {
+            return NONE;
+        }
+        String variable = assignment.getVariable().toUpperCase();
+        CompiledExpression rhs = ex.compiled(assignment.getExpression());
+        String op;
+        CompiledExpression left;
+        CompiledExpression right;
+        if (rhs instanceof CompiledExpression.Arithmetic a) {
+            op = a.op();
+            left = a.left();
+            right = a.right();
+        } else if (rhs instanceof CompiledExpression.IntegerArithmetic a) {
+            op = a.op();
+            left = a.left();
+            right = a.right();
+        } else {
+            return NONE;
+        }
+        if (op.equals("+") && right instanceof CompiledExpression.Variable) {
+            CompiledExpression swap = left;
+            left = right;
+            right = swap;
+        }
+        if (!(op.equals("+") || op.equals("-"))
+                || !(left instanceof CompiledExpression.Variable v && v.name().equals(variable))
+                || !(right instanceof CompiledExpression.Constant c && c.value() instanceof Number n
+                        && n.doubleValue() == (int) n.doubleValue())) {
+            return NONE;
+        }
+        // Literals are Doubles; a whole one adds to an Integer as a whole step
+        int step = (int) n.doubleValue();
+        return new Increment(variable, op.equals("+") ? step : -(long) step);
+    }
+
+    /**
+     * The exact text PRINT writes for a list of string literals, or NONE
+     */
+    private static Superinstruction lowerPrint(String args) {
+        if (args.isEmpty()) {
+            return new PrintLiteral(System.lineSeparator());
+        }
+        List<Character> seps = new ArrayList<>();
+        List<String> items = Executor.splitPrintList(args, seps);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < items.size(); i++) {
+            String part = items.get(i).trim();
+            if (!part.isEmpty()) {
+                if (!(part.startsWith("\"") && part.endsWith("\""))) {
+                    return NONE;
+                }
+                text.append(part, 1, part.length() - 1);
+            }
+            if (i < seps.size() && seps.get(i) == ',') {
+                text.append("    ");
+            }
+        }
+        if (Executor.printEndsLine(args)) {
+            text.append(System.lineSeparator());
+        }
+        return new PrintLiteral(text.toString());
+    }
+
+    /* --------------------------------------------------------------------- */
+    /*  Fused instructions                                                   */
+    /* --------------------------------------------------------------------- */
+
+    private static final class Branch extends Superinstruction {
+        private final CompiledExpression condition;
+        private final ControlLocation target;
+
+        Branch(CompiledExpression condition, ControlLocation target) {
+            super("BRANCH");
+            this.condition = condition;
+            this.target = target;
+        }
+
+        @Override
+        boolean execute(Executor ex) throws BasicRuntimeError {
+            if (ExpressionEvaluator.isTrue(ex.evaluate(condition))) {
+                ex.jump(target);
+            }
+            return true;
+        }
+    }
+
+    private static final class Goto extends Superinstruction {
+        private final ControlLocation target;
+
+        Goto(ControlLocation target) {
+            super("GOTO");
+            this.target = target;
+        }
+
+        @Override
+        boolean execute(Executor ex) {
+            ex.jump(target);
+            return true;
+        }
+    }
+
+    private static final class Gosub extends Superinstruction {
+        private final ControlLocation target;
+        private final ControlLocation returnTo; // null for a GOSUB ending the program
+
+        Gosub(ControlLocation target, ControlLocation returnTo) {
+            super("GOSUB");
+            this.target = target;
+            this.returnTo = returnTo;
+        }
+
+        @Override
+        boolean execute(Executor ex) throws BasicRuntimeError {
+            ex.gosub(target, returnTo);
+            return true;
+        }
+    }
+
+    private static final class Increment extends Superinstruction {
+        private final String variable;
+        private final long step;
+
+        Increment(String variable, long step) {
+            super("INCREMENT");
+            this.variable = variable;
+            this.step = step;
+        }
+
+        @Override
+        boolean execute(Executor ex) throws BasicRuntimeError {
+            if (!(ex.symbol(variable) instanceof Integer value)) {
+                return false;
+            }
+            // Saturates like the general path's (int) cast of a double
+            long sum = value + step;
+            ex.assign(variable, (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, sum)));
+            return true;
+        }
+    }
+
+    private static final class PrintLiteral extends Superinstruction {
+        private final String text;
+
+        PrintLiteral(String text) {
+            super("PRINT");
+            this.text = text;
+        }
+
+        @Override
+        boolean execute(Executor ex) {
+            ex.output().print(text);
+            return true;
+        }
+    }
+}
@@ -1,26 +1,79 @@
 package com.worldware;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Stand-alone runner that executes every .bas file in the test_suite directory
- * using the interpreter (com.worldware.Main) in a separate JVM. The first line
- * may contain a comment of the form "REM EXPECT_EXIT_CODE=n" to specify the
- * expected exit status (default 0). The program reports any mismatches and
- * exits with status 1 if failures are found.
+ * Stand-alone runner that executes every .bas file in the test_suite directory.
+ * The first line may contain a comment of the form "REM EXPECT_EXIT_CODE=n" to
+ * specify the expected exit status (default 0). The program reports any
+ * mismatches and exits with status 1 if failures are found.
+ * <p>
+ * By default programs run inside this JVM, several at a time on a bounded
+ * worker pool, each with its own {@link Executor} and captured output.  The exit
+ * code is derived from the final {@link RunStatus} exactly as
+ * {@link Main} does.  With {@code --fork} every program is instead run by
+ * com.worldware.Main in a separate JVM, which isolates interpreter crashes at
+ * the cost of JVM startup per program.
+ * <p>
+ * Next to {@code foo.bas} the runner looks for two optional files:
+ * {@code foo.input} is fed to the program's INPUT statements, and
+ * {@code foo.expected} holds the exact output the program must print.  Wall
+ * time and (in-process only) the number of statements executed are recorded
+ * for every program and can be written as a JSON report.  Given the report of
+ * an earlier run as a baseline, programs whose statement throughput dropped
+ * by more than the threshold are reported as regressions.
+ * <p>
+ * Options:
+ * <pre>
+ *   --fork             run each program in its own JVM
+ *   --jobs N           number of programs to run concurrently (default: CPU count)
+ *   --timeout SECS     per-program time limit (default 60)
+ *   --report FILE      write a JSON timing report
+ *   --baseline FILE    compare throughput with an earlier JSON report
+ *   --threshold PCT    allowed throughput drop against the baseline (default 20)
+ * </pre>
  */
 public class TestSuiteRunner {
     private static final Pattern EXPECT_PAT =
             Pattern.compile("EXPECT_EXIT_CODE\\s*=\\s*(\\d+)", Pattern.CASE_INSENSITIVE);
+    private static final int DEFAULT_TIMEOUT_SECONDS = 60;
+    private static final double DEFAULT_THRESHOLD_PERCENT = 20.0;
+
+    // Chatter printed by Main around the program's own output in forked mode
+    private static final String MAIN_LOADED_PREFIX = "Loaded program with ";
+    private static final String MAIN_COMPLETED_PREFIX = "Program completed with a status of ";
+
+    /**
+     * Outcome of running one program.  statements is -1 when unknown (forked mode).
+     */
+    record ProgramResult(File program, int exitCode, String output, boolean timedOut,
+                         long wallNanos, long statements) {}
 
     public static void main(String[] args) throws Exception {
+        Arguments arguments = parseArguments(args);
+
         File projectDir = new File(System.getProperty("user.dir"));
         File suiteDir = new File(projectDir, "test_suite");
         if (!suiteDir.exists()) {
@@ -39,22 +92,80 @@ public class TestSuiteRunner {
             return;
         }
 
-        List<String> failures = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(arguments.jobs);
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "test-suite-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+
+        List<Future<ProgramResult>> pending = new ArrayList<>();
         for (File prog : basFiles) {
+            pending.add(pool.submit(() -> arguments.fork
+                    ? runProgram(prog, arguments.timeoutSeconds)
+                    : runInProcess(prog, arguments.timeoutSeconds, watchdog)));
+        }
+
+        // Report in file order so the log reads the same as a sequential run
+        List<String> failures = new ArrayList<>();
+        List<SuiteReport.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < basFiles.size(); i++) {
+            File prog = basFiles.get(i);
             System.out.println("\n>>> Running " + suiteDir.toPath().relativize(prog.toPath()));
 
+            ProgramResult result;
+            try {
+                result = pending.get(i).get();
+            } catch (ExecutionException e) {
+                failures.add(prog.getName() + " (runner error: " + e.getCause() + ")");
+                continue;
+            }
+            System.out.print(result.output());
+
+            String name = suiteDir.toPath().relativize(prog.toPath()).toString();
+            String failure = null;
             int expected = readExpectedExitCode(prog);
-            int actual = runProgram(prog);
+            if (result.timedOut()) {
+                failure = "timed out after " + arguments.timeoutSeconds + "s";
+            } else if (result.exitCode() != expected) {
+                failure = "expected " + expected + " got " + result.exitCode();
+            } else {
+                File golden = companionFile(prog, ".expected");
+                if (golden.exists()) {
+                    String programOutput = arguments.fork ? stripMainOutput(result.output()) : result.output();
+                    failure = compareOutput(programOutput, golden.toPath());
+                }
+            }
+            if (failure != null) {
+                failures.add(prog.getName() + " (" + failure + ")");
+            }
+            entries.add(new SuiteReport.Entry(name, result.exitCode(), failure == null,
+                    result.wallNanos(), result.statements()));
+        }
+        pool.shutdown();
+        watchdog.shutdownNow();
+
+        if (arguments.report != null) {
+            SuiteReport.write(entries, arguments.report);
+            System.out.println("\nTiming report written to " + arguments.report);
+        }
 
-            if (actual != expected) {
-                failures.add(prog.getName() + " (expected " + expected + " got " + actual + ")");
+        List<String> regressions = new ArrayList<>();
+        if (arguments.baseline != null) {
+            Map<String, Double> baseline = SuiteReport.readThroughput(arguments.baseline);
+            regressions = SuiteReport.findRegressions(entries, baseline, arguments.thresholdPercent);
+            if (!regressions.isEmpty()) {
+                System.err.println("\nThroughput regressions (more than " + arguments.thresholdPercent + "% slower):\n"
+                        + String.join("\n", regressions));
             }
         }
 
-        if (failures.isEmpty()) {
+        if (failures.isEmpty() && regressions.isEmpty()) {
             System.out.println("\nAll programs executed successfully.");
         } else {
-            System.err.println("\nFailures:\n" + String.join("\n", failures));
+            if (!failures.isEmpty()) {
+                System.err.println("\nFailures:\n" + String.join("\n", failures));
+            }
             System.exit(1);
         }
     }
@@ -72,7 +183,132 @@ public class TestSuiteRunner {
         return 0; // default
     }
 
-    private static int runProgram(File prog) throws Exception {
+    /**
+     * Locate foo.input / foo.expected next to foo.bas
+     */
+    static File companionFile(File prog, String extension) {
+        String name = prog.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot >= 0 ? name.substring(0, dot) : name;
+        return new File(prog.getParentFile(), base + extension);
+    }
+
+    /**
+     * Compare program output with a golden file line by line, stopping at the
+     * first difference.  Returns null when they match, otherwise a description
+     * of the first mismatch.
+     */
+    static String compareOutput(String actual, Path expectedFile) throws IOException {
+        try (BufferedReader expected = Files.newBufferedReader(expectedFile);
+             BufferedReader got = new BufferedReader(new StringReader(actual))) {
+            int lineNumber = 1;
+            while (true) {
+                String want = expected.readLine();
+                String have = got.readLine();
+                if (want == null && have == null) {
+                    return null;
+                }
+                if (want == null) {
+                    return "output line " + lineNumber + ": unexpected extra output '" + have + "'";
+                }
+                if (have == null) {
+                    return "output line " + lineNumber + ": output ended, expected '" + want + "'";
+                }
+                if (!want.equals(have)) {
+                    return "output line " + lineNumber + ": expected '" + want + "' got '" + have + "'";
+                }
+                lineNumber++;
+            }
+        }
+    }
+
+    /**
+     * Remove the lines Main prints before and after the program itself, so
+     * forked output can be compared with the same golden files.
+     */
+    static String stripMainOutput(String output) {
+        List<String> lines = new ArrayList<>(output.lines().toList());
+        if (!lines.isEmpty() && lines.get(0).startsWith(MAIN_LOADED_PREFIX)) {
+            lines.remove(0);
+        }
+        if (!lines.isEmpty() && lines.get(lines.size() - 1).startsWith(MAIN_COMPLETED_PREFIX)) {
+            lines.remove(lines.size() - 1);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Run a program on the calling thread with its own executor, capturing
+     * everything it prints.  The watchdog stops the executor once the time
+     * limit has passed.
+     */
+    static ProgramResult runInProcess(File prog, int timeoutSeconds, ScheduledExecutorService watchdog) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+
+        Program program;
+        try {
+            program = BasicLoader.tokenize(Files.readAllLines(prog.toPath()));
+        } catch (BasicSyntaxError e) {
+            out.printf("%s in line %s of file.%n", e.getMessage(), e.getLineNumber());
+            return new ProgramResult(prog, Main.EXIT_ERROR, buffer.toString(StandardCharsets.UTF_8), false,
+                    System.nanoTime() - start, 0);
+        } catch (Exception e) {
+            out.printf("File not found %s%n", e.getMessage());
+            return new ProgramResult(prog, Main.EXIT_ERROR, buffer.toString(StandardCharsets.UTF_8), false,
+                    System.nanoTime() - start, 0);
+        }
+
+        int exitCode;
+        AtomicBoolean timedOut = new AtomicBoolean(false);
+        Executor executor = null;
+        ScheduledFuture<?> alarm = null;
+        try {
+            File inputFile = companionFile(prog, ".input");
+            InputScript script = inputFile.exists()
+                    ? InputScript.load(inputFile.toPath())
+                    : InputScript.fromLines(List.of());
+            executor = new Executor(program);
+            executor.setOutput(out);
+            // Echo prompts so the captured output matches a console run
+            executor.setInputScript(script, true);
+            Executor target = executor;
+            alarm = watchdog.schedule(() -> {
+                timedOut.set(true);
+                target.requestStop();
+            }, timeoutSeconds, TimeUnit.SECONDS);
+
+            RunStatus status = executor.runProgram();
+            exitCode = Main.determineExitCode(status);
+        } catch (BasicSyntaxError e) {
+            out.printf("%s in line %s of file.%n", e.getMessage(), e.getLineNumber());
+            exitCode = Main.EXIT_ERROR;
+        } catch (BasicRuntimeError e) {
+            out.printf("Runtime Error: %s%n", e.getMessage());
+            exitCode = Main.EXIT_ERROR;
+        } catch (Exception e) {
+            out.println("Error: " + e.getMessage());
+            exitCode = Main.EXIT_ERROR;
+        } finally {
+            if (alarm != null) alarm.cancel(false);
+            if (executor != null) {
+                try { executor.close(); } catch (Exception ignored) {}
+            }
+        }
+        long statements = executor != null ? executor.getStatementCount() : 0;
+        return new ProgramResult(prog, exitCode, buffer.toString(StandardCharsets.UTF_8), timedOut.get(),
+                System.nanoTime() - start, statements);
+    }
+
+    /**
+     * Run a program with com.worldware.Main in a separate JVM
+     */
+    static ProgramResult runProgram(File prog, int timeoutSeconds) throws Exception {
         List<String> cmd = new ArrayList<>();
         cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
         cmd.add("-cp");
@@ -80,17 +316,69 @@ public class TestSuiteRunner {
         cmd.add("com.worldware.Main");
         cmd.add(prog.getAbsolutePath());
 
-        ProcessBuilder pb = new ProcessBuilder(cmd);
-        pb.redirectErrorStream(true);
-        Process proc = pb.start();
+        // Collect output in a file rather than a pipe so a hung child can be
+        // killed on timeout without blocking on its stream.
+        File log = File.createTempFile("testsuite", ".out");
+        try {
+            ProcessBuilder pb = new ProcessBuilder(cmd);
+            pb.redirectErrorStream(true);
+            pb.redirectOutput(log);
+            File inputFile = companionFile(prog, ".input");
+            if (inputFile.exists()) {
+                pb.redirectInput(inputFile);
+            }
+            long start = System.nanoTime();
+            Process proc = pb.start();
+            if (!inputFile.exists()) {
+                proc.getOutputStream().close(); // programs see EOF on INPUT
+            }
+
+            boolean finished = proc.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+            if (!finished) {
+                proc.destroyForcibly().waitFor();
+            }
+            long wall = System.nanoTime() - start;
+            String output = Files.readString(log.toPath());
+            return new ProgramResult(prog, finished ? proc.exitValue() : -1, output, !finished, wall, -1);
+        } finally {
+            log.delete();
+        }
+    }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(proc.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
+    private static Arguments parseArguments(String[] args) {
+        Arguments arguments = new Arguments();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            try {
+                switch (arg) {
+                    case "--fork" -> arguments.fork = true;
+                    case "--jobs", "-j" -> arguments.jobs = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--timeout" -> arguments.timeoutSeconds = Integer.parseInt(args[++i]);
+                    case "--report" -> arguments.report = Paths.get(args[++i]);
+                    case "--baseline" -> arguments.baseline = Paths.get(args[++i]);
+                    case "--threshold" -> arguments.thresholdPercent = Double.parseDouble(args[++i]);
+                    default -> {
+                        System.err.println("Unknown option: " + arg);
+                        System.exit(1);
+                    }
+                }
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                System.err.println("Option " + arg + " requires a value");
+                System.exit(1);
             }
         }
-        proc.waitFor();
-        return proc.exitValue();
+        return arguments;
+    }
+
+    /**
+     * Simple argument holder class
+     */
+    private static class Arguments {
+        boolean fork = false;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        int timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
+        Path report;
+        Path baseline;
+        double thresholdPercent = DEFAULT_THRESHOLD_PERCENT;
     }
-}
\ No newline at end of file
+}
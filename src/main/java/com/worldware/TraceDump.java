@@ -0,0 +1,140 @@
+package com.worldware;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders a binary trace written by {@link ExecutionTrace} as the text trace
+ * format: "&gt;" plus the source at the start of each line, a tab plus the
+ * statement for each statement executed, and a "Control Transfer" line for
+ * each jump.  The program the trace was recorded from is needed to recover the
+ * source text, and is checked against the fingerprint in the trace header.
+ * <p>
+ * Usage: {@code TraceDump [--vars] [--times] <program.bas> [tracefile.bin]}
+ * <pre>
+ *   --vars    also list variable assignments
+ *   --times   append the time since the previous statement to each statement
+ * </pre>
+ */
+public class TraceDump {
+
+    public static void main(String[] args) {
+        boolean vars = false;
+        boolean times = false;
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--vars")) {
+                vars = true;
+            } else if (arg.equals("--times")) {
+                times = true;
+            } else if (arg.startsWith("-")) {
+                System.err.println("Unknown option: " + arg);
+                System.exit(2);
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.isEmpty() || files.size() > 2) {
+            System.err.println("Usage: TraceDump [--vars] [--times] <program.bas> [" + ExecutionTrace.DEFAULT_FILE_NAME + "]");
+            System.exit(2);
+        }
+        Path tracePath = Paths.get(files.size() == 2 ? files.get(1) : ExecutionTrace.DEFAULT_FILE_NAME);
+        try {
+            Program program = BasicLoader.tokenize(Files.readAllLines(Paths.get(files.get(0))));
+            PrintWriter out = new PrintWriter(System.out);
+            dump(program, tracePath, out, vars, times);
+            out.flush();
+        } catch (BasicSyntaxError e) {
+            System.err.printf("%s in line %s of file.%n", e.getMessage(), e.getLineNumber());
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Write the text form of a trace file
+     */
+    public static void dump(Program program, Path tracePath, PrintWriter out, boolean vars, boolean times) throws IOException {
+        long recordCount;
+        List<String> names = new ArrayList<>();
+        try (RandomAccessFile file = new RandomAccessFile(tracePath.toFile(), "r")) {
+            if (file.length() < ExecutionTrace.HEADER_SIZE || file.readInt() != ExecutionTrace.MAGIC) {
+                throw new IOException("Not a trace file: " + tracePath);
+            }
+            int version = file.readInt();
+            if (version != ExecutionTrace.VERSION) {
+                throw new IOException("Unsupported trace version " + version);
+            }
+            if (file.readInt() != SnapshotFormat.fingerprint(program)) {
+                throw new IOException("Trace was recorded from a different program");
+            }
+            file.readInt();
+            recordCount = file.readLong();
+            if (recordCount >= 0) {
+                file.seek(ExecutionTrace.HEADER_SIZE + recordCount * ExecutionTrace.RECORD_SIZE);
+                int count = file.readInt();
+                for (int i = 0; i < count; i++) {
+                    names.add(file.readUTF());
+                }
+            } else {
+                // Trace was never closed; read records until the zero-filled tail
+                recordCount = (file.length() - ExecutionTrace.HEADER_SIZE) / ExecutionTrace.RECORD_SIZE;
+            }
+        }
+
+        try (InputStream stream = Files.newInputStream(tracePath);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+            in.skipNBytes(ExecutionTrace.HEADER_SIZE);
+            for (long r = 0; r < recordCount; r++) {
+                long word;
+                long payload;
+                try {
+                    word = in.readLong();
+                    payload = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                int kind = (int) (word >>> 60);
+                int offset = (int) ((word >>> 32) & 0x0FFFFFFF);
+                int value = (int) word;
+                switch (kind) {
+                    case ExecutionTrace.KIND_STATEMENT -> {
+                        ProgramLine line = program.getLine(value);
+                        if (offset == 0) {
+                            out.println(">" + line.getSource());
+                        }
+                        String text = "\t" + line.getStmts().get(offset);
+                        out.println(times ? text + "\t+" + payload + "ns" : text);
+                    }
+                    case ExecutionTrace.KIND_JUMP -> {
+                        ControlLocation from = new ControlLocation(value, offset);
+                        ControlLocation to = new ControlLocation((int) payload, (int) (payload >>> 32));
+                        ProgramLine destinationLine = program.getLine(to.getIndex());
+                        out.println("\tControl Transfer from line " + from + " TO line " + destinationLine.getLine() + ": " + to + ".");
+                    }
+                    case ExecutionTrace.KIND_VARIABLE -> {
+                        if (vars) {
+                            out.println("\t\t" + (value < names.size() ? names.get(value) : "slot " + value) + " assigned");
+                        }
+                    }
+                    case 0 -> {
+                        return;
+                    }
+                    default -> throw new IOException("Corrupt trace: unknown record kind " + kind);
+                }
+            }
+        }
+    }
+}
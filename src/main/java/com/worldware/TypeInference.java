@@ -0,0 +1,130 @@
+package com.worldware;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Load-time analysis of which numeric variables only ever hold whole numbers.
+ * <p>
+ * A variable is INTEGER when every value the program can store in it is
+ * whole: each LET assigns an expression typed INTEGER, and for a FOR counter
+ * the start, limit and step are all INTEGER (NEXT then only steps between
+ * whole values within the limit).  Variables set by READ or INPUT are never
+ * INTEGER, since DATA and typed input may be fractional.  Names ending in $
+ * are STRING; everything else is NUMBER.
+ * <p>
+ * Assignments are gathered from every statement, including those inside
+ * THEN and ELSE clauses, split the way the Executor splits them.  The
+ * analysis starts by assuming every candidate is INTEGER and drops those
+ * with an assignment that is not, until nothing changes, so variables
+ * computed from each other (I=I+J, J=I) are found too.
+ */
+final class TypeInference {
+    /** Knows nothing: every numeric variable is NUMBER */
+    static final TypeInference NONE = new TypeInference(Set.of());
+
+    private final Set<String> integers;
+
+    private TypeInference(Set<String> integers) {
+        this.integers = integers;
+    }
+
+    /**
+     * A result found earlier, e.g. kept in the compiled-program cache
+     */
+    static TypeInference of(Set<String> integers) {
+        return integers.isEmpty() ? NONE : new TypeInference(Set.copyOf(integers));
+    }
+
+    /**
+     * @param name upper-case variable name
+     */
+    ValueType typeOf(String name) {
+        if (name.endsWith("$")) return ValueType.STRING;
+        return integers.contains(name) ? ValueType.INTEGER : ValueType.NUMBER;
+    }
+
+    /**
+     * The variables found to hold only whole numbers
+     */
+    Set<String> integerVariables() {
+        return integers;
+    }
+
+    static TypeInference analyze(Program program) {
+        Map<String, List<String>> assigned = new HashMap<>();
+        Set<String> excluded = new HashSet<>();
+        for (ProgramLine line : program) {
+            for (Statement stmt : line.getStmts()) {
+                collect(stmt, assigned, excluded);
+            }
+        }
+
+        Set<String> integers = new HashSet<>();
+        for (String name : assigned.keySet()) {
+            if (!name.endsWith("$") && !excluded.contains(name)) {
+                integers.add(name);
+            }
+        }
+        TypeInference types = new TypeInference(integers);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (String name : new ArrayList<>(integers)) {
+                for (String expression : assigned.get(name)) {
+                    if (ExpressionEvaluator.compile(expression, types).type() != ValueType.INTEGER) {
+                        integers.remove(name);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return types;
+    }
+
+    private static void collect(Statement stmt, Map<String, List<String>> assigned, Set<String> excluded) {
+        if (stmt instanceof IfThenElseStatement ite) {
+            collectClause(ite.getThenStatements(), assigned, excluded);
+            collectClause(ite.getElseStatements(), assigned, excluded);
+        } else if (stmt instanceof IfThenStatement it) {
+            collectClause(it.getThenStatements(), assigned, excluded);
+        } else if (stmt instanceof AssignmentStatement assignment) {
+            if (!assignment.isArrayAssignment()) {
+                add(assigned, assignment.getVariable(), assignment.getExpression());
+            }
+        } else if (stmt instanceof ForStatement forStmt) {
+            String var = forStmt.getIndexVariable();
+            add(assigned, var, forStmt.getStartExpression());
+            add(assigned, var, forStmt.getEndExpression());
+            add(assigned, var, forStmt.getStepExpression());
+        } else if (stmt instanceof ReadStatement read) {
+            for (String var : read.getVariables()) excluded.add(var.toUpperCase(Locale.ROOT));
+        } else if (stmt instanceof InputStatement input) {
+            for (String var : input.getVariables()) excluded.add(var.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Statements of a THEN or ELSE clause, as Executor.executeThenStatements parses them
+     */
+    private static void collectClause(String text, Map<String, List<String>> assigned, Set<String> excluded) {
+        for (String part : BasicLoader.smartSplit(text, ':')) {
+            if (part.trim().isEmpty()) continue;
+            try {
+                collect(BasicLoader.parseStatement(part), assigned, excluded);
+            } catch (BasicSyntaxError e) {
+                // Fails when executed, so it never assigns anything
+            }
+        }
+    }
+
+    private static void add(Map<String, List<String>> assigned, String variable, String expression) {
+        assigned.computeIfAbsent(variable.toUpperCase(Locale.ROOT), k -> new ArrayList<>()).add(expression);
+    }
+}
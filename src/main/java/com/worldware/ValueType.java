@@ -0,0 +1,16 @@
+package com.worldware;
+
+/**
+ * What is statically known about the value of a variable or expression
+ */
+enum ValueType {
+    /** A string ($ variables, string literals and string functions) */
+    STRING,
+    /** A number not known to be whole; also used when nothing is known */
+    NUMBER,
+    /**
+     * A whole number in int range.  Held as an Integer, except FOR loop
+     * counters, which NEXT stores as a Double with a whole value.
+     */
+    INTEGER
+}
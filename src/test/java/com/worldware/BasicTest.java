@@ -12,7 +12,7 @@ import static org.junit.jupiter.api.Assertions.*;
  */
 public class BasicTest extends TestCaseBase {
 
-    private static final String TRACE_FILE_NAME = "tracefile.txt";
+    private static final String TRACE_FILE_NAME = ExecutionTrace.DEFAULT_FILE_NAME;
 
     @Test
     public void testTraceFileGenerated() throws Exception {
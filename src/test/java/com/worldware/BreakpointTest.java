@@ -0,0 +1,99 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BreakpointTest extends TestCaseBase {
+
+    private static final List<String> LOOP = List.of(
+            "100 T=0",
+            "110 FOR K=1 TO 10",
+            "120 T=T+K",
+            "130 NEXT K",
+            "140 END"
+    );
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private Executor load(List<String> listing) throws Exception {
+        return new Executor(BasicLoader.tokenize(listing));
+    }
+
+    private static double number(Executor executor, String name) {
+        return ((Number) executor.getSymbol(name)).doubleValue();
+    }
+
+    @Test
+    public void testContinueResumesPastBreakpoint() throws Exception {
+        Executor executor = load(LOOP);
+        executor.setBreakpoints(List.of(new Executor.Breakpoint(120, 0, null)), null);
+        for (int k = 1; k <= 10; k++) {
+            assertEquals(RunStatus.BREAK_CODE, executor.runProgram(false));
+            assertEquals(k, number(executor, "K"));
+        }
+        assertEquals(RunStatus.END_CMD, executor.runProgram(false));
+        assertEquals(55, number(executor, "T"));
+    }
+
+    @Test
+    public void testConditionalBreakpoint() throws Exception {
+        Executor executor = load(LOOP);
+        executor.setBreakpoints(List.of(new Executor.Breakpoint(120, 0, "K>3 AND T<100")), null);
+        assertEquals(RunStatus.BREAK_CODE, executor.runProgram(false));
+        assertEquals(4, number(executor, "K"));
+        assertEquals(6, number(executor, "T"));
+        assertEquals(RunStatus.BREAK_CODE, executor.runProgram(false));
+        assertEquals(5, number(executor, "K"));
+    }
+
+    @Test
+    public void testBreakpointOnFirstStatement() throws Exception {
+        Executor executor = load(LOOP);
+        executor.setBreakpoints(List.of(new Executor.Breakpoint(100, 0, null)), null);
+        assertEquals(RunStatus.BREAK_CODE, executor.runProgram(false));
+        assertNull(executor.getSymbol("T"));
+        executor.setBreakpoints(null, null);
+        assertEquals(RunStatus.END_CMD, executor.runProgram(false));
+    }
+
+    @Test
+    public void testDataBreakpointStopsAfterAssignment() throws Exception {
+        Executor executor = load(List.of(
+                "100 A=1",
+                "110 B=2:C=3",
+                "120 D=4"
+        ));
+        executor.setBreakpoints(null, List.of("b"));
+        assertEquals(RunStatus.BREAK_DATA, executor.runProgram(false));
+        assertEquals(2, executor.getSymbol("B"));
+        assertNull(executor.getSymbol("C"));
+        assertEquals(new ControlLocation(1, 1), executor.getCurrentLocation());
+        assertEquals(RunStatus.END_OF_PROGRAM, executor.runProgram(false));
+        assertEquals(4, executor.getSymbol("D"));
+    }
+
+    @Test
+    public void testInvalidBreakpointRejected() throws Exception {
+        Executor executor = load(LOOP);
+        assertThrows(BasicSyntaxError.class,
+                () -> executor.setBreakpoints(List.of(new Executor.Breakpoint(105, 0, null)), null));
+        assertThrows(BasicSyntaxError.class,
+                () -> executor.setBreakpoints(List.of(new Executor.Breakpoint(120, 1, null)), null));
+    }
+
+    @Test
+    public void testPreparedExpressionMatchesEvaluate() {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(new java.util.HashMap<>(java.util.Map.of("A", 3, "B$", "XY")));
+        ExpressionEvaluator.Prepared prepared = ExpressionEvaluator.prepare("LEN(B$)*A+1");
+        assertEquals(evaluator.evaluate("LEN(B$)*A+1"), evaluator.evaluate(prepared));
+        assertEquals(evaluator.evaluate(prepared), evaluator.evaluate(prepared));
+        assertTrue(evaluator.evaluateCondition(ExpressionEvaluator.prepare("A>2 AND B$=\"XY\"")));
+    }
+}
@@ -110,6 +110,26 @@ public class BuiltinFunctionsTest extends TestCaseBase {
         assertTrue(b >= 0.0 && b <= 10.0, "RND(10) should be between 0 and 10");
     }
 
+    @Test
+    public void testRndIsReproducibleFromSeed() throws Exception {
+        Program program = BasicLoader.tokenize(Arrays.asList(
+            "100 A=RND(1)",
+            "110 B=RND(6)"
+        ));
+        Executor first = new Executor(program);
+        first.setSeed(42);
+        first.runProgram();
+        Executor second = new Executor(program);
+        second.setSeed(42);
+        second.runProgram();
+
+        assertEquals(first.getSymbol("A"), second.getSymbol("A"));
+        assertEquals(first.getSymbol("B"), second.getSymbol("B"));
+
+        SplittableRandom reference = new SplittableRandom(42);
+        assertEquals(reference.nextDouble(), (Double) first.getSymbol("A"), 0.0);
+    }
+
     @Test
     public void testFunctionInExpression() throws Exception {
         List<String> listing = Arrays.asList(
@@ -0,0 +1,84 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ControlStackTest extends TestCaseBase {
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    @Test
+    public void testViewsAtBreakpoint() throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(List.of(
+                "10 FOR I=1 TO 3:FOR J=10 TO 0 STEP -2",
+                "20 GOSUB 100",
+                "30 NEXT J:NEXT I",
+                "40 END",
+                "100 GOSUB 200:RETURN",
+                "200 RETURN")));
+        executor.setBreakpoints(List.of(new Executor.Breakpoint(200, 0, null)), null);
+        assertEquals(RunStatus.BREAK_CODE, executor.runProgram());
+
+        List<Executor.ForRecord> loops = executor.getForStack();
+        assertEquals(2, loops.size());
+        assertEquals(new Executor.ForRecord("I", 3.0, 1.0, new ControlLocation(0, 0)), loops.get(0));
+        assertEquals(new Executor.ForRecord("J", 0.0, -2.0, new ControlLocation(0, 1)), loops.get(1));
+
+        List<ControlLocation> returns = executor.getGosubStack();
+        assertEquals(List.of(new ControlLocation(2, 0), new ControlLocation(4, 1)), returns);
+        assertThrows(UnsupportedOperationException.class, () -> returns.remove(0));
+        assertThrows(UnsupportedOperationException.class, () -> loops.clear());
+
+        // The views are live
+        executor.setBreakpoints(null, null);
+        assertEquals(RunStatus.END_CMD, executor.runProgram());
+        assertTrue(loops.isEmpty());
+        assertTrue(returns.isEmpty());
+    }
+
+    @Test
+    public void testDeepNesting() throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(List.of(
+                "10 D=0:M=0:N=0",
+                "20 GOSUB 100",
+                "30 FOR A=1 TO 2:FOR B=1 TO 2:FOR C=1 TO 2:FOR E=1 TO 2:FOR F=1 TO 2",
+                "40 FOR G=1 TO 2:FOR H=1 TO 2:FOR K=1 TO 2:FOR L=1 TO 2:FOR P=1 TO 2",
+                "50 N=N+1",
+                "60 NEXT P:NEXT L:NEXT K:NEXT H:NEXT G:NEXT F:NEXT E:NEXT C:NEXT B:NEXT A",
+                "70 PRINT M;D;N",
+                "80 END",
+                "100 D=D+1:IF D>M THEN M=D",
+                "120 IF D<5000 THEN GOSUB 100",
+                "140 D=D-1:RETURN")));
+        assertEquals(RunStatus.END_CMD, executor.runProgram());
+        assertEquals(" 5000  0  1024 \n", getCapturedOutput());
+        assertTrue(executor.getGosubStack().isEmpty());
+        assertTrue(executor.getForStack().isEmpty());
+    }
+
+    @Test
+    public void testGosubAllocatesNothing() throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(List.of(
+                "10 GOSUB 100:GOTO 10",
+                "100 GOSUB 200:RETURN",
+                "200 RETURN")));
+        executor.setHotThreshold(0);
+        executor.runProgram(10_000L);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        assertEquals(RunStatus.YIELD, executor.runProgram(600_000L));
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // 200,000 calls; a few hundred bytes for the run itself
+        assertTrue(allocated < 10_000, allocated + " bytes");
+    }
+}
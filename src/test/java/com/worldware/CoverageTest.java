@@ -0,0 +1,128 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CoverageTest extends TestCaseBase {
+
+    private static final List<String> LISTING = List.of(
+            "100 A=1:IF A=2 THEN 130",
+            "110 B=2:GOTO 140:C=3",
+            "120 D=4",
+            "130 E=5",
+            "140 END"
+    );
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private Coverage runWithCoverage(List<String> listing) throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(listing), false, true);
+        executor.runProgram();
+        return executor.getCoverage();
+    }
+
+    private Coverage runWithX(Program program, int x) throws Exception {
+        Executor executor = new Executor(program, false, true);
+        executor.putSymbol("X", x);
+        executor.runProgram();
+        return executor.getCoverage();
+    }
+
+    @Test
+    public void testStatementsAreRecorded() throws Exception {
+        Coverage coverage = runWithCoverage(LISTING);
+        assertEquals(5, coverage.lineCount());
+        assertEquals(8, coverage.statementCount());
+        assertEquals(2, coverage.executedStatements(0));
+        assertEquals(2, coverage.executedStatements(1));
+        assertFalse(coverage.isExecuted(1, 2));
+        assertFalse(coverage.isLineExecuted(2));
+        assertFalse(coverage.isLineExecuted(3));
+        assertTrue(coverage.isLineExecuted(4));
+        assertEquals(3, coverage.executedLineCount());
+        assertEquals(5, coverage.executedStatementCount());
+    }
+
+    @Test
+    public void testCoverageIsOffByDefault() throws Exception {
+        assertNull(runIt(List.of("100 A=1")).getCoverage());
+    }
+
+    @Test
+    public void testSaveAndMergeRuns() throws Exception {
+        List<String> listing = List.of(
+                "100 IF X=1 THEN 120",
+                "110 A=1:END",
+                "120 B=2"
+        );
+        Program program = BasicLoader.tokenize(listing);
+        Coverage first = runWithX(program, 0);
+        Coverage second = runWithX(program, 1);
+
+        Path dir = Files.createDirectory(tempDir.resolve("runs"));
+        first.write(dir.resolve("run1.cov"));
+        second.write(dir.resolve("run2.cov"));
+        Files.writeString(dir.resolve("notes.txt"), "ignored");
+
+        List<Path> files = CoverageMerge.expand(List.of(dir));
+        assertEquals(2, files.size());
+        Coverage merged = CoverageMerge.merge(files);
+        assertEquals(merged.statementCount(), merged.executedStatementCount());
+        assertTrue(merged.matches(program));
+        assertEquals(2, Coverage.read(dir.resolve("run1.cov")).executedLineCount());
+    }
+
+    @Test
+    public void testMergeRejectsOtherProgram() throws Exception {
+        Coverage a = runWithCoverage(List.of("100 A=1"));
+        Coverage b = runWithCoverage(List.of("100 A=2"));
+        assertThrows(IllegalArgumentException.class, () -> a.merge(b));
+        Path garbage = tempDir.resolve("bad.cov");
+        Files.write(garbage, new byte[]{1, 2, 3, 4});
+        assertThrows(IOException.class, () -> Coverage.read(garbage));
+    }
+
+    @Test
+    public void testLcovExport() throws Exception {
+        StringWriter text = new StringWriter();
+        try (PrintWriter out = new PrintWriter(text)) {
+            runWithCoverage(LISTING).writeLcov(out, "game.bas");
+        }
+        List<String> lines = text.toString().lines().toList();
+        assertEquals("SF:game.bas", lines.get(1));
+        assertTrue(lines.contains("DA:100,1"));
+        assertTrue(lines.contains("DA:120,0"));
+        assertTrue(lines.contains("BRDA:110,0,2,0"));
+        assertTrue(lines.contains("LF:5"));
+        assertTrue(lines.contains("LH:3"));
+        assertEquals("end_of_record", lines.get(lines.size() - 1));
+    }
+
+    @Test
+    public void testJsonExport() throws Exception {
+        StringWriter text = new StringWriter();
+        try (PrintWriter out = new PrintWriter(text)) {
+            runWithCoverage(LISTING).writeJson(out);
+        }
+        String json = text.toString();
+        assertTrue(json.contains("\"linesExecuted\": 3"));
+        assertTrue(json.contains("\"statementsExecuted\": 5"));
+        assertTrue(json.contains("{\"line\": 110, \"statements\": 3, \"executed\": 2}"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutorMonitorTest extends TestCaseBase {
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    @Test
+    public void testCountsDepthsAndMemory() throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(List.of(
+                "10 DIM A(9):A$=\"HELLO\":X=1",
+                "20 FOR I=1 TO 3",
+                "30 GOSUB 100",
+                "40 NEXT I",
+                "100 STOP")));
+        ExecutorMonitor monitor = new ExecutorMonitor(executor);
+        assertEquals(0, monitor.getGosubDepth());
+        assertEquals(RunStatus.END_STOP, executor.runProgram());
+
+        assertEquals(executor.getStatementCount(), monitor.getStatementsExecuted());
+        assertTrue(monitor.getStatementsPerSecond() > 0);
+        assertEquals(1, monitor.getGosubDepth());
+        assertEquals(1, monitor.getForDepth());
+        assertEquals(100, monitor.getCurrentLine());
+        assertEquals("END_STOP", monitor.getRunStatus());
+        // A, A$, X and I
+        assertEquals(4, monitor.getSymbolCount());
+        assertEquals(40 + 5 + 16 + 16, monitor.getSymbolBytes());
+        assertEquals(ExecutorMonitor.estimate(executor.symbolTable().get("ARRAY:A")), monitor.getArrayBytes());
+        assertTrue(monitor.getArrayBytes() >= 16 + 4 * 10);
+    }
+
+    @Test
+    public void testEstimate() {
+        assertEquals(16, ExecutorMonitor.estimate(1.5));
+        assertEquals(43, ExecutorMonitor.estimate("ABC"));
+        assertEquals(16 + 8 + 16 + (16 + 4 + 16), ExecutorMonitor.estimate(new Object[] {7, new Object[] {2.0}}));
+    }
+
+    @Test
+    public void testRegisterReplacesEarlierExecutor() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ExecutorMonitor.OBJECT_NAME);
+        Executor first = runIt(List.of("10 X=1"));
+        Executor second = runIt(List.of("10 X=1", "20 Y=2"));
+        try {
+            ExecutorMonitor.register(first);
+            ExecutorMonitor.register(second);
+            assertEquals(2L, server.getAttribute(name, "StatementsExecuted"));
+            assertEquals("END_OF_PROGRAM", server.getAttribute(name, "RunStatus"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
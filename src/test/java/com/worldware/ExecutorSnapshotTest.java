@@ -0,0 +1,89 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.util.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutorSnapshotTest extends TestCaseBase {
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private static final List<String> LISTING = Arrays.asList(
+        "100 DIM A(5), B$(2,2)",
+        "110 DATA 7,8,9",
+        "120 READ X",
+        "130 FOR I=1 TO 5",
+        "140 A(I)=I*I : B$(1,2)=\"HI\"",
+        "150 GOSUB 500",
+        "160 NEXT I",
+        "170 READ Y",
+        "180 END",
+        "500 S=S+I : RETURN"
+    );
+
+    @Test
+    public void testRestoreResumesFromBreakpoint() throws Exception {
+        Program program = BasicLoader.tokenize(LISTING);
+        Executor first = new Executor(program);
+        first.putSymbol("S", 0);
+        List<int[]> bps = new ArrayList<>();
+        bps.add(new int[]{500, 0});
+        assertEquals(RunStatus.BREAK_CODE, first.runProgram(bps, null, false));
+
+        byte[] snap = first.snapshot();
+
+        Executor second = new Executor(program);
+        second.restore(snap);
+        assertEquals(first.getCurrentLocation(), second.getCurrentLocation());
+        assertEquals(1, second.getGosubStack().size());
+        assertEquals(1, second.getForStack().size());
+
+        assertEquals(RunStatus.END_CMD, second.runProgram());
+        assertEquals(RunStatus.END_CMD, first.runProgram());
+        assertValue(second, "S", first.getSymbol("S"));
+        assertValue(second, "X", 7);
+        assertValue(second, "Y", 8);
+
+        Object[] a = (Object[]) second.getSymbol("ARRAY:A");
+        assertArrayEquals((Object[]) first.getSymbol("ARRAY:A"), a);
+        Object[] row = (Object[]) ((Object[]) second.getSymbol("ARRAY:B$"))[0];
+        assertEquals("HI", row[1]);
+    }
+
+    @Test
+    public void testRejectsSnapshotOfOtherProgram() throws Exception {
+        Executor first = new Executor(BasicLoader.tokenize(LISTING));
+        byte[] snap = first.snapshot();
+        Executor other = new Executor(BasicLoader.tokenize(Arrays.asList("100 PRINT 1")));
+        assertThrows(IOException.class, () -> other.restore(snap));
+    }
+
+    @Test
+    public void testRejectsGarbage() throws Exception {
+        Executor ex = new Executor(BasicLoader.tokenize(LISTING));
+        assertThrows(IOException.class, () -> ex.restore(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    @Test
+    public void testSnapshotCapturesRandomState() throws Exception {
+        Program program = BasicLoader.tokenize(Arrays.asList(
+            "100 A=RND(1)",
+            "110 B=RND(1)"
+        ));
+        Executor first = new Executor(program);
+        first.setSeed(7);
+        first.runProgram(null, null, true);
+        byte[] snap = first.snapshot();
+        first.runProgram();
+
+        Executor second = new Executor(program);
+        second.restore(snap);
+        second.runProgram();
+        assertValue(second, "B", first.getSymbol("B"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.util.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InputScriptTest extends TestCaseBase {
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    @Test
+    public void testParseLine() {
+        InputScript.Record record = InputScript.parseLine(" 3 , 4.5,abc");
+        assertEquals(3, record.size());
+        assertEquals(3, record.numberAt(0));
+        assertEquals(4.5, record.numberAt(1));
+        assertEquals(0, record.numberAt(2));
+        assertEquals("ABC", record.textAt(2));
+    }
+
+    @Test
+    public void testScriptedInputWithoutPrompts() throws Exception {
+        Program program = BasicLoader.tokenize(Arrays.asList(
+            "100 INPUT \"COURSE\"; C",
+            "110 INPUT W, N$",
+            "120 INPUT Z",
+            "130 PRINT C+W"
+        ));
+        Executor executor = new Executor(program);
+        InputScript script = InputScript.fromLines(List.of("2", "1.5,yes"));
+        executor.setInputScript(script, false);
+        executor.runProgram();
+
+        assertValue(executor, "C", 2);
+        assertValue(executor, "W", 1.5);
+        assertValue(executor, "N$", "YES");
+        assertValue(executor, "Z", 0); // script exhausted reads as empty input
+        assertEquals(0, script.remaining());
+        assertEquals(" 3.5 " + System.lineSeparator(), getCapturedOutput());
+    }
+
+    @Test
+    public void testScriptedInputEchoesPromptsWhenAsked() throws Exception {
+        Program program = BasicLoader.tokenize(Arrays.asList("100 INPUT \"COURSE\"; C"));
+        Executor executor = new Executor(program);
+        executor.setInputScript(InputScript.fromLines(List.of("4")), true);
+        executor.runProgram();
+        assertEquals("COURSE? ", getCapturedOutput());
+        assertValue(executor, "C", 4);
+    }
+}
@@ -0,0 +1,80 @@
+package com.worldware;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InterpreterEventsTest extends TestCaseBase {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private List<RecordedEvent> record(Path program) throws Exception {
+        Path file = tempDir.resolve("run.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : List.of("ProgramLoad", "Gosub", "Return", "RunError")) {
+                recording.enable("com.worldware." + name);
+            }
+            recording.start();
+            Executor executor = new Executor(BasicLoader.load(program, false));
+            assertThrows(BasicRuntimeError.class, executor::runProgram);
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().startsWith("com.worldware."))
+                .collect(Collectors.toList());
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals("com.worldware." + name)).toList();
+    }
+
+    @Test
+    public void testLoadSubroutineAndErrorEvents() throws Exception {
+        Path program = tempDir.resolve("prog.bas");
+        Files.writeString(program, String.join("\n",
+                "10 GOSUB 100",
+                "20 ON 1 GOSUB 200",
+                "30 PRINT Q",
+                "100 GOSUB 200:RETURN",
+                "200 RETURN",
+                ""));
+        List<RecordedEvent> events = record(program);
+
+        List<RecordedEvent> loads = named(events, "ProgramLoad");
+        assertEquals(1, loads.size());
+        assertEquals(5, loads.get(0).getInt("lines"));
+        assertTrue(loads.get(0).getString("file").endsWith("prog.bas"));
+
+        List<RecordedEvent> gosubs = named(events, "Gosub");
+        assertEquals(List.of(10, 100, 20), gosubs.stream().map(e -> e.getInt("line")).toList());
+        assertEquals(List.of(100, 200, 200), gosubs.stream().map(e -> e.getInt("targetLine")).toList());
+        assertEquals(List.of(1, 2, 1), gosubs.stream().map(e -> e.getInt("depth")).toList());
+
+        List<RecordedEvent> returns = named(events, "Return");
+        assertEquals(List.of(200, 100, 200), returns.stream().map(e -> e.getInt("line")).toList());
+        assertEquals(List.of(100, 20, 30), returns.stream().map(e -> e.getInt("returnLine")).toList());
+        assertEquals(List.of(2, 1, 1), returns.stream().map(e -> e.getInt("depth")).toList());
+
+        List<RecordedEvent> errors = named(events, "RunError");
+        assertEquals(1, errors.size());
+        assertEquals(30, errors.get(0).getInt("line"));
+        assertEquals("END_ERROR_RUNTIME", errors.get(0).getString("status"));
+    }
+}
@@ -0,0 +1,104 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LazyLoadTest extends TestCaseBase {
+
+    // Statement splitting corner cases: THEN clauses, strings, comments, empty parts
+    private static final List<String> TRICKY = List.of(
+            "10 PRINT \"A:B\":X=1",
+            "20 IF X THEN PRINT 1:PRINT 2 ELSE PRINT 3",
+            "30 rem a comment: with colons",
+            "40 A=1::B=2:  ",
+            "50 PRINT ATHENS:B=2",
+            "60 PRINT \"THEN\":C=3",
+            "70X=5:REM :: PRINT",
+            "80",
+            "90 DATA 1,\"X:Y\",3:REM TRAILING",
+            "100 DEF FNA(X)=X*2:PRINT FNA(2)"
+    );
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private static Program index(List<String> listing) throws BasicSyntaxError {
+        return BasicLoader.index(String.join("\n", listing) + "\n");
+    }
+
+    @Test
+    public void testIndexedLinesMatchTokenized() throws Exception {
+        Program eager = BasicLoader.tokenize(TRICKY);
+        Program lazy = index(TRICKY);
+        assertEquals(eager.size(), lazy.size());
+        assertArrayEquals(eager.getStatementStarts(), lazy.getStatementStarts());
+        for (int i = 0; i < eager.size(); i++) {
+            ProgramLine expected = eager.getLine(i);
+            ProgramLine line = lazy.getLine(i);
+            assertEquals(expected.getLine(), line.getLine());
+            assertEquals(expected.getSource(), line.getSource());
+            assertEquals(expected.getStmts().toString(), line.getStmts().toString());
+        }
+    }
+
+    @Test
+    public void testLinesAreParsedWhenReached() throws Exception {
+        Program program = index(List.of(
+                "10 READ A",
+                "20 GOTO 50",
+                "30 PRINT \"NEVER\"",
+                "40 DATA 7",
+                "50 PRINT A"
+        ));
+        assertTrue(program.getLine(3).isParsed()); // DATA is pooled up front
+        for (int i : new int[]{0, 1, 2, 4}) {
+            assertFalse(program.getLine(i).isParsed());
+        }
+        Executor executor = new Executor(program);
+        assertFalse(program.getLine(0).isParsed());
+
+        executor.runProgram();
+        assertEquals("7" + System.lineSeparator(), getCapturedOutput().replace(" ", ""));
+        assertTrue(program.getLine(0).isParsed());
+        assertTrue(program.getLine(4).isParsed());
+        assertFalse(program.getLine(2).isParsed());
+    }
+
+    @Test
+    public void testSyntaxErrorReportedWhenRun() throws Exception {
+        List<String> listing = List.of(
+                "10 X=1",
+                "20 IF X=1 THEN 40",
+                "30 DEF X",
+                "40 X=2:INPUT",
+                "50 END"
+        );
+        assertThrows(BasicSyntaxError.class, () -> BasicLoader.tokenize(listing));
+        Executor executor = new Executor(index(listing));
+        BasicSyntaxError error = assertThrows(BasicSyntaxError.class, executor::runProgram);
+        assertEquals(Integer.valueOf(40), error.getLineNumber());
+        assertEquals(2, executor.getSymbol("X"));
+    }
+
+    @Test
+    public void testLineNumbersCheckedWhenIndexing() {
+        BasicSyntaxError error = assertThrows(BasicSyntaxError.class, () -> index(List.of("10 A=1", "PRINT A")));
+        assertEquals("Invalid line format: PRINT A", error.getMessage());
+        error = assertThrows(BasicSyntaxError.class, () -> index(List.of("10 A=1", "10 B=1")));
+        assertEquals("Duplicate line number: 10", error.getMessage());
+    }
+
+    @Test
+    public void testLineEndings() throws Exception {
+        Program program = BasicLoader.index("20 B=2\r\n  \r10 A=1\r30 C=3");
+        assertEquals(3, program.size());
+        assertEquals("10 A=1", program.getLine(0).getSource());
+        assertEquals("30 C=3", program.getLine(2).getSource());
+    }
+}
@@ -0,0 +1,95 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OptimizerTest extends TestCaseBase {
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private static Optimizer.Report analyze(List<String> listing) throws Exception {
+        return Optimizer.analyze(BasicLoader.tokenize(listing));
+    }
+
+    @Test
+    public void testConstantsFolded() throws Exception {
+        Optimizer.Report report = analyze(List.of(
+                "10 FOR I=1 TO 8*8:NEXT I",
+                "20 X=3.14159/180:Y=X*(2+3)-SQR(4)",
+                "30 PRINT \"A\";LEN(\"AB\")*2;RND(1)*2;-5"
+        ));
+        assertEquals(List.of(
+                new Optimizer.Fold(10, "8*8", "64"),
+                new Optimizer.Fold(20, "3.14159/180", String.valueOf(3.14159 / 180)),
+                new Optimizer.Fold(20, "X*(2+3)-SQR(4)", "(X*5)-2.0"),
+                new Optimizer.Fold(30, "LEN(\"AB\")*2", "4")
+        ), report.folds());
+    }
+
+    @Test
+    public void testFoldedValuesMatchEvaluation() {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(new java.util.HashMap<>());
+        for (String expression : List.of("8*8", "2^0.5", "7/2", "-(3-5)", "INT(-2.5)", "STR$(12)+\"X\"",
+                "MID$(\"HELLO\",2,3)", "1<2 AND 3", "2147483647+1", "10/0")) {
+            CompiledExpression compiled = ExpressionEvaluator.compile(expression, TypeInference.NONE);
+            assertTrue(compiled instanceof CompiledExpression.Constant, expression);
+            assertEquals(evaluator.evaluate(expression), BasicString.export(compiled.evaluate(evaluator)), expression);
+        }
+        // Never folded: RND changes, LOG(0) must fail only when it runs
+        assertFalse(ExpressionEvaluator.compile("RND(1)", TypeInference.NONE) instanceof CompiledExpression.Constant);
+        assertFalse(ExpressionEvaluator.compile("LOG(0)", TypeInference.NONE) instanceof CompiledExpression.Constant);
+    }
+
+    @Test
+    public void testUnreachableLines() throws Exception {
+        Optimizer.Report report = analyze(List.of(
+                "10 GOSUB 100",
+                "20 IF 1>2 THEN 200",
+                "30 IF A=1 THEN 300 ELSE GOTO 40",
+                "40 B=1:GOTO 60:C=2",
+                "50 PRINT \"SKIPPED\"",
+                "60 END",
+                "70 PRINT \"AFTER END\"",
+                "100 RETURN",
+                "200 PRINT \"CONSTANT FALSE\"",
+                "300 ON B GOTO 60,310",
+                "310 STOP"
+        ));
+        assertEquals(List.of(50, 70, 200), report.unreachableLines());
+        assertEquals(4, report.unreachableStatements());
+    }
+
+    @Test
+    public void testComputedJumpReachesEverything() throws Exception {
+        Optimizer.Report report = analyze(List.of(
+                "10 L=30:GOTO L",
+                "20 END",
+                "30 PRINT 1"
+        ));
+        assertTrue(report.unreachableLines().isEmpty());
+        assertEquals(0, report.unreachableStatements());
+    }
+
+    @Test
+    public void testConstantFalseIfReachesElse() throws Exception {
+        Optimizer.Report report = analyze(List.of(
+                "10 IF 0 THEN 30 ELSE 40",
+                "20 END",
+                "30 PRINT 1",
+                "40 PRINT 2"
+        ));
+        assertEquals(List.of(20, 30), report.unreachableLines());
+    }
+
+    @Test
+    public void testFoldingDoesNotHideRuntimeErrors() {
+        assertThrows(RuntimeException.class, () -> runIt(List.of("10 A=1", "20 B=LOG(0)")));
+    }
+}
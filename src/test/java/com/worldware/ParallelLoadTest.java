@@ -0,0 +1,76 @@
+package com.worldware;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelLoadTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Numbered lines well past PARALLEL_THRESHOLD, in reverse order, with mixed
+     * line endings, blank lines and non-ASCII text
+     */
+    private static String bigSource(int lines) {
+        StringBuilder text = new StringBuilder();
+        for (int i = lines; i >= 1; i--) {
+            text.append(i * 10).append(" A").append(i % 7).append("=A").append(i % 7)
+                    .append("+1:PRINT \"Zürich ").append(i).append(":\";");
+            text.append(i % 3 == 0 ? "\r\n" : i % 5 == 0 ? "\n\n" : "\n");
+        }
+        return text.toString();
+    }
+
+    private static Program parallel(String source) throws Exception {
+        return BasicLoader.tokenize(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)), new ForkJoinPool(4));
+    }
+
+    @Test
+    public void testParallelLoadMatchesSequential() throws Exception {
+        String source = bigSource(12000);
+        assertTrue(source.length() > BasicLoader.PARALLEL_THRESHOLD);
+        Path file = tempDir.resolve("big.bas");
+        Files.writeString(file, source);
+
+        Program expected = BasicLoader.tokenize(Files.readAllLines(file));
+        Program loaded = BasicLoader.load(file);
+        assertEquals(expected.size(), loaded.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getLine(i), loaded.getLine(i));
+        }
+        assertEquals(10, loaded.getLine(0).getLine());
+        assertEquals("\"Zürich 1:\";", loaded.getLine(0).getStmts().get(1).getArgs());
+    }
+
+    @Test
+    public void testFirstErrorInFileOrderIsReported() throws Exception {
+        String source = bigSource(12000);
+        // A duplicate near the end and a bad line after it in a later chunk
+        String duplicate = source + "100 REM AGAIN\nNOT A LINE\n";
+        BasicSyntaxError error = assertThrows(BasicSyntaxError.class, () -> parallel(duplicate));
+        assertEquals("Duplicate line number: 100", error.getMessage());
+
+        // A bad line in an early chunk wins over a duplicate in a later one
+        String bad = "NOT A LINE\n" + duplicate;
+        error = assertThrows(BasicSyntaxError.class, () -> parallel(bad));
+        assertEquals("Invalid line format: NOT A LINE", error.getMessage());
+    }
+
+    @Test
+    public void testSmallFilesLoadSequentially() throws Exception {
+        Path file = tempDir.resolve("small.bas");
+        Files.writeString(file, "20 END\r\n10 PRINT 1\n");
+        Program program = BasicLoader.load(file);
+        assertEquals(2, program.size());
+        assertEquals(10, program.getLine(0).getLine());
+    }
+}
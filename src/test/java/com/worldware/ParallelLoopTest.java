@@ -0,0 +1,156 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelLoopTest extends TestCaseBase {
+
+    // Four workers however many cores there are, where the common pool may
+    // have one; its threads are daemons, so it needs no shutdown
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private Executor load(int parallelIterations, String... lines) throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(List.of(lines)));
+        executor.setParallelIterations(parallelIterations);
+        executor.setParallelPool(POOL);
+        return executor;
+    }
+
+    private Executor run(int parallelIterations, String... lines) throws Exception {
+        Executor executor = load(parallelIterations, lines);
+        assertEquals(RunStatus.END_CMD, executor.runProgram());
+        return executor;
+    }
+
+    /**
+     * Run the program sequentially and with loops of 16 iterations or more in
+     * parallel, and check that both leave the same symbols behind and that
+     * the given number of loops ran in parallel
+     */
+    private Executor runBoth(int parallelLoops, String... lines) throws Exception {
+        Executor sequential = run(0, lines);
+        String output = getCapturedOutput();
+        outputCapture.reset();
+        Executor parallel = run(16, lines);
+        assertEquals(0, sequential.parallelLoopsRun());
+        assertEquals(parallelLoops, parallel.parallelLoopsRun());
+        assertEquals(output, getCapturedOutput());
+        assertEquals(sequential.getStatementCount(), parallel.getStatementCount());
+        assertEquals(sequential.symbolTable().keySet(), parallel.symbolTable().keySet());
+        for (String name : sequential.symbolTable().keySet()) {
+            Object expected = sequential.symbolTable().get(name);
+            Object actual = parallel.symbolTable().get(name);
+            if (expected instanceof Object[] array) {
+                assertArrayEquals(array, (Object[]) actual);
+            } else {
+                assertEquals(expected, actual, name);
+            }
+        }
+        assertEquals(sequential.getForStack(), parallel.getForStack());
+        return parallel;
+    }
+
+    @Test
+    public void testIndependentLoop() throws Exception {
+        Executor executor = runBoth(2,
+                "10 DIM A(5000),B(5000),C(5000):K=3",
+                "20 FOR I=1 TO 5000:B(I)=I*2:NEXT I",
+                "30 FOR I=1 TO 5000",
+                "40 A(I)=SQR(I)*K+B(I):REM SCALE",
+                "50 C(I)=B(5001-I)-INT(I/7)",
+                "60 NEXT I",
+                "70 PRINT A(1);C(5000);I",
+                "80 END");
+        assertValue(executor, "I", 5000.0);
+    }
+
+    @Test
+    public void testStepAndBounds() throws Exception {
+        runBoth(2,
+                "10 DIM A(1000)",
+                "20 FOR J=999 TO 2 STEP -3:A(J)=J*J:NEXT J",
+                "30 FOR J=1 TO 1000 STEP 7:A(J)=-J:NEXT J",
+                "40 FOR J=5 TO 1:A(J)=1:NEXT J",
+                "50 END");
+    }
+
+    @Test
+    public void testDependentLoopsRunSequentially() throws Exception {
+        // Reading the array written, another statement, a jump out, and a name
+        // that is a user function each keep the loop sequential
+        runBoth(0,
+                "10 DIM A(100),B(100):A(1)=1:N=0",
+                "20 FOR I=2 TO 100:A(I)=A(I-1)+I:NEXT I",
+                "30 FOR I=1 TO 100:B(I)=I:N=N+1:NEXT I",
+                "40 FOR I=1 TO 100:B(I)=RND(1)*0:NEXT I",
+                "50 FOR I=1 TO 100:B(I)=I:IF I=50 THEN 70",
+                "60 NEXT I",
+                "70 DEF FNA(X)=X*N",
+                "80 FOR I=1 TO 100:B(I)=FNA(I):NEXT I",
+                "90 END");
+    }
+
+    @Test
+    public void testFallsBackWhenValuesDoNotAllow() throws Exception {
+        // Past the end of the array: the sequential loop gets the error
+        Executor executor = load(16,
+                "10 DIM A(50)",
+                "20 FOR I=1 TO 60:A(I)=I:NEXT I",
+                "30 END");
+        assertThrows(BasicSyntaxError.class, executor::runProgram);
+        assertValue(executor, "I", 51.0);
+        assertEquals(50.0, ((Object[]) executor.symbolTable().get("ARRAY:A"))[49]);
+
+        // Fractional steps and a loop cut short by the turn's budget
+        runBoth(0,
+                "10 DIM A(100):S=0.5",
+                "20 FOR I=1 TO 50 STEP S:A(I)=I:NEXT I",
+                "30 END");
+        Executor yielding = load(16,
+                "10 DIM A(100)",
+                "20 FOR I=1 TO 100:A(I)=I:NEXT I",
+                "30 END");
+        assertEquals(RunStatus.YIELD, yielding.runProgram(50L));
+        assertEquals(50, yielding.getStatementCount());
+        assertEquals(RunStatus.END_CMD, yielding.runProgram());
+        assertEquals(203, yielding.getStatementCount());
+        assertEquals(0, yielding.parallelLoopsRun());
+
+        // A pool of one worker has nothing to split the loop among
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            Executor alone = load(16,
+                    "10 DIM A(100)",
+                    "20 FOR I=1 TO 100:A(I)=I:NEXT I",
+                    "30 END");
+            alone.setParallelPool(single);
+            assertEquals(RunStatus.END_CMD, alone.runProgram());
+            assertEquals(0, alone.parallelLoopsRun());
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void testReentryAndRerun() throws Exception {
+        Executor executor = runBoth(5,
+                "10 DIM A(100):N=0",
+                "20 FOR I=1 TO 100:A(I)=I+N:NEXT I",
+                "30 N=N+1:IF N<3 THEN 20",
+                "40 FOR K=1 TO 2",
+                "50 FOR I=1 TO 100:A(I)=I*K:NEXT I",
+                "60 NEXT K",
+                "70 END");
+        assertValue(executor, "N", 3);
+    }
+}
@@ -0,0 +1,151 @@
+package com.worldware;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProgramCacheTest {
+
+    private static final String SOURCE = String.join("\n",
+            "10 DIM A(10):DATA 1,2,3",
+            "20 FOR I=1 TO 3:READ X:A(I)=X:NEXT I",
+            "30 IF A(1)=1 THEN PRINT \"ONE\":GOTO 50 ELSE PRINT \"OTHER\"",
+            "40 IF I>3 THEN 60",
+            "50 DEF FNA(X)=X*2:INPUT N",
+            "60 T$=\"Zürich\":N=N+1:PRINT T$;FNA(N)",
+            "");
+
+    @TempDir
+    Path tempDir;
+
+    private Path write(String name, String text) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.writeString(file, text);
+        return file;
+    }
+
+    private List<Path> entries(ProgramCache cache) throws Exception {
+        if (!Files.isDirectory(cache.directory())) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(cache.directory())) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    public void testHitMatchesParsedProgram() throws Exception {
+        Path file = write("prog.bas", SOURCE);
+        ProgramCache cache = new ProgramCache(tempDir.resolve("cache"), 0);
+
+        Program parsed = cache.load(file, false);
+        assertEquals(1, entries(cache).size());
+        Path entry = entries(cache).get(0);
+        assertTrue(entry.getFileName().toString().endsWith(".tbp"));
+
+        Program cached = ProgramCache.read(entry, ProgramCache.key(Files.readAllBytes(file)));
+        assertNotNull(cached);
+        assertEquals(parsed.size(), cached.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            ProgramLine expected = parsed.getLine(i);
+            ProgramLine actual = cached.getLine(i);
+            assertEquals(expected, actual);
+            for (int s = 0; s < expected.getStmts().size(); s++) {
+                assertSame(expected.getStmts().get(s).getClass(), actual.getStmts().get(s).getClass());
+            }
+        }
+        assertFalse(parsed.getTypes().integerVariables().isEmpty());
+        assertEquals(parsed.getTypes().integerVariables(), cached.getTypes().integerVariables());
+        assertEquals("PRINT \"OTHER\"", ((IfThenElseStatement) cached.getLine(2).getStmts().get(0)).getElseStatements());
+
+        // A second load is served from the entry and writes nothing new
+        assertEquals(parsed.getLine(5), cache.load(file, false).getLine(5));
+        assertEquals(List.of(entry), entries(cache));
+    }
+
+    @Test
+    public void testChangedSourceMisses() throws Exception {
+        Path file = write("prog.bas", SOURCE);
+        ProgramCache cache = new ProgramCache(tempDir.resolve("cache"), 0);
+        cache.load(file, false);
+
+        Files.writeString(file, SOURCE + "70 END\n");
+        Program program = cache.load(file, false);
+        assertEquals(7, program.size());
+        assertEquals(2, entries(cache).size());
+    }
+
+    @Test
+    public void testCorruptEntryFallsBackToSource() throws Exception {
+        Path file = write("prog.bas", SOURCE);
+        ProgramCache cache = new ProgramCache(tempDir.resolve("cache"), 0);
+        cache.load(file, false);
+        Path entry = entries(cache).get(0);
+        byte[] bytes = Files.readAllBytes(entry);
+        Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+
+        byte[] key = ProgramCache.key(Files.readAllBytes(file));
+        assertNull(ProgramCache.read(entry, key));
+        assertEquals(6, cache.load(file, false).size());
+        // Rewritten on the miss
+        assertNotNull(ProgramCache.read(entry, key));
+    }
+
+    @Test
+    public void testLazyLoadDoesNotWrite() throws Exception {
+        Path file = write("prog.bas", SOURCE);
+        ProgramCache cache = new ProgramCache(tempDir.resolve("cache"), 0);
+        Program lazy = cache.load(file, true);
+        assertFalse(lazy.getLine(1).isParsed());
+        assertTrue(entries(cache).isEmpty());
+
+        cache.load(file, false);
+        assertTrue(cache.load(file, true).getLine(1).isParsed());
+    }
+
+    @Test
+    public void testSyntaxErrorIsNotCached() throws Exception {
+        Path file = write("bad.bas", "10 PRINT 1\n10 PRINT 2\n");
+        ProgramCache cache = new ProgramCache(tempDir.resolve("cache"), 0);
+        for (int i = 0; i < 2; i++) {
+            BasicSyntaxError error = assertThrows(BasicSyntaxError.class, () -> cache.load(file, false));
+            assertEquals("Duplicate line number: 10", error.getMessage());
+        }
+        assertTrue(entries(cache).isEmpty());
+    }
+
+    @Test
+    public void testSmallSourceBypassesCache() throws Exception {
+        Path file = write("prog.bas", SOURCE);
+        assertTrue(SOURCE.length() < ProgramCache.MIN_SOURCE_SIZE);
+        ProgramCache cache = new ProgramCache(tempDir.resolve("cache"));
+        assertEquals(6, cache.load(file, false).size());
+        assertTrue(entries(cache).isEmpty());
+    }
+
+    @Test
+    public void testBuildTimeIsNewestClassFile() throws Exception {
+        // An incremental build that rewrote only one class, deep in the tree
+        Path classes = tempDir.resolve("classes");
+        Files.createDirectories(classes.resolve("com/worldware/llvm"));
+        Path parser = Files.writeString(classes.resolve("com/worldware/BasicLoader.class"), "");
+        Path rebuilt = Files.writeString(classes.resolve("com/worldware/llvm/Rebuilt.class"), "");
+        Path notes = Files.writeString(classes.resolve("notes.txt"), "");
+        Files.setLastModifiedTime(parser, FileTime.fromMillis(1_000_000));
+        Files.setLastModifiedTime(rebuilt, FileTime.fromMillis(2_000_000));
+        Files.setLastModifiedTime(notes, FileTime.fromMillis(3_000_000));
+        assertEquals(2_000_000, ProgramCache.buildTime(classes));
+
+        // A jar is rewritten whole, so its own time is the build's
+        Files.setLastModifiedTime(notes, FileTime.fromMillis(4_000_000));
+        assertEquals(4_000_000, ProgramCache.buildTime(notes));
+    }
+}
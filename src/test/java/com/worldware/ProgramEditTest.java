@@ -0,0 +1,81 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProgramEditTest extends TestCaseBase {
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private static List<Integer> lineNumbers(Program program) {
+        List<Integer> numbers = new ArrayList<>();
+        for (ProgramLine line : program) numbers.add(line.getLine());
+        return numbers;
+    }
+
+    @Test
+    public void testInsertReplaceDelete() throws Exception {
+        Program program = BasicLoader.tokenize(List.of("100 A=1", "300 C=3"));
+        assertFalse(program.insertOrReplaceLine(BasicLoader.tokenizeLine("200 B=2")));
+        assertTrue(program.insertOrReplaceLine(BasicLoader.tokenizeLine("300 C=33")));
+        assertFalse(program.insertOrReplaceLine(BasicLoader.tokenizeLine("50 REM START")));
+        assertEquals(List.of(50, 100, 200, 300), lineNumbers(program));
+        assertEquals(2, program.findLineIndex(200));
+        assertEquals("300 C=33", program.getLine(3).getSource());
+
+        assertTrue(program.deleteLine(100));
+        assertFalse(program.deleteLine(100));
+        assertEquals(List.of(50, 200, 300), lineNumbers(program));
+        assertEquals(1, program.findLineIndex(200));
+        assertThrows(BasicSyntaxError.class, () -> program.findLineIndex(100));
+        assertTrue(program.hasLine(300));
+    }
+
+    @Test
+    public void testDerivedDataFollowsEdits() throws Exception {
+        Program program = BasicLoader.tokenize(List.of("100 READ A", "200 DATA 1"));
+        assertEquals(1, program.getDataPool().size());
+        program.insertOrReplaceLine(BasicLoader.tokenizeLine("150 DATA 7,8"));
+        assertEquals(3, program.getDataPool().size());
+        assertEquals(7, program.getDataPool().get(0));
+        assertArrayEquals(new int[]{0, 1, 2, 3}, program.getStatementStarts());
+
+        Executor executor = new Executor(program);
+        executor.runProgram();
+        assertEquals(7, executor.getSymbol("A"));
+    }
+
+    @Test
+    public void testPastingLargeProgramInReverse() throws Exception {
+        Program program = new Program(new ArrayList<>());
+        int count = 20000;
+        for (int n = count; n >= 1; n--) {
+            program.insertOrReplaceLine(BasicLoader.tokenizeLine(n + " X=" + n));
+        }
+        assertEquals(count, program.size());
+        assertEquals(0, program.findLineIndex(1));
+        assertEquals(count - 1, program.findLineIndex(count));
+        assertEquals(2, program.getLine(1).getLine());
+    }
+
+    @Test
+    public void testShellLineEntry() {
+        BasicShell shell = new BasicShell();
+        assertTrue(shell.enterLine("20 B=A+1"));
+        assertTrue(shell.enterLine("10 A=1"));
+        assertTrue(shell.enterLine("30 C=9"));
+        assertTrue(shell.enterLine("30"));
+        assertFalse(shell.enterLine("40"));
+        assertFalse(shell.enterLine("99999999999 A=1"));
+        Program program = shell.getExecutor().getProgram();
+        assertEquals(List.of(10, 20), lineNumbers(program));
+    }
+}
@@ -0,0 +1,139 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QuotaTest extends TestCaseBase {
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private Executor load(Executor.Quotas quotas, String... lines) throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(List.of(lines)));
+        executor.setQuotas(quotas);
+        return executor;
+    }
+
+    private BasicQuotaError runOver(Executor executor, BasicQuotaError.Quota quota) {
+        BasicQuotaError error = assertThrows(BasicQuotaError.class, executor::runProgram);
+        assertEquals(quota, error.getQuota());
+        assertEquals(RunStatus.END_ERROR_QUOTA, executor.getRunStatus());
+        return error;
+    }
+
+    @Test
+    public void testStackDepth() throws Exception {
+        Executor executor = load(Executor.Quotas.UNLIMITED.withStackDepth(50),
+                "10 FOR I=1 TO 2",
+                "20 GOSUB 20",
+                "30 END");
+        BasicQuotaError error = runOver(executor, BasicQuotaError.Quota.STACK_DEPTH);
+        assertEquals(Integer.valueOf(20), error.getLineNumber());
+        assertEquals(1, executor.getForStack().size());
+        assertEquals(49, executor.getGosubStack().size());
+    }
+
+    @Test
+    public void testArrayElementsCheckedBeforeAllocating() throws Exception {
+        Executor executor = load(Executor.Quotas.UNLIMITED.withArrayElements(1000),
+                "10 DIM A(10,20),B$(5)",
+                "20 DIM A(30)",
+                "30 DIM C(100000,100000)");
+        runOver(executor, BasicQuotaError.Quota.ARRAY_ELEMENTS);
+        // A re-DIM gives back the old array's elements
+        assertEquals(35, executor.arrayElementsUsed());
+        assertNull(executor.symbolTable().get("ARRAY:C"));
+    }
+
+    @Test
+    public void testStringBytes() throws Exception {
+        Executor executor = load(Executor.Quotas.UNLIMITED.withStringBytes(100),
+                "10 DIM N$(3):N$(1)=\"ABCDEFGHIJ\":B$=\"0123456789\":A$=\"\"",
+                "20 A$=A$+\"X\":A$=A$+\"Y\":B$=\"\"",
+                "30 IF LEN(A$)<200 THEN 20");
+        runOver(executor, BasicQuotaError.Quota.STRING_BYTES);
+        assertEquals(91, executor.getSymbol("A$").toString().length());
+        assertEquals(101, executor.stringBytesUsed());
+    }
+
+    @Test
+    public void testClearGivesBackUsage() throws Exception {
+        Executor executor = load(Executor.Quotas.UNLIMITED.withArrayElements(15).withStringBytes(6),
+                "10 DIM A(10):A$=\"ABCDEF\"",
+                "20 CLEAR",
+                "30 DIM B(10):B$=\"GHIJKL\"");
+        assertEquals(RunStatus.END_OF_PROGRAM, executor.runProgram());
+        assertEquals(10, executor.arrayElementsUsed());
+        assertEquals(6, executor.stringBytesUsed());
+    }
+
+    @Test
+    public void testExistingSymbolsCountWhenQuotasAreSet() throws Exception {
+        Executor executor = load(null, "10 DIM A$(4):A$(2)=\"ABC\":B$=\"DE\"", "20 C$=\"F\"");
+        assertEquals(RunStatus.YIELD, executor.runProgram(3L));
+        executor.setQuotas(Executor.Quotas.UNLIMITED.withStringBytes(5));
+        assertEquals(4, executor.arrayElementsUsed());
+        assertEquals(5, executor.stringBytesUsed());
+        runOver(executor, BasicQuotaError.Quota.STRING_BYTES);
+    }
+
+    @Test
+    public void testStatementsExact() throws Exception {
+        for (int threshold : new int[] {0, 3}) {
+            Executor executor = load(Executor.Quotas.UNLIMITED.withStatements(1000),
+                    "10 N=0",
+                    "20 N=N+1",
+                    "30 GOTO 20");
+            executor.setHotThreshold(threshold);
+            runOver(executor, BasicQuotaError.Quota.STATEMENTS);
+            assertEquals(1000, executor.getStatementCount());
+            assertValue(executor, "N", 500);
+        }
+    }
+
+    @Test
+    public void testStatementsWithBudgets() throws Exception {
+        Executor executor = load(Executor.Quotas.UNLIMITED.withStatements(250),
+                "10 N=0",
+                "20 N=N+1",
+                "30 GOTO 20");
+        executor.setHotThreshold(3);
+        for (int turn = 0; turn < 3; turn++) {
+            assertEquals(RunStatus.YIELD, executor.runProgram(80L));
+        }
+        assertEquals(240, executor.getStatementCount());
+        BasicQuotaError error = assertThrows(BasicQuotaError.class, () -> executor.runProgram(80L));
+        assertEquals(BasicQuotaError.Quota.STATEMENTS, error.getQuota());
+        assertEquals(250, executor.getStatementCount());
+    }
+
+    @Test
+    public void testWallTime() throws Exception {
+        Executor executor = load(Executor.Quotas.UNLIMITED.withWallTime(Duration.ofMillis(50)),
+                "10 GOTO 10");
+        long start = System.nanoTime();
+        runOver(executor, BasicQuotaError.Quota.WALL_TIME);
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+        assertTrue(executor.getStatementCount() > 0);
+    }
+
+    @Test
+    public void testWithinQuotas() throws Exception {
+        Executor executor = load(new Executor.Quotas(10, 100, 100, 10_000, Duration.ofMinutes(1)),
+                "10 DIM A(50):S$=\"\"",
+                "20 FOR I=1 TO 50:A(I)=I:GOSUB 100:NEXT I",
+                "30 PRINT S$",
+                "40 END",
+                "100 S$=LEFT$(S$+STR$(I),80):RETURN");
+        assertEquals(RunStatus.END_CMD, executor.runProgram());
+        assertEquals(50, executor.arrayElementsUsed());
+        assertThrows(IllegalArgumentException.class, () -> Executor.Quotas.UNLIMITED.withStatements(-1));
+    }
+}
@@ -86,4 +86,72 @@ public class ReadDataTest extends TestCaseBase {
             runIt(listing);
         });
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void testReadBeforeData() throws Exception {
+        List<String> listing = Arrays.asList(
+            "100 READ A,B$",
+            "110 END",
+            "120 DATA 5,\"X\""
+        );
+        Executor executor = runIt(listing);
+        assertEquals(5, executor.getSymbol("A"));
+        assertEquals("X", executor.getSymbol("B$"));
+    }
+
+    @Test
+    public void testRestoreLine() throws Exception {
+        List<String> listing = Arrays.asList(
+            "100 DATA 1,2",
+            "110 DATA 3,4",
+            "120 READ A,B,C",
+            "130 RESTORE 110",
+            "140 READ D"
+        );
+        Executor executor = runIt(listing);
+        assertEquals(3, executor.getSymbol("C"));
+        assertEquals(3, executor.getSymbol("D"));
+    }
+
+    @Test
+    public void testRestoreLineBetweenDataLines() throws Exception {
+        List<String> listing = Arrays.asList(
+            "100 DATA 1",
+            "110 READ A",
+            "120 RESTORE 110",
+            "130 READ B",
+            "140 DATA 2"
+        );
+        Executor executor = runIt(listing);
+        assertEquals(1, executor.getSymbol("A"));
+        assertEquals(2, executor.getSymbol("B"));
+    }
+
+    @Test
+    public void testDataInLoopDoesNotRepeatValues() throws Exception {
+        List<String> listing = Arrays.asList(
+            "100 FOR I=1 TO 3",
+            "110 DATA 7",
+            "120 NEXT I",
+            "130 READ A,B"
+        );
+        assertThrows(BasicRuntimeError.class, () -> runIt(listing));
+    }
+
+    @Test
+    public void testDataPoolTypes() throws Exception {
+        Program program = BasicLoader.tokenize(Arrays.asList(
+            "100 DATA 1,2.5,\"S\"",
+            "110 PRINT",
+            "120 DATA 4"
+        ));
+        DataPool pool = program.getDataPool();
+        assertEquals(4, pool.size());
+        assertEquals(1, pool.get(0));
+        assertEquals(2.5, pool.get(1));
+        assertEquals("S", pool.get(2));
+        assertEquals(4, pool.get(3));
+        assertEquals(3, pool.offsetForLineIndex(1));
+        assertEquals(3, pool.offsetForLineIndex(2));
+    }
+}
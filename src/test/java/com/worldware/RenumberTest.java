@@ -0,0 +1,100 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RenumberTest extends TestCaseBase {
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private static List<String> renumber(List<String> listing) throws Exception {
+        BasicShell shell = new BasicShell();
+        Program program = BasicLoader.tokenize(listing);
+        BasicShell.LineMapResult map = shell.buildLineMap(program, 100, 10);
+        List<String> sources = new ArrayList<>();
+        for (ProgramLine line : shell.renumber(program, map.lineMap, 100, 10)) {
+            sources.add(line.getSource());
+        }
+        return sources;
+    }
+
+    @Test
+    public void testGotoGosubAndRestore() throws Exception {
+        List<String> result = renumber(List.of(
+                "5 GOSUB 7:GOTO 9",
+                "7 RESTORE 9:RETURN",
+                "9 END"
+        ));
+        assertEquals(List.of(
+                "100 GOSUB 110:GOTO 120",
+                "110 RESTORE 120:RETURN",
+                "120 END"
+        ), result);
+    }
+
+    @Test
+    public void testOnGotoAndGosubLists() throws Exception {
+        List<String> result = renumber(List.of(
+                "1 ON X GOTO 2, 3,4",
+                "2 ON X+1 GOSUB 4,3",
+                "3 REM",
+                "4 RETURN"
+        ));
+        assertEquals("100 ON X GOTO 110, 120,130", result.get(0));
+        assertEquals("110 ON X+1 GOSUB 130,120", result.get(1));
+    }
+
+    @Test
+    public void testIfThenElseClauses() throws Exception {
+        List<String> result = renumber(List.of(
+                "1 IF A=1 THEN 3",
+                "2 IF A=2 THEN GOSUB 3:GOTO 4 ELSE 1",
+                "3 IF A>0 THEN IF B>0 THEN 4 ELSE 1",
+                "4 IF A$=\"GOTO 1:2\" THEN PRINT \"3\":RESTORE 2"
+        ));
+        assertEquals("100 IF A=1 THEN 120", result.get(0));
+        assertEquals("110 IF A=2 THEN GOSUB 120:GOTO 130 ELSE 100", result.get(1));
+        assertEquals("120 IF A>0 THEN IF B>0 THEN 130 ELSE 100", result.get(2));
+        assertEquals("130 IF A$=\"GOTO 1:2\" THEN PRINT \"3\":RESTORE 110", result.get(3));
+    }
+
+    @Test
+    public void testComputedAndMissingTargetsUnchanged() throws Exception {
+        List<String> result = renumber(List.of(
+                "1 GOTO X*2",
+                "2 GOSUB 77",
+                "3 A=10:PRINT 2"
+        ));
+        assertEquals(List.of("100 GOTO X*2", "110 GOSUB 77", "120 A=10:PRINT 2"), result);
+    }
+
+    @Test
+    public void testRenumberedProgramRunsTheSame() throws Exception {
+        List<String> listing = List.of(
+                "10 T=0:K=1",
+                "20 ON K GOSUB 60,70",
+                "30 K=K+1:IF K<3 THEN 20",
+                "40 IF T=3 THEN GOTO 50 ELSE T=-1",
+                "50 END",
+                "60 T=T+1:RETURN",
+                "70 T=T+2:RETURN"
+        );
+        assertEquals(3.0, ((Number) runIt(listing).getSymbol("T")).doubleValue());
+        assertEquals(3.0, ((Number) runIt(renumber(listing)).getSymbol("T")).doubleValue());
+    }
+
+    @Test
+    public void testReferencesAreCachedPerLine() throws Exception {
+        ProgramLine line = BasicLoader.tokenizeLine("10 PRINT 1:GOTO 20");
+        assertSame(line.getLineReferences(), line.getLineReferences());
+        assertTrue(BasicLoader.tokenizeLine("10 PRINT 20").getLineReferences().isEmpty());
+    }
+}
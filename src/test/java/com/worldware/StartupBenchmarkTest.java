@@ -0,0 +1,60 @@
+package com.worldware;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StartupBenchmarkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testMedian() {
+        assertEquals(3, StartupBenchmark.median(new long[] {5, 1, 3}));
+        assertEquals(3, StartupBenchmark.median(new long[] {4, 1, 2, 9}));
+        assertEquals(7, StartupBenchmark.median(new long[] {7}));
+    }
+
+    @Test
+    public void testArchiveOnlyInArchivedCommand() {
+        StartupBenchmark.Arguments arguments = new StartupBenchmark.Arguments();
+        arguments.classpath = "build/libs/trekbasicj.jar";
+        Path archive = Paths.get("build/cds/trekbasic.jsa");
+
+        List<String> plain = StartupBenchmark.command(arguments, "Main", null, tempDir);
+        List<String> archived = StartupBenchmark.command(arguments, "BasicShell", archive, tempDir);
+        assertTrue(plain.stream().noneMatch(arg -> arg.startsWith("-XX:SharedArchiveFile")));
+        assertTrue(archived.contains("-XX:SharedArchiveFile=" + archive.toAbsolutePath()));
+        assertEquals(List.of("-cp", "build/libs/trekbasicj.jar", "com.worldware.Main", "hello.bas"),
+                plain.subList(plain.size() - 4, plain.size()));
+        assertEquals("com.worldware.BasicShell", archived.get(archived.size() - 2));
+    }
+
+    @Test
+    public void testReportHasOneResultPerLine() throws Exception {
+        StartupBenchmark.Arguments arguments = new StartupBenchmark.Arguments();
+        arguments.runs = 3;
+        List<StartupBenchmark.Result> results = List.of(
+                new StartupBenchmark.Result("Main", false, new long[] {300_000_000, 100_000_000, 200_000_000},
+                        new long[] {400_000_000, 400_000_000, 400_000_000}),
+                new StartupBenchmark.Result("Main", true, new long[] {50_000_000, 60_000_000, 70_000_000},
+                        new long[] {90_000_000, 90_000_000, 90_000_000}));
+        Path report = tempDir.resolve("startup.json");
+        StartupBenchmark.writeReport(results, arguments, report);
+
+        List<String> lines = Files.readAllLines(report);
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).contains("\"program\": \"hello.bas\", \"runs\": 3, \"results\": ["));
+        assertEquals("  {\"launcher\": \"Main\", \"archive\": false, \"firstOutputMillis\": 200.000, "
+                + "\"firstOutputMinMillis\": 100.000, \"firstOutputMaxMillis\": 300.000, \"exitMillis\": 400.000},", lines.get(1));
+        assertTrue(lines.get(2).contains("\"archive\": true, \"firstOutputMillis\": 60.000"));
+        assertEquals("]}", lines.get(3));
+    }
+}
@@ -0,0 +1,131 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatementBudgetTest extends TestCaseBase {
+
+    private static final List<String> PROGRAM = List.of(
+            "100 T=0:A$=\"\"",
+            "110 FOR I=1 TO 40",
+            "120 FOR J=1 TO I:T=T+J:NEXT J",
+            "130 IF I/10=INT(I/10) THEN GOSUB 300",
+            "140 NEXT I",
+            "150 PRINT T;LEN(A$)",
+            "160 END",
+            "300 A$=A$+\"*\":PRINT I;",
+            "310 RETURN"
+    );
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private Executor load(List<String> listing, int hotThreshold) throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(listing));
+        executor.setHotThreshold(hotThreshold);
+        return executor;
+    }
+
+    /**
+     * Run to the end in turns of the given budget; the number of turns taken
+     */
+    private static int runInTurns(Executor executor, long budget) throws Exception {
+        int turns = 1;
+        long before = executor.getStatementCount();
+        RunStatus status;
+        while ((status = executor.runProgram(budget)) == RunStatus.YIELD) {
+            assertEquals(budget, executor.getStatementCount() - before);
+            before = executor.getStatementCount();
+            turns++;
+        }
+        assertEquals(RunStatus.END_CMD, status);
+        return turns;
+    }
+
+    @Test
+    public void testTurnsMatchOneRun() throws Exception {
+        for (int threshold : new int[] {0, 3}) {
+            outputCapture.reset();
+            Executor whole = load(PROGRAM, threshold);
+            assertEquals(RunStatus.END_CMD, whole.runProgram());
+            String expected = getCapturedOutput();
+            long statements = whole.getStatementCount();
+
+            for (long budget : new long[] {1, 7, 1000}) {
+                outputCapture.reset();
+                Executor sliced = load(PROGRAM, threshold);
+                int turns = runInTurns(sliced, budget);
+                assertEquals(expected, getCapturedOutput(), "budget " + budget);
+                assertEquals(statements, sliced.getStatementCount());
+                assertEquals(whole.getSymbol("T"), sliced.getSymbol("T"));
+                assertEquals((statements + budget - 1) / budget, turns);
+            }
+        }
+    }
+
+    @Test
+    public void testYieldInsideCompiledRegion() throws Exception {
+        Executor executor = load(PROGRAM, 3);
+        assertEquals(RunStatus.YIELD, executor.runProgram(500));
+        assertNotNull(executor.region(2, 1));
+        assertEquals(500, executor.getStatementCount());
+        // Unbounded after a yield
+        assertEquals(RunStatus.END_CMD, executor.runProgram());
+        assertEquals(11480.0, ((Number) executor.getSymbol("T")).doubleValue());
+    }
+
+    @Test
+    public void testInterleavedExecutors() throws Exception {
+        List<String> counter = List.of(
+                "10 N=0",
+                "20 N=N+1",
+                "30 IF N<50 THEN 20",
+                "40 END");
+        List<Executor> sessions = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            sessions.add(load(i == 1 ? PROGRAM : counter, 3));
+        }
+        List<Executor> running = new ArrayList<>(sessions);
+        while (!running.isEmpty()) {
+            running.removeIf(session -> {
+                try {
+                    return session.runProgram(5) != RunStatus.YIELD;
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            });
+        }
+        assertValue(sessions.get(0), "N", 50);
+        assertValue(sessions.get(2), "N", 50);
+        assertEquals(11480.0, ((Number) sessions.get(1).getSymbol("T")).doubleValue());
+    }
+
+    @Test
+    public void testZeroBudgetRunsNothing() throws Exception {
+        Executor executor = load(PROGRAM, 0);
+        assertEquals(RunStatus.YIELD, executor.runProgram(0));
+        assertEquals(0, executor.getStatementCount());
+        assertEquals(Integer.valueOf(0), executor.getCurrentIndex());
+        assertThrows(IllegalArgumentException.class, () -> executor.runProgram(-1));
+    }
+
+    @Test
+    public void testBreakpointWithinBudget() throws Exception {
+        Executor executor = load(PROGRAM, 0);
+        executor.setBreakpoints(List.of(new Executor.Breakpoint(300, 0, null)), null);
+        assertEquals(RunStatus.BREAK_CODE, executor.runProgram(100_000));
+        assertValue(executor, "I", 10.0);
+        // Continuing from the breakpoint for one statement, then to the next breakpoint
+        assertEquals(RunStatus.YIELD, executor.runProgram(1));
+        assertEquals("*", executor.getSymbol("A$"));
+        assertEquals(RunStatus.BREAK_CODE, executor.runProgram(100_000));
+        assertValue(executor, "I", 20.0);
+    }
+}
@@ -91,4 +91,51 @@ public class StringFunctionsTest extends TestCaseBase {
         assertEquals("ABC", executor.getSymbol("C$"));
         assertEquals("", executor.getSymbol("D$"));
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void testSpliceIntoLongString() throws Exception {
+        List<String> listing = Arrays.asList(
+            "100 Q$=\"\"",
+            "110 FOR I=1 TO 40",
+            "120 Q$=Q$+\".\"",
+            "130 NEXT I",
+            "140 FOR S=1 TO 40 STEP 10",
+            "150 Q$=LEFT$(Q$,S-1)+\"*\"+RIGHT$(Q$,40-S)",
+            "160 NEXT S",
+            "170 L=LEN(Q$)",
+            "180 IF MID$(Q$,11,1)=\"*\" THEN F=1"
+        );
+        Executor executor = runIt(listing);
+        assertEquals(40, executor.getSymbol("L"));
+        assertEquals(1, executor.getSymbol("F"));
+        assertEquals("*.........*.........*.........*.........", executor.getSymbol("Q$"));
+    }
+
+    @Test
+    public void testDeepConcatenationFlattens() throws Exception {
+        List<String> listing = Arrays.asList(
+            "100 A$=\"\"",
+            "110 FOR I=1 TO 20000",
+            "120 A$=A$+\"XY\"",
+            "130 NEXT I",
+            "140 L=LEN(A$)",
+            "150 B$=RIGHT$(A$,3)"
+        );
+        Executor executor = runIt(listing);
+        assertEquals(40000, executor.getSymbol("L"));
+        assertEquals("YXY", executor.getSymbol("B$"));
+        assertTrue(executor.getSymbol("A$") instanceof String);
+    }
+
+    @Test
+    public void testBasicStringViews() {
+        CharSequence base = "0123456789".repeat(4);
+        CharSequence joined = BasicString.concat(base, base);
+        assertEquals(80, joined.length());
+        CharSequence slice = BasicString.slice(joined, 35, 45);
+        assertEquals("5678901234", slice.toString());
+        assertEquals("89", BasicString.slice(slice, 3, 5).toString());
+        assertSame(base, BasicString.slice(base, 0, base.length()));
+        assertEquals("ab", BasicString.concat("a", "b"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SuperinstructionTest extends TestCaseBase {
+
+    private static final List<String> LOOP = List.of(
+            "100 I=0:T=0",
+            "110 I=I+1",
+            "120 GOSUB 200",
+            "130 IF I<10 THEN 110",
+            "140 PRINT \"DONE\";\"!\"",
+            "150 END",
+            "200 T=T+I:RETURN"
+    );
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private Executor profiled(List<String> listing) throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(listing));
+        executor.setProfiling(true);
+        executor.runProgram();
+        return executor;
+    }
+
+    @Test
+    public void testFusedKindsAndHitRates() throws Exception {
+        Executor executor = profiled(LOOP);
+        assertValue(executor, "I", 10);
+        assertValue(executor, "T", 55);
+        assertEquals("DONE!" + System.lineSeparator(), getCapturedOutput());
+
+        Profile profile = executor.getProfile();
+        assertEquals("INCREMENT", profile.fusedKind(1, 0));
+        assertEquals("GOSUB", profile.fusedKind(2, 0));
+        assertEquals("BRANCH", profile.fusedKind(3, 0));
+        assertEquals("PRINT", profile.fusedKind(4, 0));
+        assertNull(profile.fusedKind(5, 0));
+        assertEquals(10, profile.executions(1, 0));
+        assertEquals(10, profile.fusedHits(1, 0));
+        assertEquals(10, profile.executions(6, 1));
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        profile.print(new PrintStream(text));
+        assertTrue(text.toString().contains("0:INCREMENT 10 (100.0%)"));
+    }
+
+    @Test
+    public void testIncrementFallsBackForNonIntegers() throws Exception {
+        Executor executor = profiled(List.of(
+                "100 X=0.5",
+                "110 X=X+1",
+                "120 Y=2:Y=1+Y"
+        ));
+        assertValue(executor, "X", 1.5);
+        assertValue(executor, "Y", 3);
+        Profile profile = executor.getProfile();
+        assertEquals("INCREMENT", profile.fusedKind(1, 0));
+        assertEquals(0, profile.fusedHits(1, 0));
+        assertEquals(1, profile.fusedHits(2, 1));
+    }
+
+    @Test
+    public void testIncrementSaturatesLikeGeneralPath() throws Exception {
+        Executor executor = runIt(List.of(
+                "100 X=2147483647",
+                "110 X=X+1"
+        ));
+        assertValue(executor, "X", Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testLiteralPrintMatchesGeneralPath() throws Exception {
+        List<String> listing = List.of(
+                "100 PRINT \"A\",\"B\";",
+                "110 PRINT",
+                "120 PRINT \"C\";\"D\",",
+                "130 A$=\"E\":PRINT A$,\"F\""
+        );
+        runIt(listing);
+        String nl = System.lineSeparator();
+        assertEquals("A    B" + nl + "CD    E    F" + nl, getCapturedOutput());
+    }
+
+    @Test
+    public void testBranchNotTakenFallsThrough() throws Exception {
+        Executor executor = runIt(List.of(
+                "100 A=1",
+                "110 IF A=2 THEN GOTO 140",
+                "120 B=1",
+                "130 GOTO 150",
+                "140 B=2",
+                "150 END"
+        ));
+        assertValue(executor, "B", 1);
+    }
+
+    @Test
+    public void testProfilingIsOffByDefault() throws Exception {
+        assertNull(runIt(List.of("100 A=1")).getProfile());
+    }
+}
@@ -0,0 +1,116 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSuiteRunnerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ScheduledExecutorService watchdog;
+
+    @BeforeEach
+    public void setUp() {
+        watchdog = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        watchdog.shutdownNow();
+    }
+
+    private File write(String name, String source) throws Exception {
+        Path p = tempDir.resolve(name);
+        Files.writeString(p, source);
+        return p.toFile();
+    }
+
+    @Test
+    public void testInProcessCapturesOutput() throws Exception {
+        File prog = write("hello.bas", "10 PRINT \"HELLO\"\n20 END\n");
+        TestSuiteRunner.ProgramResult result = TestSuiteRunner.runInProcess(prog, 10, watchdog);
+        assertEquals(0, result.exitCode());
+        assertFalse(result.timedOut());
+        assertEquals("HELLO" + System.lineSeparator(), result.output());
+    }
+
+    @Test
+    public void testInProcessExitCodesMatchMain() throws Exception {
+        File stop = write("stop.bas", "10 STOP\n");
+        assertEquals(1, TestSuiteRunner.runInProcess(stop, 10, watchdog).exitCode());
+
+        File error = write("error.bas", "10 PRINT X\n");
+        assertEquals(2, TestSuiteRunner.runInProcess(error, 10, watchdog).exitCode());
+
+        File syntax = write("syntax.bas", "10 PRINT 1\n10 PRINT 2\n");
+        assertEquals(2, TestSuiteRunner.runInProcess(syntax, 10, watchdog).exitCode());
+    }
+
+    @Test
+    public void testInProcessTimeout() throws Exception {
+        File loop = write("loop.bas", "10 GOTO 10\n");
+        TestSuiteRunner.ProgramResult result = TestSuiteRunner.runInProcess(loop, 1, watchdog);
+        assertTrue(result.timedOut());
+        assertEquals(2, result.exitCode());
+    }
+
+    @Test
+    public void testInputFileIsFedToProgram() throws Exception {
+        File prog = write("echo.bas", "10 INPUT A,B$\n20 PRINT A+1;B$\n");
+        write("echo.input", "41,hi\n");
+        TestSuiteRunner.ProgramResult result = TestSuiteRunner.runInProcess(prog, 10, watchdog);
+        assertEquals(0, result.exitCode());
+        assertEquals("?  42 HI" + System.lineSeparator(), result.output());
+        assertEquals(2, result.statements());
+    }
+
+    @Test
+    public void testCompareOutput() throws Exception {
+        Path golden = tempDir.resolve("a.expected");
+        Files.writeString(golden, "ONE\nTWO\n");
+        assertNull(TestSuiteRunner.compareOutput("ONE\nTWO\n", golden));
+        assertTrue(TestSuiteRunner.compareOutput("ONE\nTOO\n", golden).contains("line 2"));
+        assertTrue(TestSuiteRunner.compareOutput("ONE\n", golden).contains("output ended"));
+        assertTrue(TestSuiteRunner.compareOutput("ONE\nTWO\nTHREE\n", golden).contains("extra"));
+    }
+
+    @Test
+    public void testStripMainOutput() {
+        String nl = System.lineSeparator();
+        String forked = "Loaded program with 2 lines" + nl + "HELLO" + nl + "Program completed with a status of END_CMD" + nl;
+        assertEquals("HELLO" + nl, TestSuiteRunner.stripMainOutput(forked));
+    }
+
+    @Test
+    public void testReportRoundTripAndRegressions() throws Exception {
+        Path report = tempDir.resolve("report.json");
+        List<SuiteReport.Entry> before = List.of(
+                new SuiteReport.Entry("fast.bas", 0, true, 1_000_000_000L, 1000),
+                new SuiteReport.Entry("dir/\"odd\".bas", 0, true, 1_000_000_000L, 1000),
+                new SuiteReport.Entry("forked.bas", 0, true, 1_000_000_000L, -1));
+        SuiteReport.write(before, report);
+
+        Map<String, Double> rates = SuiteReport.readThroughput(report);
+        assertEquals(1000.0, rates.get("fast.bas"), 0.01);
+        assertEquals(1000.0, rates.get("dir/\"odd\".bas"), 0.01);
+        assertFalse(rates.containsKey("forked.bas"));
+
+        List<SuiteReport.Entry> after = List.of(
+                new SuiteReport.Entry("fast.bas", 0, true, 2_000_000_000L, 1000),
+                new SuiteReport.Entry("dir/\"odd\".bas", 0, true, 1_100_000_000L, 1000));
+        List<String> regressions = SuiteReport.findRegressions(after, rates, 20.0);
+        assertEquals(1, regressions.size());
+        assertTrue(regressions.get(0).startsWith("fast.bas"));
+    }
+}
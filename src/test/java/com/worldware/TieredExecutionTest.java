@@ -0,0 +1,106 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TieredExecutionTest extends TestCaseBase {
+
+    private static final List<String> NESTED = List.of(
+            "100 T=0:C=0:A$=\"\"",
+            "110 FOR I=1 TO 30",
+            "120 FOR J=1 TO I:T=T+J:NEXT J",
+            "130 IF I/10=INT(I/10) THEN GOSUB 300",
+            "140 NEXT I",
+            "150 K=0",
+            "160 K=K+1:A$=A$+\"*\"",
+            "170 IF K<100 THEN 160",
+            "180 PRINT T;C;LEN(A$)",
+            "190 END",
+            "300 C=C+1:PRINT I;",
+            "310 RETURN"
+    );
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private Executor run(List<String> listing, int threshold) throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(listing));
+        executor.setHotThreshold(threshold);
+        executor.runProgram();
+        return executor;
+    }
+
+    @Test
+    public void testCompiledRegionsMatchInterpreter() throws Exception {
+        Executor interpreted = run(NESTED, 0);
+        String expected = getCapturedOutput();
+        outputCapture.reset();
+        Executor tiered = run(NESTED, 3);
+
+        assertEquals(expected, getCapturedOutput());
+        assertEquals(interpreted.getStatementCount(), tiered.getStatementCount());
+        for (String name : List.of("T", "C", "I", "J", "K", "A$")) {
+            assertEquals(interpreted.getSymbol(name), tiered.getSymbol(name), name);
+        }
+        assertEquals(30.0, tiered.getSymbol("I"));
+        assertNull(interpreted.region(2, 1));
+        assertNotNull(tiered.region(2, 1));
+        assertNotNull(tiered.region(6, 0));
+        assertNull(tiered.region(0, 0));
+    }
+
+    @Test
+    public void testOuterLoopReplacesInnerRegion() throws Exception {
+        Executor executor = run(NESTED, 3);
+        HotRegion outer = executor.region(2, 0);
+        assertNotNull(outer);
+        assertSame(outer, executor.region(2, 1));
+        assertSame(outer, executor.region(4, 0));
+        assertNull(executor.region(10, 0));
+    }
+
+    @Test
+    public void testEndInsideRegion() throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(List.of(
+                "100 FOR I=1 TO 1000",
+                "110 IF I=200 THEN END",
+                "120 NEXT I",
+                "130 PRINT \"NOT REACHED\""
+        )));
+        executor.setHotThreshold(5);
+        assertEquals(RunStatus.END_CMD, executor.runProgram());
+        assertEquals(200, ((Number) executor.getSymbol("I")).intValue());
+        assertEquals("", getCapturedOutput());
+    }
+
+    @Test
+    public void testErrorInsideRegionReportsItsLine() throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(List.of(
+                "100 X=0",
+                "110 X=X+1",
+                "120 IF X=60 THEN GOTO 999",
+                "130 IF X<100 THEN 110"
+        )));
+        executor.setHotThreshold(5);
+        assertNull(executor.region(1, 0));
+        BasicSyntaxError error = assertThrows(BasicSyntaxError.class, executor::runProgram);
+        assertEquals(Integer.valueOf(120), error.getLineNumber());
+        assertEquals(60, executor.getSymbol("X"));
+        assertNotNull(executor.region(1, 0));
+    }
+
+    @Test
+    public void testNoRegionsWithCoverage() throws Exception {
+        Executor executor = new Executor(BasicLoader.tokenize(NESTED), false, true);
+        executor.setHotThreshold(3);
+        executor.runProgram();
+        assertNull(executor.region(2, 1));
+        assertTrue(executor.getCoverage().isExecuted(2, 2));
+    }
+}
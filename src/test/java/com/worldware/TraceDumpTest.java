@@ -0,0 +1,99 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TraceDumpTest extends TestCaseBase {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private Path record(Program program) throws Exception {
+        Path file = tempDir.resolve("trace.bin");
+        Executor executor = new Executor(program);
+        ExecutionTrace trace = ExecutionTrace.open(file, program);
+        executor.setTrace(trace);
+        executor.runProgram();
+        executor.close();
+        return file;
+    }
+
+    private String dump(Program program, Path file, boolean vars) throws IOException {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        TraceDump.dump(program, file, out, vars, false);
+        out.flush();
+        return text.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    @Test
+    public void testDumpMatchesTextFormat() throws Exception {
+        Program program = BasicLoader.tokenize(List.of(
+                "100 J=1:GOTO 120",
+                "110 PRINT \"SKIPPED\"",
+                "120 J=J+1"
+        ));
+        Path file = record(program);
+        String expected = ">100 J=1:GOTO 120\n"
+                + "\t" + program.getLine(0).getStmts().get(0) + "\n"
+                + "\t" + program.getLine(0).getStmts().get(1) + "\n"
+                + "\tControl Transfer from line ControlLocation(index=0, offset=1) TO line 120: ControlLocation(index=2, offset=0).\n"
+                + ">120 J=J+1\n"
+                + "\t" + program.getLine(2).getStmts().get(0) + "\n";
+        assertEquals(expected, dump(program, file, false));
+    }
+
+    @Test
+    public void testVariableAssignmentsAreRecorded() throws Exception {
+        Program program = BasicLoader.tokenize(List.of(
+                "100 A=1",
+                "110 B$=\"X\"",
+                "120 A=2"
+        ));
+        String text = dump(program, record(program), true);
+        assertEquals(List.of("\t\tA assigned", "\t\tB$ assigned", "\t\tA assigned"),
+                text.lines().filter(l -> l.startsWith("\t\t")).toList());
+    }
+
+    @Test
+    public void testLongRunWrapsTheRing() throws Exception {
+        Program program = BasicLoader.tokenize(List.of(
+                "100 FOR I=1 TO 50000",
+                "110 X=I",
+                "120 NEXT I"
+        ));
+        Executor executor = new Executor(program);
+        Path file = tempDir.resolve("long.bin");
+        executor.setTrace(ExecutionTrace.open(file, program));
+        executor.runProgram();
+        long statements = executor.getStatementCount();
+        executor.close();
+        long traced = dump(program, file, false).lines().filter(l -> l.startsWith("\t") && !l.startsWith("\tControl")).count();
+        assertEquals(statements, traced);
+    }
+
+    @Test
+    public void testRejectsTraceOfAnotherProgram() throws Exception {
+        Program program = BasicLoader.tokenize(List.of("100 A=1"));
+        Path file = record(program);
+        Program other = BasicLoader.tokenize(List.of("100 A=2"));
+        assertThrows(IOException.class, () -> dump(other, file, false));
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> dump(program, file, false));
+    }
+}
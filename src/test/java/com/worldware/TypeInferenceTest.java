@@ -0,0 +1,103 @@
+package com.worldware;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TypeInferenceTest extends TestCaseBase {
+
+    @AfterEach
+    public void tearDown() {
+        restoreOutput();
+    }
+
+    private static Set<String> integers(List<String> listing) throws Exception {
+        return BasicLoader.tokenize(listing).getTypes().integerVariables();
+    }
+
+    @Test
+    public void testIntegerVariablesFound() throws Exception {
+        Set<String> found = integers(List.of(
+                "10 A=1:B=A*2-INT(3.5)",
+                "20 FOR I=1 TO 10 STEP 2",
+                "30 C=C+I:D=C/2:E=I^2",
+                "40 NEXT I",
+                "50 FOR X=0 TO 1 STEP 0.5:NEXT X",
+                "60 IF A>0 THEN F=LEN(\"AB\"):G=1.5 ELSE G=2",
+                "70 READ H:H=1",
+                "80 S$=\"1\":N=SGN(-3) AND 1",
+                "90 DATA 1.5"
+        ));
+        assertEquals(Set.of("A", "B", "I", "C", "F", "N"), found);
+    }
+
+    @Test
+    public void testMutuallyDependentVariables() throws Exception {
+        assertEquals(Set.of("I", "J"), integers(List.of("10 I=0:J=1", "20 I=I+J:J=I-1")));
+        assertEquals(Set.of(), integers(List.of("10 I=0:J=1", "20 I=I+J:J=I/2")));
+    }
+
+    @Test
+    public void testExpressionTypes() throws Exception {
+        TypeInference types = BasicLoader.tokenize(List.of("10 K=1", "20 X=RND(1)")).getTypes();
+        assertEquals(ValueType.INTEGER, ExpressionEvaluator.compile("K*2+LEN(A$)", types).type());
+        assertEquals(ValueType.NUMBER, ExpressionEvaluator.compile("K*X", types).type());
+        assertEquals(ValueType.NUMBER, ExpressionEvaluator.compile("K/2", types).type());
+        assertEquals(ValueType.STRING, ExpressionEvaluator.compile("A$+STR$(K)", types).type());
+        assertTrue(ExpressionEvaluator.compile("K+(", types) instanceof CompiledExpression.Interpreted);
+    }
+
+    @Test
+    public void testCompiledResultsMatchParser() throws Exception {
+        Map<String, Object> symbols = new HashMap<>();
+        symbols.put("K", 7);
+        symbols.put("L", 3.0);      // a FOR counter after NEXT
+        symbols.put("M", 2147483647);
+        symbols.put("X", 2.5);
+        symbols.put("A$", "AB");
+        symbols.put("ARRAY:A", new Object[]{10, 20, 30});
+        ExpressionEvaluator evaluator = new ExpressionEvaluator(symbols);
+        TypeInference types = BasicLoader.tokenize(List.of(
+                "10 K=1:M=1:FOR L=1 TO 3:NEXT L")).getTypes();
+        for (String expression : List.of("K+L", "K-L*2", "-K", "M+1", "M*M", "-M-M", "K=7", "L<K",
+                "INT(L)", "INT(X)", "A(L)", "A(K)", "A(X)", "K+X", "A$+\"C\"", "K AND L", "K/L", "1+",
+                // Literals are Doubles, whole or not; operations on them follow the operators
+                "5", "2.5", "+5", "-5", "(3)", "3*2", "7/2", "K+1", "L+1", "INT(5)", "A(2)", "5=5.0")) {
+            Object expected = evaluator.evaluateValue(expression);
+            Object actual = evaluator.evaluateValue(ExpressionEvaluator.compile(expression, types));
+            assertEquals(expected, BasicString.export(actual), expression);
+        }
+    }
+
+    @Test
+    public void testIntegerPathFallsBackOnUnexpectedValue() throws Exception {
+        Program program = BasicLoader.tokenize(List.of("10 Y=K+1", "20 K=2"));
+        assertTrue(program.getTypes().integerVariables().contains("K"));
+
+        // A value the analysis could not see, e.g. from a restored snapshot
+        Executor executor = new Executor(program);
+        executor.putSymbol("K", 1.5);
+        executor.runProgram();
+        assertEquals(2.5, executor.getSymbol("Y"));
+    }
+
+    @Test
+    public void testProgramOutputUnchanged() throws Exception {
+        ExecutorOutput result = runItCapture(List.of(
+                "10 DIM A(5)",
+                "20 FOR I=1 TO 5:A(I)=I*I:NEXT I",
+                "30 T=0:FOR I=5 TO 1 STEP -1:T=T+A(I):NEXT I",
+                "40 PRINT T;I;A(2)/2",
+                "50 FOR J=1 TO 2:PRINT J;:NEXT J:PRINT",
+                "60 B=5:C=(5):PRINT 5;B;C;-5;2*3"
+        ));
+        // A LET of a plain integer literal stores an Integer; other literals stay Doubles
+        assertEquals(" 55  1.0  2.0 \n 1.0  2.0 \n 5.0  5  5.0 -5 6 \n", result.output);
+    }
+}